@@ -26,6 +26,7 @@ import org.sonar.plugins.csharp.squid.CSharpRuleRepository;
 import org.sonar.plugins.csharp.squid.CSharpSquidSensor;
 import org.sonar.plugins.csharp.squid.colorizer.CSharpSourceCodeColorizer;
 import org.sonar.plugins.csharp.squid.cpd.CSharpCPDMapping;
+import org.sonar.plugins.csharp.squid.cpd.CSharpTokenStore;
 
 import org.sonar.api.CoreProperties;
 import org.sonar.api.Extension;
@@ -57,6 +58,45 @@ import java.util.List;
     name = "Ignore header comments",
     description = "Set to 'true' to enable, or 'false' to disable.",
     project = true, global = true,
+    type = PropertyType.BOOLEAN),
+  @Property(
+    key = CSharpSquidConstants.SCAN_THREADS_PROPERTY,
+    defaultValue = "" + CSharpSquidConstants.SCAN_THREADS_DEFVALUE,
+    name = "Number of analysis threads",
+    description = "Number of threads used to parse and analyse the C# files. Each thread gets its own parser and checks.",
+    project = true, global = true,
+    type = PropertyType.INTEGER),
+  @Property(
+    key = CSharpSquidConstants.CACHE_ENABLED_PROPERTY,
+    defaultValue = "" + CSharpSquidConstants.CACHE_ENABLED_DEFVALUE,
+    name = "Reuse the results of unchanged files",
+    description = "If true, the results computed for each C# file are stored in the working directory and reused during the next "
+      + "analysis for the files whose content did not change, as long as the quality profile is the same.",
+    project = true, global = true,
+    type = PropertyType.BOOLEAN),
+  @Property(
+    key = CSharpSquidConstants.FAST_LEXER_PROPERTY,
+    defaultValue = "" + CSharpSquidConstants.FAST_LEXER_DEFVALUE,
+    name = "Fast lexer",
+    description = "If true, the C# files are split into tokens by a hand-written lexer instead of regular expressions. "
+      + "The tokens are the same, but large files are processed faster.",
+    project = true, global = true,
+    type = PropertyType.BOOLEAN),
+  @Property(
+    key = CSharpSquidConstants.STREAMING_PROPERTY,
+    defaultValue = "" + CSharpSquidConstants.STREAMING_DEFVALUE,
+    name = "Streaming analysis",
+    description = "If true, the results of each C# file are saved as soon as the file has been analysed, and its Squid tree is released. "
+      + "The memory used by the analysis then depends on the largest file rather than on the size of the module.",
+    project = true, global = true,
+    type = PropertyType.BOOLEAN),
+  @Property(
+    key = CSharpSquidConstants.FUSED_METRICS_PROPERTY,
+    defaultValue = "" + CSharpSquidConstants.FUSED_METRICS_DEFVALUE,
+    name = "Single-pass metrics",
+    description = "If true, the size, comment, complexity and public API metrics are computed by a single visitor instead of one visitor "
+      + "per metric. The values are the same.",
+    project = true, global = true,
     type = PropertyType.BOOLEAN)
 })
 public class CSharpCorePlugin extends SonarPlugin {
@@ -78,6 +118,7 @@ public class CSharpCorePlugin extends SonarPlugin {
 
     // C# Squid
     extensions.add(CSharpCPDMapping.class);
+    extensions.add(CSharpTokenStore.class);
     extensions.add(CSharpSourceCodeColorizer.class);
     extensions.add(CSharpSquidSensor.class);
     extensions.add(CSharpResourcesBridge.class);
@@ -31,6 +31,7 @@ import org.sonar.plugins.dotnet.api.DotNetResourceBridge;
 import org.sonar.squid.api.SourceCode;
 import org.sonar.squid.api.SourceFile;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -73,10 +74,33 @@ public class CSharpResourcesBridge implements BatchExtension, DotNetResourceBrid
    *           if the CSharpResourcesBridge is locked and cannot index more files
    */
   public void indexFile(SourceFile squidFile, File sonarFile) {
-    if (canIndexFiles) {
-      LOG.debug("C# BRIDGE is indexing {}:", squidFile.getKey());
-      indexChildren(squidFile.getChildren(), sonarFile);
-    } else {
+    checkNotLocked();
+    LOG.debug("C# BRIDGE is indexing {}:", squidFile.getKey());
+    indexChildren(squidFile.getChildren(), sonarFile);
+  }
+
+  /**
+   * Same as {@link #indexFile(SourceFile, File)}, but with the keys of the logical resources (C# types and members) found in the file
+   * instead of the Squid file itself.
+   * 
+   * @param logicalResourceKeys
+   *          the keys of the logical resources found in the file
+   * @param sonarFile
+   *          the Sonar file
+   * @throws IllegalStateException
+   *           if the CSharpResourcesBridge is locked and cannot index more files
+   */
+  public void indexLogicalResources(Collection<String> logicalResourceKeys, File sonarFile) {
+    checkNotLocked();
+    LOG.debug("C# BRIDGE is indexing {}:", sonarFile.getKey());
+    for (String logicalResourceKey : logicalResourceKeys) {
+      LOG.debug("  - {}", logicalResourceKey);
+      logicalToPhysicalResourcesMap.put(logicalResourceKey, sonarFile);
+    }
+  }
+
+  private void checkNotLocked() {
+    if (!canIndexFiles) {
       throw new IllegalStateException(
           "The CSharpResourcesBridge has been locked to prevent future modifications. It is impossible to index new files.");
     }
@@ -31,5 +31,16 @@ public final class CSharpSquidConstants {
   public static final String CPD_IGNORE_LITERALS_PROPERTY = "sonar.cpd.cs.ignoreLiteral";
   public static final boolean CPD_IGNORE_LITERALS_DEFVALUE = true;
   public static final String IGNORE_HEADER_COMMENTS = "sonar.cs.ignoreHeaderComments";
+  public static final String SCAN_THREADS_PROPERTY = "sonar.cs.squid.threads";
+  public static final int SCAN_THREADS_DEFVALUE = 1;
+  public static final String CACHE_ENABLED_PROPERTY = "sonar.cs.squid.cache";
+  public static final boolean CACHE_ENABLED_DEFVALUE = false;
+  public static final String CACHE_FILE = "csharp-squid.cache";
+  public static final String FAST_LEXER_PROPERTY = "sonar.cs.squid.fastLexer";
+  public static final boolean FAST_LEXER_DEFVALUE = false;
+  public static final String STREAMING_PROPERTY = "sonar.cs.squid.streaming";
+  public static final boolean STREAMING_DEFVALUE = false;
+  public static final String FUSED_METRICS_PROPERTY = "sonar.cs.squid.fusedMetrics";
+  public static final boolean FUSED_METRICS_DEFVALUE = false;
 
 }
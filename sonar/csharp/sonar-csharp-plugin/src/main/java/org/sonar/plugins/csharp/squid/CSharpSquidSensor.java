@@ -22,17 +22,23 @@ package org.sonar.plugins.csharp.squid;
 import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.sonar.csharp.checks.CheckList;
 import com.sonar.csharp.squid.CSharpConfiguration;
 import com.sonar.csharp.squid.api.CSharpGrammar;
 import com.sonar.csharp.squid.api.CSharpMetric;
 import com.sonar.csharp.squid.api.source.SourceMember;
 import com.sonar.csharp.squid.metric.CSharpFileLinesVisitor;
+import com.sonar.csharp.squid.parser.CSharpGrammarImpl;
+import com.sonar.csharp.squid.parser.CSharpParserPool;
 import com.sonar.csharp.squid.scanner.CSharpAstScanner;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.impl.Parser;
 import com.sonar.sslr.squid.AstScanner;
 import com.sonar.sslr.squid.SquidAstVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.DependsUpon;
 import org.sonar.api.batch.Phase;
 import org.sonar.api.batch.ResourceCreationLock;
@@ -40,6 +46,7 @@ import org.sonar.api.batch.SensorContext;
 import org.sonar.api.checks.AnnotationCheckFactory;
 import org.sonar.api.checks.NoSonarFilter;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.measures.RangeDistributionBuilder;
@@ -48,23 +55,39 @@ import org.sonar.api.resources.File;
 import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.ActiveRule;
+import org.sonar.api.rules.ActiveRuleParam;
 import org.sonar.api.rules.Violation;
+import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.csharp.api.CSharp;
 import org.sonar.plugins.csharp.api.CSharpConstants;
+import org.sonar.plugins.csharp.squid.cache.CSharpFileResult;
+import org.sonar.plugins.csharp.squid.cache.CSharpSquidCache;
 import org.sonar.plugins.csharp.squid.check.CSharpCheck;
+import org.sonar.plugins.csharp.squid.cpd.CSharpTokenStore;
+import org.sonar.plugins.csharp.squid.cpd.CSharpTokenStoreVisitor;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.plugins.dotnet.api.DotNetConstants;
 import org.sonar.plugins.dotnet.api.sensor.AbstractRegularDotNetSensor;
 import org.sonar.squid.api.CheckMessage;
 import org.sonar.squid.api.SourceCode;
 import org.sonar.squid.api.SourceFile;
-import org.sonar.squid.indexer.QueryByParent;
 import org.sonar.squid.indexer.QueryByType;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @DependsUpon(DotNetConstants.CORE_PLUGIN_EXECUTED)
 @Phase(name = Phase.Name.PRE)
@@ -74,37 +97,43 @@ public final class CSharpSquidSensor extends AbstractRegularDotNetSensor {
   private static final Number[] METHOD_DISTRIB_BOTTOM_LIMITS = {1, 2, 4, 6, 8, 10, 12};
   private static final Number[] FILES_DISTRIB_BOTTOM_LIMITS = {0, 5, 10, 20, 30, 60, 90};
   private static final String[] SUPPORTED_LANGUAGES = new String[] {CSharpConstants.LANGUAGE_KEY};
+  private static final CSharpMetric[] SAVED_METRICS = {CSharpMetric.CLASSES, CSharpMetric.METHODS, CSharpMetric.FILES, CSharpMetric.LINES,
+    CSharpMetric.LINES_OF_CODE, CSharpMetric.STATEMENTS, CSharpMetric.ACCESSORS, CSharpMetric.COMPLEXITY, CSharpMetric.COMMENT_BLANK_LINES,
+    CSharpMetric.COMMENTED_OUT_CODE_LINES, CSharpMetric.COMMENT_LINES, CSharpMetric.PUBLIC_API, CSharpMetric.PUBLIC_DOC_API};
 
   private final CSharp cSharp;
   private final CSharpResourcesBridge cSharpResourcesBridge;
   private final ResourceCreationLock resourceCreationLock;
   private final NoSonarFilter noSonarFilter;
-  private final AnnotationCheckFactory annotationCheckFactory;
+  private final RulesProfile profile;
+  private final Collection<Class> allChecks;
   private final FileLinesContextFactory fileLinesContextFactory;
+  private final CSharpTokenStore tokenStore;
 
   private Project project;
   private SensorContext context;
-  private AstScanner<CSharpGrammar> scanner;
 
   public CSharpSquidSensor(DotNetConfiguration dotNetConfiguration, CSharp cSharp, CSharpResourcesBridge cSharpResourcesBridge, ResourceCreationLock resourceCreationLock,
-      MicrosoftWindowsEnvironment microsoftWindowsEnvironment, RulesProfile profile, NoSonarFilter noSonarFilter, FileLinesContextFactory fileLinesContextFactory) {
+      MicrosoftWindowsEnvironment microsoftWindowsEnvironment, RulesProfile profile, NoSonarFilter noSonarFilter, FileLinesContextFactory fileLinesContextFactory,
+      CSharpTokenStore tokenStore) {
     this(dotNetConfiguration, cSharp, cSharpResourcesBridge, resourceCreationLock, microsoftWindowsEnvironment, profile, noSonarFilter, fileLinesContextFactory,
-        new CSharpCheck[] {});
+        tokenStore, new CSharpCheck[] {});
   }
 
   public CSharpSquidSensor(DotNetConfiguration dotNetConfiguration, CSharp cSharp, CSharpResourcesBridge cSharpResourcesBridge, ResourceCreationLock resourceCreationLock,
       MicrosoftWindowsEnvironment microsoftWindowsEnvironment, RulesProfile profile, NoSonarFilter noSonarFilter, FileLinesContextFactory fileLinesContextFactory,
-      CSharpCheck[] cSharpChecks) {
+      CSharpTokenStore tokenStore, CSharpCheck[] cSharpChecks) {
     super(dotNetConfiguration, microsoftWindowsEnvironment, "Squid C#", "");
     this.cSharp = cSharp;
     this.cSharpResourcesBridge = cSharpResourcesBridge;
     this.resourceCreationLock = resourceCreationLock;
     this.noSonarFilter = noSonarFilter;
+    this.profile = profile;
     this.fileLinesContextFactory = fileLinesContextFactory;
+    this.tokenStore = tokenStore;
 
-    Collection<Class> allChecks = CSharpCheck.toCollection(cSharpChecks);
-    allChecks.addAll(CheckList.getChecks());
-    this.annotationCheckFactory = AnnotationCheckFactory.create(profile, CSharpSquidConstants.REPOSITORY_KEY, allChecks);
+    this.allChecks = CSharpCheck.toCollection(cSharpChecks);
+    this.allChecks.addAll(CheckList.getChecks());
   }
 
   /**
@@ -119,20 +148,102 @@ public final class CSharpSquidSensor extends AbstractRegularDotNetSensor {
    * {@inheritDoc}
    */
   @Override
-  @SuppressWarnings("unchecked")
   public void analyse(Project project, SensorContext context) {
     this.project = project;
     this.context = context;
 
-    Collection<SquidAstVisitor<CSharpGrammar>> squidChecks = annotationCheckFactory.getChecks();
-    List<SquidAstVisitor<CSharpGrammar>> visitors = Lists.newArrayList(squidChecks);
-    // TODO: remove the following line & class once SSLR Squid bridge computes NCLOC_DATA_KEY & COMMENT_LINES_DATA_KEY
-    visitors.add(new CSharpFileLinesVisitor(project, fileLinesContextFactory));
-    scanner = CSharpAstScanner.create(createParserConfiguration(project), (SquidAstVisitor<CSharpGrammar>[]) visitors.toArray(new SquidAstVisitor[visitors.size()]));
-    scanner.scanFiles(getFilesToAnalyse(project));
+    CSharpConfiguration parserConfiguration = createParserConfiguration(project);
+    List<java.io.File> files = getFilesToAnalyse(project);
+
+    // Results are sorted by file path, so that they are saved in the same order whatever the way they were computed
+    Map<String, CSharpFileResult> results = Maps.newTreeMap();
+    Map<String, String> contentHashes = Maps.newHashMap();
+    List<java.io.File> filesToScan = files;
+    CSharpSquidCache cache = null;
+    if (configuration.getBoolean(CSharpSquidConstants.CACHE_ENABLED_PROPERTY)) {
+      java.io.File cacheFile = new java.io.File(project.getFileSystem().getSonarWorkingDirectory(), CSharpSquidConstants.CACHE_FILE);
+      cache = CSharpSquidCache.load(cacheFile, computeCacheFingerprint(parserConfiguration));
+      filesToScan = Lists.newArrayList();
+      for (java.io.File file : files) {
+        String contentHash = hash(file);
+        contentHashes.put(file.getAbsolutePath(), contentHash);
+        CSharpFileResult cachedResult = cache.get(contentHash);
+        if (cachedResult == null) {
+          filesToScan.add(file);
+        } else {
+          results.put(file.getAbsolutePath(), cachedResult);
+        }
+      }
+      LOG.info("{} C# file(s) unchanged since the previous analysis, {} file(s) to analyse", results.size(), filesToScan.size());
+    }
+
+    int threads = Math.min(configuration.getInt(CSharpSquidConstants.SCAN_THREADS_PROPERTY), filesToScan.size());
+    boolean streaming = configuration.getBoolean(CSharpSquidConstants.STREAMING_PROPERTY);
+    // Results, lines data included, can only be saved from the thread of the sensor
+    boolean savedWhileScanning = streaming && threads <= 1;
+    Map<String, CSharpFileResult> scannedResults = scan(parserConfiguration, filesToScan, threads, streaming);
+    results.putAll(scannedResults);
+
+    for (Map.Entry<String, CSharpFileResult> entry : results.entrySet()) {
+      boolean scanned = scannedResults.containsKey(entry.getKey());
+      if (!scanned || !savedWhileScanning) {
+        saveResult(new java.io.File(entry.getKey()), entry.getValue());
+      }
+    }
+
+    if (cache != null) {
+      for (Map.Entry<String, CSharpFileResult> entry : scannedResults.entrySet()) {
+        String contentHash = contentHashes.get(entry.getKey());
+        if (contentHash != null) {
+          cache.put(contentHash, entry.getValue());
+        }
+      }
+      cache.save();
+    }
+
+    // and lock everything to prevent future modifications
+    LOG.debug("Locking the C# Resource Bridge and the Sonar Index: future modifications won't be possible.");
+    cSharpResourcesBridge.lock();
+    resourceCreationLock.lock();
+  }
+
+  private Map<String, CSharpFileResult> scan(CSharpConfiguration parserConfiguration, List<java.io.File> files, int threads, boolean streaming) {
+    if (threads > 1) {
+      return scanInParallel(parserConfiguration, files, threads, streaming);
+    }
+    return new ScanPartition(parserConfiguration, files, streaming, streaming).call();
+  }
 
-    Collection<SourceCode> squidSourceFiles = scanner.getIndex().search(new QueryByType(SourceFile.class));
-    saveMeasures(squidSourceFiles);
+  private Map<String, CSharpFileResult> scanInParallel(CSharpConfiguration parserConfiguration, List<java.io.File> files, int threads,
+      boolean streaming) {
+    LOG.debug("Analysing {} C# files with {} threads", files.size(), threads);
+    List<List<java.io.File>> filesByPartition = Lists.newArrayList();
+    for (int i = 0; i < threads; i++) {
+      filesByPartition.add(Lists.<java.io.File> newArrayList());
+    }
+    for (int i = 0; i < files.size(); i++) {
+      filesByPartition.get(i % threads).add(files.get(i));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Map<String, CSharpFileResult>>> futures = Lists.newArrayList();
+      for (List<java.io.File> partitionFiles : filesByPartition) {
+        futures.add(executor.submit(new ScanPartition(parserConfiguration, partitionFiles, streaming, false)));
+      }
+      Map<String, CSharpFileResult> results = Maps.newHashMap();
+      for (Future<Map<String, CSharpFileResult>> future : futures) {
+        results.putAll(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("C# analysis was interrupted.", e);
+    } catch (ExecutionException e) {
+      throw new SonarException("C# analysis failed.", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
   private List<java.io.File> getFilesToAnalyse(Project project) {
@@ -147,88 +258,316 @@ public final class CSharpSquidSensor extends AbstractRegularDotNetSensor {
   private CSharpConfiguration createParserConfiguration(Project project) {
     CSharpConfiguration conf = new CSharpConfiguration(project.getFileSystem().getSourceCharset());
     conf.setIgnoreHeaderComments(configuration.getBoolean(CSharpSquidConstants.IGNORE_HEADER_COMMENTS));
+    conf.setUseFastLexer(configuration.getBoolean(CSharpSquidConstants.FAST_LEXER_PROPERTY));
+    conf.setUseFusedMetrics(configuration.getBoolean(CSharpSquidConstants.FUSED_METRICS_PROPERTY));
     return conf;
   }
 
-  private void saveMeasures(Collection<SourceCode> sourceFiles) {
-    for (SourceCode squidFileCode : sourceFiles) {
-      SourceFile squidFile = (SourceFile) squidFileCode;
+  private String computeCacheFingerprint(CSharpConfiguration parserConfiguration) {
+    List<String> activeRules = Lists.newArrayList();
+    for (ActiveRule activeRule : profile.getActiveRulesByRepository(CSharpSquidConstants.REPOSITORY_KEY)) {
+      StringBuilder activeRuleDescription = new StringBuilder(activeRule.getRuleKey());
+      for (ActiveRuleParam param : activeRule.getActiveRuleParams()) {
+        activeRuleDescription.append(';').append(param.getKey()).append('=').append(param.getValue());
+      }
+      activeRules.add(activeRuleDescription.toString());
+    }
+    Collections.sort(activeRules);
+
+    String analysisConfiguration = parserConfiguration.getCharset() + "|" + parserConfiguration.getIgnoreHeaderComments() + "|"
+      + parserConfiguration.getUseFastLexer() + "|" + parserConfiguration.getUseFusedMetrics() + "|" + activeRules;
+    // The jars of the plugin, of the C# Squid library and of the checks (custom checks included) hold all the code of the analysis
+    Collection<Class> classes = Lists.newArrayList(allChecks);
+    classes.addAll(Arrays.<Class> asList(CSharpSquidSensor.class, CSharpGrammarImpl.class, CheckList.class));
+    return CSharpSquidCache.fingerprint(analysisConfiguration, classes);
+  }
 
-      /* Create the sonar file */
-      File sonarFile = File.fromIOFile(new java.io.File(squidFile.getKey()), project);
-      sonarFile.setLanguage(cSharp);
+  private static String hash(java.io.File file) {
+    try {
+      return CSharpSquidCache.hash(file);
+    } catch (IOException e) {
+      throw new SonarException("Unable to read the C# file " + file, e);
+    }
+  }
 
-      /* Fill the resource bridge API that can be used by other C# plugins to map logical resources to physical ones */
-      cSharpResourcesBridge.indexFile(squidFile, sonarFile);
+  private void saveResult(java.io.File file, CSharpFileResult result) {
+    /* Create the sonar file */
+    File sonarFile = File.fromIOFile(file, project);
+    sonarFile.setLanguage(cSharp);
 
-      /* No Sonar */
-      noSonarFilter.addResource(sonarFile, squidFile.getNoSonarTagLines());
+    /* Fill the resource bridge API that can be used by other C# plugins to map logical resources to physical ones */
+    cSharpResourcesBridge.indexLogicalResources(result.getLogicalResourceKeys(), sonarFile);
 
-      /* Files complexity distribution */
-      saveFilesComplexityDistribution(sonarFile, squidFile);
+    /* No Sonar */
+    noSonarFilter.addResource(sonarFile, result.getNoSonarLines());
 
-      /* Methods complexity distribution */
-      saveMethodsComplexityDistribution(sonarFile, squidFile);
+    /* Files complexity distribution */
+    saveFilesComplexityDistribution(sonarFile, result);
 
-      /* Check messages */
-      saveViolations(squidFile, sonarFile);
+    /* Methods complexity distribution */
+    saveMethodsComplexityDistribution(sonarFile, result);
 
-      /* Metrics at the file level */
-      saveMeasures(sonarFile, squidFile);
-    }
+    /* Check messages */
+    saveViolations(sonarFile, result);
 
-    // and lock everything to prevent future modifications
-    LOG.debug("Locking the C# Resource Bridge and the Sonar Index: future modifications won't be possible.");
-    cSharpResourcesBridge.lock();
-    resourceCreationLock.lock();
+    /* Metrics at the file level */
+    saveMeasures(sonarFile, result);
+
+    /* Lines data */
+    saveLinesData(sonarFile, result);
   }
 
-  private void saveMeasures(Resource sonarFile, SourceCode squidFile) {
-    context.saveMeasure(sonarFile, CoreMetrics.CLASSES, squidFile.getDouble(CSharpMetric.CLASSES));
-    context.saveMeasure(sonarFile, CoreMetrics.FUNCTIONS, squidFile.getDouble(CSharpMetric.METHODS));
-    context.saveMeasure(sonarFile, CoreMetrics.FILES, squidFile.getDouble(CSharpMetric.FILES));
-    context.saveMeasure(sonarFile, CoreMetrics.LINES, squidFile.getDouble(CSharpMetric.LINES));
-    context.saveMeasure(sonarFile, CoreMetrics.NCLOC, squidFile.getDouble(CSharpMetric.LINES_OF_CODE));
-    context.saveMeasure(sonarFile, CoreMetrics.STATEMENTS, squidFile.getDouble(CSharpMetric.STATEMENTS));
-    context.saveMeasure(sonarFile, CoreMetrics.ACCESSORS, squidFile.getDouble(CSharpMetric.ACCESSORS));
-    context.saveMeasure(sonarFile, CoreMetrics.COMPLEXITY, squidFile.getDouble(CSharpMetric.COMPLEXITY));
-    context.saveMeasure(sonarFile, CoreMetrics.COMMENT_BLANK_LINES, squidFile.getDouble(CSharpMetric.COMMENT_BLANK_LINES));
-    context.saveMeasure(sonarFile, CoreMetrics.COMMENTED_OUT_CODE_LINES, squidFile.getDouble(CSharpMetric.COMMENTED_OUT_CODE_LINES));
-    context.saveMeasure(sonarFile, CoreMetrics.COMMENT_LINES, squidFile.getDouble(CSharpMetric.COMMENT_LINES));
-    context.saveMeasure(sonarFile, CoreMetrics.PUBLIC_API, squidFile.getDouble(CSharpMetric.PUBLIC_API));
+  private void saveMeasures(Resource sonarFile, CSharpFileResult result) {
+    context.saveMeasure(sonarFile, CoreMetrics.CLASSES, result.getDouble(CSharpMetric.CLASSES));
+    context.saveMeasure(sonarFile, CoreMetrics.FUNCTIONS, result.getDouble(CSharpMetric.METHODS));
+    context.saveMeasure(sonarFile, CoreMetrics.FILES, result.getDouble(CSharpMetric.FILES));
+    context.saveMeasure(sonarFile, CoreMetrics.LINES, result.getDouble(CSharpMetric.LINES));
+    context.saveMeasure(sonarFile, CoreMetrics.NCLOC, result.getDouble(CSharpMetric.LINES_OF_CODE));
+    context.saveMeasure(sonarFile, CoreMetrics.STATEMENTS, result.getDouble(CSharpMetric.STATEMENTS));
+    context.saveMeasure(sonarFile, CoreMetrics.ACCESSORS, result.getDouble(CSharpMetric.ACCESSORS));
+    context.saveMeasure(sonarFile, CoreMetrics.COMPLEXITY, result.getDouble(CSharpMetric.COMPLEXITY));
+    context.saveMeasure(sonarFile, CoreMetrics.COMMENT_BLANK_LINES, result.getDouble(CSharpMetric.COMMENT_BLANK_LINES));
+    context.saveMeasure(sonarFile, CoreMetrics.COMMENTED_OUT_CODE_LINES, result.getDouble(CSharpMetric.COMMENTED_OUT_CODE_LINES));
+    context.saveMeasure(sonarFile, CoreMetrics.COMMENT_LINES, result.getDouble(CSharpMetric.COMMENT_LINES));
+    context.saveMeasure(sonarFile, CoreMetrics.PUBLIC_API, result.getDouble(CSharpMetric.PUBLIC_API));
     context.saveMeasure(sonarFile, CoreMetrics.PUBLIC_UNDOCUMENTED_API,
-        squidFile.getDouble(CSharpMetric.PUBLIC_API) - squidFile.getDouble(CSharpMetric.PUBLIC_DOC_API));
+        result.getDouble(CSharpMetric.PUBLIC_API) - result.getDouble(CSharpMetric.PUBLIC_DOC_API));
   }
 
-  private void saveViolations(SourceCode squidFile, File sonarFile) {
-    Set<CheckMessage> messages = squidFile.getCheckMessages();
-    if (messages != null) {
-      for (CheckMessage message : messages) {
-        @SuppressWarnings("unchecked")
-        Violation violation = Violation.create(annotationCheckFactory.getActiveRule(message.getCheck()), sonarFile);
-        violation.setLineId(message.getLine());
-        violation.setMessage(message.getText(Locale.ENGLISH));
-        context.saveViolation(violation);
-      }
+  private void saveViolations(File sonarFile, CSharpFileResult result) {
+    for (CSharpFileResult.Message message : result.getMessages()) {
+      Violation violation = Violation.create(profile.getActiveRule(CSharpSquidConstants.REPOSITORY_KEY, message.getRuleKey()), sonarFile);
+      violation.setLineId(message.getLine());
+      violation.setMessage(message.getText());
+      context.saveViolation(violation);
     }
   }
 
-  private void saveFilesComplexityDistribution(File sonarFile, SourceFile squidFile) {
+  private void saveFilesComplexityDistribution(File sonarFile, CSharpFileResult result) {
     RangeDistributionBuilder complexityDistribution = new RangeDistributionBuilder(CoreMetrics.FILE_COMPLEXITY_DISTRIBUTION, FILES_DISTRIB_BOTTOM_LIMITS);
-    complexityDistribution.add(squidFile.getDouble(CSharpMetric.COMPLEXITY));
+    complexityDistribution.add(result.getDouble(CSharpMetric.COMPLEXITY));
     context.saveMeasure(sonarFile, complexityDistribution.build().setPersistenceMode(PersistenceMode.MEMORY));
   }
 
-  private void saveMethodsComplexityDistribution(File sonarFile, SourceFile squidFile) {
-    Collection<SourceCode> squidMethods = scanner.getIndex().search(new QueryByParent(squidFile), new QueryByType(SourceMember.class));
+  private void saveMethodsComplexityDistribution(File sonarFile, CSharpFileResult result) {
     RangeDistributionBuilder complexityMethodDistribution = new RangeDistributionBuilder(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION,
         METHOD_DISTRIB_BOTTOM_LIMITS);
 
-    for (SourceCode squidMethod : squidMethods) {
-      complexityMethodDistribution.add(squidMethod.getDouble(CSharpMetric.COMPLEXITY));
+    for (double methodComplexity : result.getMethodComplexities()) {
+      complexityMethodDistribution.add(methodComplexity);
     }
 
     context.saveMeasure(sonarFile, complexityMethodDistribution.build().setPersistenceMode(PersistenceMode.MEMORY));
   }
 
+  private void saveLinesData(File sonarFile, CSharpFileResult result) {
+    int fileLength = (int) result.getDouble(CSharpMetric.LINES);
+    BitSet linesOfCode = toBitSet(result.getLinesOfCode());
+    BitSet linesOfComments = toBitSet(result.getLinesOfComments());
+
+    FileLinesContext fileLinesContext = fileLinesContextFactory.createFor(sonarFile);
+    for (int line = 1; line <= fileLength; line++) {
+      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, linesOfCode.get(line) ? 1 : 0);
+    }
+    for (int line = 1; line <= fileLength; line++) {
+      fileLinesContext.setIntValue(CoreMetrics.COMMENT_LINES_DATA_KEY, line, linesOfComments.get(line) ? 1 : 0);
+    }
+    fileLinesContext.save();
+  }
+
+  private static BitSet toBitSet(int[] values) {
+    BitSet bitSet = new BitSet();
+    for (int value : values) {
+      bitSet.set(value);
+    }
+    return bitSet;
+  }
+
+  private static int[] toSortedArray(BitSet values) {
+    int[] array = new int[values.cardinality()];
+    int i = 0;
+    for (int value = values.nextSetBit(0); value >= 0; value = values.nextSetBit(value + 1)) {
+      array[i++] = value;
+    }
+    return array;
+  }
+
+  /**
+   * A subset of the files to analyse, scanned with its own parser and its own check instances so that several partitions can be
+   * scanned concurrently. The results of the scan are indexed by absolute file path.
+   * <p>
+   * In streaming mode, the result of each file is computed as soon as the scanner moves on to the next file, and the Squid tree of the
+   * file is then detached from the project. The result can be saved right away when the partition runs in the thread of the sensor.
+   * </p>
+   */
+  private final class ScanPartition implements Callable<Map<String, CSharpFileResult>> {
+
+    private final CSharpConfiguration parserConfiguration;
+    private final List<java.io.File> files;
+    private final boolean streaming;
+    private final boolean saveWhenScanned;
+    private final Map<String, int[][]> linesByFile = Maps.newHashMap();
+    private final Map<String, CSharpFileResult> results = Maps.newHashMap();
+    private AnnotationCheckFactory checkFactory;
+
+    ScanPartition(CSharpConfiguration parserConfiguration, List<java.io.File> files, boolean streaming, boolean saveWhenScanned) {
+      this.parserConfiguration = parserConfiguration;
+      this.files = files;
+      this.streaming = streaming;
+      this.saveWhenScanned = saveWhenScanned;
+    }
+
+    public Map<String, CSharpFileResult> call() {
+      Parser<CSharpGrammar> parser = CSharpParserPool.getShared().borrowParser(parserConfiguration);
+      try {
+        // A single scanner per partition: the visitors can only be given to one scanner, and are initialized by each scan
+        checkFactory = AnnotationCheckFactory.create(profile, CSharpSquidConstants.REPOSITORY_KEY, allChecks);
+        AstScanner<CSharpGrammar> scanner = CSharpAstScanner.create(parserConfiguration, parser, createVisitors());
+        scanner.scanFiles(files);
+
+        if (!streaming) {
+          for (SourceCode squidFile : scanner.getIndex().search(new QueryByType(SourceFile.class))) {
+            addResult((SourceFile) squidFile);
+          }
+        }
+        return results;
+      } finally {
+        CSharpParserPool.getShared().returnParser(parserConfiguration, parser);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private SquidAstVisitor<CSharpGrammar>[] createVisitors() {
+      Collection<SquidAstVisitor<CSharpGrammar>> squidChecks = checkFactory.getChecks();
+      List<SquidAstVisitor<CSharpGrammar>> visitors = Lists.newArrayList(squidChecks);
+      // TODO: remove the following line & class once SSLR Squid bridge computes NCLOC_DATA_KEY & COMMENT_LINES_DATA_KEY
+      visitors.add(new CSharpFileLinesVisitor(project, fileLinesContextFactory) {
+
+        @Override
+        protected void saveLines(java.io.File file, int fileLength, BitSet linesOfCode, BitSet linesOfComments) {
+          // Saved along with the other results of the file, from the thread of the sensor
+          linesByFile.put(file.getAbsolutePath(), new int[][] {toSortedArray(linesOfCode), toSortedArray(linesOfComments)});
+        }
+      });
+      if (!configuration.getBoolean(CoreProperties.CPD_SKIP_PROPERTY)) {
+        // Spares the CPD tokenizer a second reading and lexing of the files
+        visitors.add(new CSharpTokenStoreVisitor(tokenStore));
+      }
+      if (streaming) {
+        // Must come last, so that the other visitors are done with a file when its result is computed
+        visitors.add(new StreamingVisitor());
+      }
+      return visitors.toArray(new SquidAstVisitor[visitors.size()]);
+    }
+
+    private void addResult(SourceFile squidFile) {
+      CSharpFileResult result = createResult(squidFile);
+      results.put(squidFile.getKey(), result);
+      if (saveWhenScanned) {
+        saveResult(new java.io.File(squidFile.getKey()), result);
+      }
+    }
+
+    private CSharpFileResult createResult(SourceFile squidFile) {
+      CSharpFileResult result = new CSharpFileResult();
+      for (CSharpMetric metric : SAVED_METRICS) {
+        result.setDouble(metric, squidFile.getDouble(metric));
+      }
+
+      // A single walk of the subtree of the file, instead of a search through the whole index for each file
+      List<String> logicalResourceKeys = Lists.newArrayList();
+      List<SourceCode> squidMethods = Lists.newArrayList();
+      collectChildren(squidFile.getChildren(), logicalResourceKeys, squidMethods);
+      result.addLogicalResourceKeys(logicalResourceKeys);
+
+      double[] methodComplexities = new double[squidMethods.size()];
+      int i = 0;
+      for (SourceCode squidMethod : squidMethods) {
+        methodComplexities[i++] = squidMethod.getDouble(CSharpMetric.COMPLEXITY);
+      }
+      result.setMethodComplexities(methodComplexities);
+
+      result.setNoSonarLines(squidFile.getNoSonarTagLines());
+
+      int[][] lines = linesByFile.get(squidFile.getKey());
+      if (lines != null) {
+        result.setLinesOfCode(lines[0]);
+        result.setLinesOfComments(lines[1]);
+      }
+
+      Set<CheckMessage> messages = squidFile.getCheckMessages();
+      if (messages != null) {
+        for (CheckMessage message : messages) {
+          @SuppressWarnings("unchecked")
+          ActiveRule activeRule = checkFactory.getActiveRule(message.getCheck());
+          if (activeRule == null) {
+            // Not a violation of the quality profile, as no rule of the profile is attached to the check
+            LOG.debug("Ignoring a message without active rule on line {} of {}", message.getLine(), squidFile.getKey());
+          } else {
+            result.addMessage(activeRule.getRuleKey(), message.getLine(), message.getText(Locale.ENGLISH));
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Computes the result of each file once the scanner has moved on to the next file, or has reached the end of the partition. The
+     * Squid tree of the file is decorated with the metrics of its children the way the scanner decorates the whole project, and is
+     * then removed from the project so that it is neither decorated again nor kept along with it.
+     */
+    private final class StreamingVisitor extends SquidAstVisitor<CSharpGrammar> {
+
+      private SourceFile scannedFile;
+
+      @Override
+      public void visitFile(AstNode astNode) {
+        completeScannedFile();
+        scannedFile = (SourceFile) getContext().peekSourceCode();
+      }
+
+      @Override
+      public void destroy() {
+        completeScannedFile();
+      }
+
+      private void completeScannedFile() {
+        if (scannedFile != null) {
+          decorate(scannedFile);
+          scannedFile.getParent().getChildren().remove(scannedFile);
+          addResult(scannedFile);
+          scannedFile = null;
+        }
+      }
+
+      private void decorate(SourceCode sourceCode) {
+        if (sourceCode.hasChildren()) {
+          for (SourceCode child : sourceCode.getChildren()) {
+            decorate(child);
+          }
+          for (CSharpMetric metric : CSharpMetric.values()) {
+            if ((metric.aggregateIfThereIsAlreadyAValue() || sourceCode.getDouble(metric) == 0) && !metric.isCalculatedMetric()
+              && metric.isThereAggregationFormula()) {
+              for (SourceCode child : sourceCode.getChildren()) {
+                sourceCode.add(metric, child);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private void collectChildren(Set<SourceCode> sourceCodes, List<String> keys, List<SourceCode> members) {
+      if (sourceCodes != null) {
+        for (SourceCode sourceCode : sourceCodes) {
+          keys.add(sourceCode.getKey());
+          if (sourceCode instanceof SourceMember) {
+            members.add(sourceCode);
+          }
+          collectChildren(sourceCode.getChildren(), keys, members);
+        }
+      }
+    }
+  }
+
 }
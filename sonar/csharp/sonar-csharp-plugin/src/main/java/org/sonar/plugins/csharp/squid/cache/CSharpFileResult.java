@@ -0,0 +1,137 @@
+/*
+ * Sonar C# Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.squid.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sonar.csharp.squid.api.CSharpMetric;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything the C# Squid sensor needs to save for a source file: measures, method complexities, NoSonar lines, lines data, check
+ * messages and the keys of the logical resources (types and members) declared in the file.<br/>
+ * It only depends on the content of the file, which allows to reuse it from one analysis to the next one.
+ */
+public class CSharpFileResult implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, Double> measures = Maps.newHashMap();
+  private double[] methodComplexities = new double[0];
+  private Set<Integer> noSonarLines = Sets.newHashSet();
+  private int[] linesOfCode = new int[0];
+  private int[] linesOfComments = new int[0];
+  private final List<String> logicalResourceKeys = Lists.newArrayList();
+  private final List<Message> messages = Lists.newArrayList();
+
+  public double getDouble(CSharpMetric metric) {
+    Double value = measures.get(metric.name());
+    return value == null ? 0 : value;
+  }
+
+  public void setDouble(CSharpMetric metric, double value) {
+    measures.put(metric.name(), value);
+  }
+
+  public double[] getMethodComplexities() {
+    return methodComplexities;
+  }
+
+  public void setMethodComplexities(double[] methodComplexities) {
+    this.methodComplexities = methodComplexities;
+  }
+
+  public Set<Integer> getNoSonarLines() {
+    return noSonarLines;
+  }
+
+  public void setNoSonarLines(Set<Integer> noSonarLines) {
+    this.noSonarLines = Sets.newHashSet(noSonarLines);
+  }
+
+  public int[] getLinesOfCode() {
+    return linesOfCode;
+  }
+
+  public void setLinesOfCode(int[] linesOfCode) {
+    this.linesOfCode = linesOfCode;
+  }
+
+  public int[] getLinesOfComments() {
+    return linesOfComments;
+  }
+
+  public void setLinesOfComments(int[] linesOfComments) {
+    this.linesOfComments = linesOfComments;
+  }
+
+  public List<String> getLogicalResourceKeys() {
+    return logicalResourceKeys;
+  }
+
+  public void addLogicalResourceKeys(Collection<String> keys) {
+    logicalResourceKeys.addAll(keys);
+  }
+
+  public List<Message> getMessages() {
+    return messages;
+  }
+
+  public void addMessage(String ruleKey, Integer line, String text) {
+    messages.add(new Message(ruleKey, line, text));
+  }
+
+  /**
+   * A check message, already bound to the key of the rule that raised it.
+   */
+  public static final class Message implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String ruleKey;
+    private final Integer line;
+    private final String text;
+
+    Message(String ruleKey, Integer line, String text) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.text = text;
+    }
+
+    public String getRuleKey() {
+      return ruleKey;
+    }
+
+    public Integer getLine() {
+      return line;
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+}
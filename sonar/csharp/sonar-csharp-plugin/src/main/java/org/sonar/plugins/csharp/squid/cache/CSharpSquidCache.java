@@ -0,0 +1,230 @@
+/*
+ * Sonar C# Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.squid.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk cache of the {@link CSharpFileResult} computed by the C# Squid sensor, indexed by the hash of the content of the files.<br/>
+ * The whole cache is discarded if the fingerprint of the analysis (active checks, parser configuration, version of the plugin...) changed
+ * since the previous analysis. Only the entries used during the current analysis are written back.
+ */
+public class CSharpSquidCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CSharpSquidCache.class);
+  private static final int BUFFER_SIZE = 8192;
+
+  private final File cacheFile;
+  private final String fingerprint;
+  private final Map<String, CSharpFileResult> previousResults;
+  private final Map<String, CSharpFileResult> currentResults = Maps.newHashMap();
+
+  private CSharpSquidCache(File cacheFile, String fingerprint, Map<String, CSharpFileResult> previousResults) {
+    this.cacheFile = cacheFile;
+    this.fingerprint = fingerprint;
+    this.previousResults = previousResults;
+  }
+
+  /**
+   * Loads the cache stored in the given file. An empty cache is returned if the file does not exist, cannot be read or was written with
+   * another fingerprint.
+   */
+  public static CSharpSquidCache load(File cacheFile, String fingerprint) {
+    Map<String, CSharpFileResult> results = Maps.newHashMap();
+    if (cacheFile.isFile()) {
+      ObjectInputStream in = null;
+      try {
+        in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile), BUFFER_SIZE));
+        if (fingerprint.equals(in.readObject())) {
+          results = readResults(in);
+          LOG.debug("{} C# file results loaded from {}", results.size(), cacheFile);
+        } else {
+          LOG.info("C# analysis configuration changed since the previous analysis: the C# Squid cache is discarded.");
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to read the C# Squid cache " + cacheFile + ", it is discarded.", e);
+      } catch (ClassNotFoundException e) {
+        LOG.warn("Unable to read the C# Squid cache " + cacheFile + ", it is discarded.", e);
+      } finally {
+        IOUtils.closeQuietly(in);
+      }
+    }
+    return new CSharpSquidCache(cacheFile, fingerprint, results);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, CSharpFileResult> readResults(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    return (Map<String, CSharpFileResult>) in.readObject();
+  }
+
+  /**
+   * Returns the result previously computed for a file with the given content hash, or null if there is none.
+   */
+  public CSharpFileResult get(String contentHash) {
+    CSharpFileResult result = currentResults.get(contentHash);
+    if (result == null) {
+      result = previousResults.get(contentHash);
+      if (result != null) {
+        currentResults.put(contentHash, result);
+      }
+    }
+    return result;
+  }
+
+  public void put(String contentHash, CSharpFileResult result) {
+    currentResults.put(contentHash, result);
+  }
+
+  /**
+   * Writes the results used or computed during the current analysis to the cache file.
+   */
+  public void save() {
+    ObjectOutputStream out = null;
+    try {
+      cacheFile.getParentFile().mkdirs();
+      out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile), BUFFER_SIZE));
+      out.writeObject(fingerprint);
+      out.writeObject(currentResults);
+      LOG.debug("{} C# file results saved to {}", currentResults.size(), cacheFile);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the C# Squid cache " + cacheFile, e);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Computes the SHA-1 hash of the content of the given file.
+   */
+  public static String hash(File file) throws IOException {
+    MessageDigest digest = createDigest();
+    update(digest, new FileInputStream(file));
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Computes the fingerprint of an analysis from a description of its configuration and from the jars (or class directories) that
+   * contain the given classes: as they hold the classes that compute the results (grammar, lexer, visitors, checks...), the fingerprint
+   * changes as soon as a new version of one of them is deployed.
+   */
+  public static String fingerprint(String configuration, Collection<Class> classes) {
+    MessageDigest digest = createDigest();
+    try {
+      digest.update(configuration.getBytes("UTF-8"));
+      Set<String> classNames = Sets.newTreeSet();
+      Set<File> codeSources = Sets.newTreeSet();
+      for (Class clazz : classes) {
+        File codeSource = getCodeSource(clazz);
+        if (codeSource == null) {
+          classNames.add(clazz.getName());
+        } else {
+          codeSources.add(codeSource);
+        }
+      }
+      for (String className : classNames) {
+        digest.update(className.getBytes("UTF-8"));
+      }
+      for (File codeSource : codeSources) {
+        if (codeSource.isDirectory()) {
+          updateWithDirectory(digest, codeSource);
+        } else {
+          update(digest, new FileInputStream(codeSource));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to compute the fingerprint of the C# analysis", e);
+    }
+    return toHex(digest.digest());
+  }
+
+  private static File getCodeSource(Class clazz) {
+    CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+    File file = FileUtils.toFile(codeSource.getLocation());
+    return file != null && file.exists() ? file : null;
+  }
+
+  private static void updateWithDirectory(MessageDigest digest, File directory) throws IOException {
+    List<File> files = Lists.newArrayList(FileUtils.listFiles(directory, null, true));
+    Collections.sort(files);
+    int prefixLength = directory.getAbsolutePath().length();
+    for (File file : files) {
+      digest.update(file.getAbsolutePath().substring(prefixLength).getBytes("UTF-8"));
+      update(digest, new FileInputStream(file));
+    }
+  }
+
+  private static void update(MessageDigest digest, InputStream in) throws IOException {
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read = in.read(buffer);
+      while (read != -1) {
+        digest.update(buffer, 0, read);
+        read = in.read(buffer);
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+}
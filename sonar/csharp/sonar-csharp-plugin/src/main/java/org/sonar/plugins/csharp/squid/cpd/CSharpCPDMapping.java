@@ -34,12 +34,20 @@ public class CSharpCPDMapping extends AbstractCpdMapping {
   private final CSharp csharp;
   private final boolean ignoreLiterals;
   private final Charset charset;
+  private final boolean useFastLexer;
+  private final CSharpTokenStore tokenStore;
 
   public CSharpCPDMapping(CSharp csharp, Project project, Settings settings) {
+    this(csharp, project, settings, new CSharpTokenStore());
+  }
+
+  public CSharpCPDMapping(CSharp csharp, Project project, Settings settings, CSharpTokenStore tokenStore) {
     super();
+    this.tokenStore = tokenStore;
     this.csharp = csharp;
     this.charset = project.getFileSystem().getSourceCharset();
     ignoreLiterals = settings.getBoolean(CSharpSquidConstants.CPD_IGNORE_LITERALS_PROPERTY);
+    useFastLexer = settings.getBoolean(CSharpSquidConstants.FAST_LEXER_PROPERTY);
   }
 
   public Language getLanguage() {
@@ -47,7 +55,7 @@ public class CSharpCPDMapping extends AbstractCpdMapping {
   }
 
   public Tokenizer getTokenizer() {
-    return new CSharpCPDTokenizer(ignoreLiterals, charset);
+    return new CSharpCPDTokenizer(ignoreLiterals, charset, useFastLexer, tokenStore);
   }
 
 }
@@ -21,13 +21,15 @@ package org.sonar.plugins.csharp.squid.cpd;
 
 import com.sonar.csharp.squid.CSharpConfiguration;
 import com.sonar.csharp.squid.api.CSharpTokenType;
-import com.sonar.csharp.squid.lexer.CSharpLexer;
+import com.sonar.csharp.squid.parser.CSharpParserPool;
+import com.sonar.sslr.api.Preprocessor;
 import com.sonar.sslr.api.Token;
 import com.sonar.sslr.impl.Lexer;
 import net.sourceforge.pmd.cpd.SourceCode;
 import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
+import org.sonar.plugins.csharp.squid.cpd.CSharpTokenStore.FileTokens;
 
 import java.io.File;
 import java.nio.charset.Charset;
@@ -37,29 +39,60 @@ import static com.sonar.sslr.api.GenericTokenType.EOF;
 public class CSharpCPDTokenizer implements Tokenizer {
 
   private final boolean ignoreLiterals;
-  private final Charset charset;
+  private final CSharpConfiguration conf;
+  private final Preprocessor ignoreUsingDirectivePreprocessor;
+  private final CSharpTokenStore tokenStore;
 
   public CSharpCPDTokenizer(boolean ignoreLiterals, Charset charset) {
-    this.charset = charset;
+    this(ignoreLiterals, charset, false);
+  }
+
+  public CSharpCPDTokenizer(boolean ignoreLiterals, Charset charset, boolean useFastLexer) {
+    this(ignoreLiterals, charset, useFastLexer, new CSharpTokenStore());
+  }
+
+  /**
+   * The files the tokens of which have been recorded in the given store are not lexed again.
+   */
+  public CSharpCPDTokenizer(boolean ignoreLiterals, Charset charset, boolean useFastLexer, CSharpTokenStore tokenStore) {
     this.ignoreLiterals = ignoreLiterals;
+    this.tokenStore = tokenStore;
+    this.conf = new CSharpConfiguration(charset);
+    this.conf.setUseFastLexer(useFastLexer);
+    this.ignoreUsingDirectivePreprocessor = new IgnoreUsingDirectivePreprocessor(conf);
   }
 
   public final void tokenize(SourceCode source, Tokens cpdTokens) {
-    CSharpConfiguration conf = new CSharpConfiguration(charset);
-    Lexer lexer = CSharpLexer.create(conf, new IgnoreUsingDirectivePreprocessor(conf));
-
     String fileName = source.getFileName();
-    for (Token token : lexer.lex(new File(fileName))) {
-      if (token.getType() == EOF) {
-        break;
+    FileTokens fileTokens = tokenStore.take(new File(fileName));
+    if (fileTokens == null) {
+      lex(fileName, cpdTokens);
+    } else {
+      for (int i = 0; i < fileTokens.size(); i++) {
+        String image = ignoreLiterals && fileTokens.isStringLiteral(i) ? CSharpTokenType.STRING_LITERAL.getValue() : fileTokens.getValue(i);
+        cpdTokens.add(new TokenEntry(image, fileName, fileTokens.getLine(i)));
       }
-
-      TokenEntry cpdToken = new TokenEntry(getTokenImage(token), fileName, token.getLine());
-      cpdTokens.add(cpdToken);
     }
     cpdTokens.add(TokenEntry.getEOF());
   }
 
+  private void lex(String fileName, Tokens cpdTokens) {
+    CSharpParserPool pool = CSharpParserPool.getShared();
+    Lexer lexer = pool.borrowLexer(conf, ignoreUsingDirectivePreprocessor);
+    try {
+      for (Token token : lexer.lex(new File(fileName))) {
+        if (token.getType() == EOF) {
+          break;
+        }
+
+        TokenEntry cpdToken = new TokenEntry(getTokenImage(token), fileName, token.getLine());
+        cpdTokens.add(cpdToken);
+      }
+    } finally {
+      pool.returnLexer(conf, lexer, ignoreUsingDirectivePreprocessor);
+    }
+  }
+
   private String getTokenImage(Token token) {
     if (ignoreLiterals && token.getType() == CSharpTokenType.STRING_LITERAL) {
       return CSharpTokenType.STRING_LITERAL.getValue();
@@ -0,0 +1,106 @@
+/*
+ * Sonar C# Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.squid.cpd;
+
+import com.sonar.csharp.squid.api.CSharpTokenType;
+import com.sonar.sslr.api.Token;
+import org.sonar.api.BatchExtension;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the tokens recorded by the Squid analysis of each file, so that the CPD tokenizer does not have to read and lex the files again. <br/>
+ * The tokens of a file are released as soon as they have been taken by the tokenizer.
+ */
+public class CSharpTokenStore implements BatchExtension {
+
+  private final Map<String, FileTokens> tokensByFile = new ConcurrentHashMap<String, FileTokens>();
+
+  /**
+   * Records the tokens of the given file, in the order of the source code. Can be called concurrently for different files.
+   * 
+   * @param file
+   *          the source file
+   * @param tokens
+   *          the tokens of the file, without the EOF token nor the tokens of the using directives
+   */
+  public void put(File file, List<Token> tokens) {
+    tokensByFile.put(file.getAbsolutePath(), new FileTokens(tokens));
+  }
+
+  /**
+   * @return the tokens recorded for the given file, or null if the file has not been scanned. The tokens are removed from the store.
+   */
+  public FileTokens take(File file) {
+    return tokensByFile.remove(file.getAbsolutePath());
+  }
+
+  /**
+   * @return the number of files the tokens of which are kept
+   */
+  public int size() {
+    return tokensByFile.size();
+  }
+
+  /**
+   * Compact images of the tokens of a file.
+   */
+  public static final class FileTokens {
+
+    private final String[] values;
+    private final int[] lines;
+    private final BitSet stringLiterals = new BitSet();
+
+    FileTokens(List<Token> tokens) {
+      values = new String[tokens.size()];
+      lines = new int[tokens.size()];
+      for (int i = 0; i < values.length; i++) {
+        Token token = tokens.get(i);
+        values[i] = token.getValue();
+        lines[i] = token.getLine();
+        if (token.getType() == CSharpTokenType.STRING_LITERAL) {
+          stringLiterals.set(i);
+        }
+      }
+    }
+
+    public int size() {
+      return values.length;
+    }
+
+    public String getValue(int index) {
+      return values[index];
+    }
+
+    public int getLine(int index) {
+      return lines[index];
+    }
+
+    public boolean isStringLiteral(int index) {
+      return stringLiterals.get(index);
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Sonar C# Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.squid.cpd;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.api.CSharpTokenType;
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.squid.SquidAstVisitor;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Visitor that records the tokens of each file into the {@link CSharpTokenStore}, skipping the using directives like
+ * {@link IgnoreUsingDirectivePreprocessor} does. The preprocessor directives, which the parser turns into trivia, are recorded as
+ * tokens since the CPD lexer produces them as such.
+ */
+public class CSharpTokenStoreVisitor extends SquidAstVisitor<CSharpGrammar> implements AstAndTokenVisitor {
+
+  private final CSharpTokenStore tokenStore;
+  private final List<Token> tokens = Lists.newArrayList();
+  private final Set<Token> usingDirectiveTokens = Sets.newSetFromMap(new IdentityHashMap<Token, Boolean>());
+
+  public CSharpTokenStoreVisitor(CSharpTokenStore tokenStore) {
+    this.tokenStore = tokenStore;
+  }
+
+  @Override
+  public void init() {
+    subscribeTo(getContext().getGrammar().usingDirective);
+  }
+
+  @Override
+  public void visitFile(AstNode astNode) {
+    tokens.clear();
+    usingDirectiveTokens.clear();
+  }
+
+  @Override
+  public void visitNode(AstNode astNode) {
+    // The first token of a using directive may already have been visited with one of its parents
+    addTokens(astNode);
+  }
+
+  public void visitToken(Token token) {
+    for (Trivia trivia : token.getTrivia()) {
+      if (trivia.isSkippedText() && trivia.getToken().getType() == CSharpTokenType.PREPROCESSOR) {
+        tokens.add(trivia.getToken());
+      }
+    }
+    if (!token.getType().equals(GenericTokenType.EOF)) {
+      tokens.add(token);
+    }
+  }
+
+  @Override
+  public void leaveFile(AstNode astNode) {
+    if (astNode != null) {
+      List<Token> recordedTokens = Lists.newArrayListWithCapacity(tokens.size());
+      for (Token token : tokens) {
+        if (!usingDirectiveTokens.contains(token)) {
+          recordedTokens.add(token);
+        }
+      }
+      tokenStore.put(getContext().getFile(), recordedTokens);
+    }
+    tokens.clear();
+    usingDirectiveTokens.clear();
+  }
+
+  private void addTokens(AstNode astNode) {
+    if (astNode.hasToken()) {
+      usingDirectiveTokens.add(astNode.getToken());
+    }
+    if (astNode.hasChildren()) {
+      for (AstNode child : astNode.getChildren()) {
+        addTokens(child);
+      }
+    }
+  }
+
+}
@@ -22,7 +22,7 @@ package org.sonar.plugins.csharp.squid.cpd;
 import com.sonar.csharp.squid.CSharpConfiguration;
 import com.sonar.csharp.squid.api.CSharpGrammar;
 import com.sonar.csharp.squid.api.CSharpKeyword;
-import com.sonar.csharp.squid.parser.CSharpParser;
+import com.sonar.csharp.squid.parser.CSharpParserPool;
 import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.Preprocessor;
 import com.sonar.sslr.api.PreprocessorAction;
@@ -36,18 +36,29 @@ import java.util.List;
 
 public class IgnoreUsingDirectivePreprocessor extends Preprocessor {
 
-  private final Parser<CSharpGrammar> parser;
+  private final ThreadLocal<Parser<CSharpGrammar>> parser;
 
-  public IgnoreUsingDirectivePreprocessor(CSharpConfiguration conf) {
-    this.parser = CSharpParser.create(conf);
-    this.parser.setRootRule(this.parser.getGrammar().usingDirective);
+  /**
+   * A parser is borrowed from the shared pool the first time a using directive is met by a thread, and is then kept for the following
+   * ones. The pooled lexers are shared by the preprocessors of the same class, so this preprocessor can be used by several threads.
+   */
+  public IgnoreUsingDirectivePreprocessor(final CSharpConfiguration conf) {
+    this.parser = new ThreadLocal<Parser<CSharpGrammar>>() {
+
+      @Override
+      protected Parser<CSharpGrammar> initialValue() {
+        Parser<CSharpGrammar> usingDirectiveParser = CSharpParserPool.getShared().borrowParser(conf);
+        usingDirectiveParser.setRootRule(usingDirectiveParser.getGrammar().usingDirective);
+        return usingDirectiveParser;
+      }
+    };
   }
 
   @Override
   public PreprocessorAction process(List<Token> tokens) {
     if (tokens.get(0).getType() == CSharpKeyword.USING) {
       try {
-        AstNode usingDirectiveNode = this.parser.parse(tokens);
+        AstNode usingDirectiveNode = parser.get().parse(tokens);
         return new PreprocessorAction(usingDirectiveNode.getToIndex(), new ArrayList<Trivia>(), new ArrayList<Token>());
       } catch (RecognitionException re) {
         return PreprocessorAction.NO_OPERATION;
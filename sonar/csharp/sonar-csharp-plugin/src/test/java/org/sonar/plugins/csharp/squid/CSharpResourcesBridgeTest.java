@@ -27,6 +27,8 @@ import org.sonar.squid.api.SourceClass;
 import org.sonar.squid.api.SourceFile;
 import org.sonar.squid.api.SourceMethod;
 
+import java.util.Arrays;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
@@ -84,6 +86,18 @@ public class CSharpResourcesBridgeTest {
     cSharpResourcesBridge.indexFile(null, null);
   }
 
+  @Test
+  public void testIndexLogicalResources() {
+    File sonarFile = mock(File.class);
+    when(sonarFile.getName()).thenReturn("Other.cs");
+
+    CSharpResourcesBridge bridge = new CSharpResourcesBridge();
+    bridge.indexLogicalResources(Arrays.asList("MyNamespace.OtherClass", "MyNamespace.OtherClass#GetBar"), sonarFile);
+
+    assertThat(bridge.getFromTypeName("MyNamespace", "OtherClass").getName(), is("Other.cs"));
+    assertThat(bridge.getFromMemberName("MyNamespace.OtherClass#GetBar").getName(), is("Other.cs"));
+  }
+
   @Test
   public void testGetFromMember() {
     Resource<?> file = cSharpResourcesBridge.getFromMemberName("MyNamespace.MyClass#GetFoo");
@@ -22,10 +22,22 @@ package org.sonar.plugins.csharp.squid;
 import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.sonar.sslr.api.AstNode;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.Tokens;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.ResourceCreationLock;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.checks.NoSonarFilter;
@@ -34,72 +46,290 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
 import org.sonar.api.profiles.RulesProfile;
 import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.InputFileUtils;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.Violation;
 import org.sonar.plugins.csharp.api.CSharp;
 import org.sonar.plugins.csharp.api.CSharpConstants;
 import org.sonar.plugins.csharp.core.CSharpCorePlugin;
+import org.sonar.plugins.csharp.squid.check.CSharpCheck;
+import org.sonar.plugins.csharp.squid.cpd.CSharpCPDTokenizer;
+import org.sonar.plugins.csharp.squid.cpd.CSharpTokenStore;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CSharpSquidSensorTest {
 
+  private Settings settings;
+  private FileLinesContextFactory fileLinesContextFactory;
+  private FileLinesContext fileLinesContext;
+  private CSharpTokenStore tokenStore;
   private CSharpSquidSensor sensor;
 
   @Before
   public void init() {
-    DotNetConfiguration dotNetConfiguration = new DotNetConfiguration(new Settings(new PropertyDefinitions(CSharpCorePlugin.class)));
+    settings = new Settings(new PropertyDefinitions(CSharpCorePlugin.class));
+    fileLinesContextFactory = mock(FileLinesContextFactory.class);
+    fileLinesContext = mock(FileLinesContext.class);
+    when(fileLinesContextFactory.createFor(Matchers.any(Resource.class))).thenReturn(fileLinesContext);
+    tokenStore = new CSharpTokenStore();
+    sensor = createSensor(mock(RulesProfile.class));
+  }
+
+  private CSharpSquidSensor createSensor(RulesProfile profile, CSharpCheck... checks) {
+    DotNetConfiguration dotNetConfiguration = new DotNetConfiguration(settings);
     CSharp language = new CSharp(dotNetConfiguration);
     CSharpResourcesBridge cSharpResourcesBridge = mock(CSharpResourcesBridge.class);
     ResourceCreationLock resourceCreationLock = mock(ResourceCreationLock.class);
     MicrosoftWindowsEnvironment microsoftWindowsEnvironment = mock(MicrosoftWindowsEnvironment.class);
-    RulesProfile profile = mock(RulesProfile.class);
     NoSonarFilter noSonarFilter = mock(NoSonarFilter.class);
-    FileLinesContextFactory fileLinesContextFactory = mock(FileLinesContextFactory.class);
-    FileLinesContext flc = mock(FileLinesContext.class);
-    when(fileLinesContextFactory.createFor(Matchers.any(Resource.class))).thenReturn(flc);
-    sensor = new CSharpSquidSensor(dotNetConfiguration, language, cSharpResourcesBridge, resourceCreationLock,
-        microsoftWindowsEnvironment, profile, noSonarFilter, fileLinesContextFactory);
+    return new CSharpSquidSensor(dotNetConfiguration, language, cSharpResourcesBridge, resourceCreationLock,
+        microsoftWindowsEnvironment, profile, noSonarFilter, fileLinesContextFactory, tokenStore, checks);
   }
 
   @Test
   public void analyse() {
+    Project project = mockProject("CSharpSquidSensor.cs");
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.analyse(project, context);
+
+    verifyMeasures(context, 1);
+  }
+
+  @Test
+  public void analyseWithSeveralThreads() {
+    String[] files = {"CSharpSquidSensor.cs", "tree/simpleFile.cs", "tree/TypesAllInOneFile.cs", "tree/NUnitFramework.cs"};
+    Map<String, Map<String, Object>> sequentialValues = analyseAndRecordValues(files);
+
+    settings.setProperty(CSharpSquidConstants.SCAN_THREADS_PROPERTY, "2");
+    Map<String, Map<String, Object>> parallelValues = analyseAndRecordValues(files);
+
+    // Each file must get its own measures and lines data, the same ones as with a sequential analysis
+    assertThat(sequentialValues.size()).isEqualTo(files.length);
+    assertThat(Sets.newHashSet(sequentialValues.values()).size()).isEqualTo(files.length);
+    assertThat(parallelValues).isEqualTo(sequentialValues);
+  }
+
+  @Test
+  public void analyseInStreamingMode() {
+    settings.setProperty(CSharpSquidConstants.STREAMING_PROPERTY, "true");
+    Project project = mockProject("CSharpSquidSensor.cs", "tree/Money.cs");
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.analyse(project, context);
+
+    verifyMeasures(context, 2);
+  }
+
+  @Test
+  public void analyseInStreamingModeWithSeveralThreads() {
+    settings.setProperty(CSharpSquidConstants.STREAMING_PROPERTY, "true");
+    settings.setProperty(CSharpSquidConstants.SCAN_THREADS_PROPERTY, "2");
+    Project project = mockProject("CSharpSquidSensor.cs", "tree/Money.cs");
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.analyse(project, context);
+
+    verifyMeasures(context, 2);
+  }
+
+  @Test
+  public void analyseInStreamingModeShouldInitializeChecksOnce() {
+    settings.setProperty(CSharpSquidConstants.STREAMING_PROPERTY, "true");
+    RulesProfile profile = RulesProfile.create();
+    profile.activateRule(Rule.create(CSharpSquidConstants.REPOSITORY_KEY, ClassDeclarationCheck.KEY, ClassDeclarationCheck.KEY), null);
+    sensor = createSensor(profile, new ClassDeclarationCheck());
+    SensorContext context = mock(SensorContext.class);
+
+    sensor.analyse(mockProject("CSharpSquidSensor.cs", "tree/Money.cs"), context);
+
+    // 3 classes in each file, each of them reported once
+    ArgumentCaptor<Violation> violations = ArgumentCaptor.forClass(Violation.class);
+    verify(context, times(6)).saveViolation(violations.capture());
+    Set<String> reportedClasses = Sets.newHashSet();
+    for (Violation violation : violations.getAllValues()) {
+      reportedClasses.add(violation.getResource().getKey() + ":" + violation.getLineId());
+    }
+    assertThat(reportedClasses).hasSize(6);
+  }
+
+  @Test
+  public void analyseWithCache() {
+    File workDir = new File("target/sonar/squid-cache");
+    FileUtils.deleteQuietly(workDir);
+    settings.setProperty(CSharpSquidConstants.CACHE_ENABLED_PROPERTY, "true");
+
+    Project project = mockProject("CSharpSquidSensor.cs");
+    when(project.getFileSystem().getSonarWorkingDirectory()).thenReturn(workDir);
+    sensor.analyse(project, mock(SensorContext.class));
+    assertThat(new File(workDir, CSharpSquidConstants.CACHE_FILE).isFile()).isTrue();
+
+    // Second analysis: the file did not change, its results (including lines data) come from the cache
+    SensorContext context = mock(SensorContext.class);
+    sensor.analyse(project, context);
+
+    verifyMeasures(context, 1);
+    verify(fileLinesContext, times(2 * 363)).setIntValue(Mockito.eq(CoreMetrics.NCLOC_DATA_KEY), Mockito.anyInt(), Mockito.anyInt());
+  }
+
+  @Test
+  public void analyseShouldRecordTokensForCpd() {
+    assertRecordedTokensAreLexedTokens("CSharpSquidSensor.cs");
+  }
+
+  @Test
+  public void analyseShouldRecordPreprocessorDirectivesForCpd() {
+    assertRecordedTokensAreLexedTokens("cpd/preprocessorDirectives.cs");
+  }
+
+  @Test
+  public void analyseShouldNotRecordTokensWhenCpdIsSkipped() {
+    settings.setProperty(CoreProperties.CPD_SKIP_PROPERTY, "true");
+    sensor.analyse(mockProject("CSharpSquidSensor.cs"), mock(SensorContext.class));
+
+    assertThat(tokenStore.size()).isEqualTo(0);
+  }
+
+  private void assertRecordedTokensAreLexedTokens(String relativePath) {
+    Project project = mockProject(relativePath);
+    sensor.analyse(project, mock(SensorContext.class));
+    assertThat(tokenStore.size()).isEqualTo(1);
+
+    File file = new File("src/test/resources", relativePath);
+    Tokens recordedTokens = tokenize(new CSharpCPDTokenizer(true, Charset.forName("UTF-8"), false, tokenStore), file);
+    Tokens lexedTokens = tokenize(new CSharpCPDTokenizer(true, Charset.forName("UTF-8")), file);
+
+    assertThat(tokenStore.size()).isEqualTo(0);
+    assertThat(recordedTokens.size()).isEqualTo(lexedTokens.size());
+    for (int i = 0; i < lexedTokens.size(); i++) {
+      TokenEntry recorded = recordedTokens.getTokens().get(i);
+      TokenEntry lexed = lexedTokens.getTokens().get(i);
+      assertThat(recorded.getIdentifier()).isEqualTo(lexed.getIdentifier());
+      assertThat(recorded.getBeginLine()).isEqualTo(lexed.getBeginLine());
+    }
+  }
+
+  private Tokens tokenize(CSharpCPDTokenizer tokenizer, File file) {
+    Tokens tokens = new Tokens();
+    tokenizer.tokenize(new SourceCode(new SourceCode.FileCodeLoader(file, "UTF-8")), tokens);
+    return tokens;
+  }
+
+  /**
+   * Analyses the given files, and returns the measures and the lines data saved for each file. Also checks that they are all saved from
+   * the thread of the sensor.
+   */
+  private Map<String, Map<String, Object>> analyseAndRecordValues(String... relativePaths) {
+    final Thread sensorThread = Thread.currentThread();
+    final Map<String, Map<String, Object>> valuesByFile = Maps.newHashMap();
+    SensorContext context = mock(SensorContext.class);
+    when(context.saveMeasure(Mockito.any(Resource.class), Mockito.any(Metric.class), Mockito.any(Double.class))).thenAnswer(new Answer<Measure>() {
+
+      public Measure answer(InvocationOnMock invocation) {
+        Object[] arguments = invocation.getArguments();
+        recordValue(valuesByFile, sensorThread, (Resource) arguments[0], ((Metric) arguments[1]).getKey(), arguments[2]);
+        return null;
+      }
+    });
+    // Not stubbed with when(): the answer of a previous call would be run, and would stub a mock in the middle of the stubbing
+    doAnswer(new Answer<FileLinesContext>() {
+
+      public FileLinesContext answer(InvocationOnMock invocation) {
+        assertThat(Thread.currentThread()).isSameAs(sensorThread);
+        final Resource resource = (Resource) invocation.getArguments()[0];
+        FileLinesContext linesContext = mock(FileLinesContext.class);
+        doAnswer(new Answer<Void>() {
+
+          public Void answer(InvocationOnMock invocation) {
+            Object[] arguments = invocation.getArguments();
+            recordValue(valuesByFile, sensorThread, resource, arguments[0] + ":" + arguments[1], arguments[2]);
+            return null;
+          }
+        }).when(linesContext).setIntValue(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+        return linesContext;
+      }
+    }).when(fileLinesContextFactory).createFor(Matchers.any(Resource.class));
+
+    sensor.analyse(mockProject(relativePaths), context);
+    return valuesByFile;
+  }
+
+  private static void recordValue(Map<String, Map<String, Object>> valuesByFile, Thread sensorThread, Resource resource, String key, Object value) {
+    assertThat(Thread.currentThread()).isSameAs(sensorThread);
+    Map<String, Object> values = valuesByFile.get(resource.getKey());
+    if (values == null) {
+      values = Maps.newHashMap();
+      valuesByFile.put(resource.getKey(), values);
+    }
+    values.put(key, value);
+  }
+
+  private Project mockProject(String... relativePaths) {
     ProjectFileSystem projectFileSystem = mock(ProjectFileSystem.class);
     when(projectFileSystem.getSourceCharset()).thenReturn(Charset.forName("UTF-8"));
-    InputFile inputFile = InputFileUtils.create(
-        new File("src/test/resources/"),
-        new File("src/test/resources/CSharpSquidSensor.cs"));
-    when(projectFileSystem.mainFiles(CSharpConstants.LANGUAGE_KEY)).thenReturn(ImmutableList.of(inputFile));
+    List<InputFile> inputFiles = Lists.newArrayList();
+    for (String relativePath : relativePaths) {
+      inputFiles.add(InputFileUtils.create(new File("src/test/resources/"), new File("src/test/resources/" + relativePath)));
+    }
+    when(projectFileSystem.mainFiles(CSharpConstants.LANGUAGE_KEY)).thenReturn(inputFiles);
     when(projectFileSystem.getSourceDirs()).thenReturn(ImmutableList.of(new File("src/test/resources/")));
 
     Project project = mock(Project.class);
     when(project.getFileSystem()).thenReturn(projectFileSystem);
+    return project;
+  }
 
-    SensorContext context = mock(SensorContext.class);
+  /**
+   * Check that subscribes to the class declarations when it is initialized, and reports each of them.
+   */
+  @org.sonar.check.Rule(key = ClassDeclarationCheck.KEY)
+  public static class ClassDeclarationCheck extends CSharpCheck {
 
-    sensor.analyse(project, context);
+    static final String KEY = "ClassDeclaration";
+
+    @Override
+    public void init() {
+      subscribeTo(getContext().getGrammar().classDeclaration);
+    }
+
+    @Override
+    public void visitNode(AstNode astNode) {
+      getContext().createLineViolation(this, "Class declaration", astNode);
+    }
+  }
 
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.FILES), Mockito.eq(1.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.CLASSES), Mockito.eq(3.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.FUNCTIONS), Mockito.eq(31.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.LINES), Mockito.eq(363.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.NCLOC), Mockito.eq(278.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.STATEMENTS), Mockito.eq(144.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.ACCESSORS), Mockito.eq(10.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMPLEXITY), Mockito.eq(72.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENT_BLANK_LINES), Mockito.eq(0.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENTED_OUT_CODE_LINES), Mockito.eq(0.0));
-    verify(context).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENT_LINES), Mockito.eq(33.0));
+  private void verifyMeasures(SensorContext context, int fileCount) {
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.FILES), Mockito.eq(1.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.CLASSES), Mockito.eq(3.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.FUNCTIONS), Mockito.eq(31.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.LINES), Mockito.eq(363.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.NCLOC), Mockito.eq(278.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.STATEMENTS), Mockito.eq(144.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.ACCESSORS), Mockito.eq(10.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMPLEXITY), Mockito.eq(72.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENT_BLANK_LINES), Mockito.eq(0.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENTED_OUT_CODE_LINES), Mockito.eq(0.0));
+    verify(context, times(fileCount)).saveMeasure(Mockito.any(Resource.class), Mockito.eq(CoreMetrics.COMMENT_LINES), Mockito.eq(33.0));
   }
 
 }
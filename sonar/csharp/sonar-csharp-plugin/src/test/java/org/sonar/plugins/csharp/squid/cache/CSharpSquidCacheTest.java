@@ -0,0 +1,125 @@
+/*
+ * Sonar C# Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.squid.cache;
+
+import com.sonar.csharp.squid.api.CSharpMetric;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CSharpSquidCacheTest {
+
+  private File cacheFile;
+
+  @Before
+  public void init() {
+    cacheFile = new File("target/sonar/cache/csharp-squid.cache");
+    FileUtils.deleteQuietly(cacheFile);
+  }
+
+  @Test
+  public void shouldReloadSavedResults() {
+    CSharpFileResult result = new CSharpFileResult();
+    result.setDouble(CSharpMetric.COMPLEXITY, 12.0);
+    result.setMethodComplexities(new double[] {1.0, 11.0});
+    result.setLinesOfCode(new int[] {1, 2, 5});
+    result.addMessage("ParsingError", 3, "Parse error");
+
+    CSharpSquidCache cache = CSharpSquidCache.load(cacheFile, "fingerprint");
+    cache.put("hash", result);
+    cache.save();
+
+    CSharpFileResult reloaded = CSharpSquidCache.load(cacheFile, "fingerprint").get("hash");
+    assertThat(reloaded).isNotNull();
+    assertThat(reloaded.getDouble(CSharpMetric.COMPLEXITY)).isEqualTo(12.0);
+    assertThat(reloaded.getDouble(CSharpMetric.LINES)).isEqualTo(0.0);
+    assertThat(reloaded.getMethodComplexities()).isEqualTo(new double[] {1.0, 11.0});
+    assertThat(reloaded.getLinesOfCode()).isEqualTo(new int[] {1, 2, 5});
+    assertThat(reloaded.getMessages()).hasSize(1);
+    assertThat(reloaded.getMessages().get(0).getRuleKey()).isEqualTo("ParsingError");
+    assertThat(reloaded.getMessages().get(0).getLine()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldDiscardResultsWhenFingerprintChanged() {
+    CSharpSquidCache cache = CSharpSquidCache.load(cacheFile, "fingerprint");
+    cache.put("hash", new CSharpFileResult());
+    cache.save();
+
+    assertThat(CSharpSquidCache.load(cacheFile, "otherFingerprint").get("hash")).isNull();
+  }
+
+  @Test
+  public void shouldOnlySaveUsedResults() {
+    CSharpSquidCache cache = CSharpSquidCache.load(cacheFile, "fingerprint");
+    cache.put("used", new CSharpFileResult());
+    cache.put("unused", new CSharpFileResult());
+    cache.save();
+
+    cache = CSharpSquidCache.load(cacheFile, "fingerprint");
+    assertThat(cache.get("used")).isNotNull();
+    cache.save();
+
+    cache = CSharpSquidCache.load(cacheFile, "fingerprint");
+    assertThat(cache.get("used")).isNotNull();
+    assertThat(cache.get("unused")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedCache() throws Exception {
+    FileUtils.writeStringToFile(cacheFile, "not a cache");
+
+    assertThat(CSharpSquidCache.load(cacheFile, "fingerprint").get("hash")).isNull();
+  }
+
+  @Test
+  public void shouldHashFileContent() throws Exception {
+    File file = new File("src/test/resources/CSharpSquidSensor.cs");
+    File sameContent = new File("src/test/resources/tree/Money.cs");
+    File otherContent = new File("src/test/resources/tree/simpleFile.cs");
+
+    assertThat(CSharpSquidCache.hash(file)).isEqualTo(CSharpSquidCache.hash(sameContent));
+    assertThat(CSharpSquidCache.hash(file)).isNotEqualTo(CSharpSquidCache.hash(otherContent));
+  }
+
+  @Test
+  public void fingerprintShouldDependOnConfiguration() {
+    String fingerprint = CSharpSquidCache.fingerprint("a", Collections.<Class> singleton(CSharpFileResult.class));
+
+    assertThat(CSharpSquidCache.fingerprint("a", Collections.<Class> singleton(CSharpFileResult.class))).isEqualTo(fingerprint);
+    assertThat(CSharpSquidCache.fingerprint("b", Collections.<Class> singleton(CSharpFileResult.class))).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void fingerprintShouldDependOnTheJarsOfTheClasses() {
+    String fingerprint = CSharpSquidCache.fingerprint("a", Collections.<Class> singleton(CSharpFileResult.class));
+
+    // Both classes come from the same class directory
+    assertThat(CSharpSquidCache.fingerprint("a", Collections.<Class> singleton(CSharpSquidCache.class))).isEqualTo(fingerprint);
+    assertThat(CSharpSquidCache.fingerprint("a", Arrays.<Class> asList(CSharpFileResult.class, Test.class))).isNotEqualTo(fingerprint);
+  }
+
+}
@@ -0,0 +1,28 @@
+#region Usings
+using System;
+#if DEBUG
+using System.Diagnostics;
+#endif
+#endregion
+
+namespace Example
+{
+#pragma warning disable 1591
+  public class Counter
+  {
+    #region Fields
+    private int count;
+    #endregion
+
+    public void Increment()
+    {
+#if DEBUG
+      Debug.WriteLine("Increment");
+#else
+      Console.WriteLine("Increment");
+#endif
+      count++;
+    }
+  }
+}
+#pragma warning restore 1591
@@ -0,0 +1,98 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Benchmarks
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.parser.CSharpParser;
+import com.sonar.sslr.api.RecognitionException;
+import com.sonar.sslr.impl.Parser;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The C# files the benchmarks run over: either the integration test corpus of csharp-squid, or a single generated large file.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+  /**
+   * System property giving the directory of the integration corpus, if the benchmarks are not run from the directory of this module.
+   */
+  public static final String CORPUS_DIRECTORY_PROPERTY = "benchmarks.corpus";
+  public static final String DEFAULT_CORPUS_DIRECTORY = "../csharp-squid/src/test/resources/integration";
+  public static final Charset CHARSET = Charset.forName("UTF-8");
+
+  private static final int LARGE_FILE_CLASSES = 2000;
+
+  @Param({"integration", "large"})
+  public String corpus;
+
+  private List<File> files;
+
+  @Setup
+  public void setUp() throws IOException {
+    if ("large".equals(corpus)) {
+      files = Collections.singletonList(LargeFileGenerator.generate(new File("target/benchmarks/Large.cs"), LARGE_FILE_CLASSES));
+    } else {
+      files = listParsableFiles(new File(System.getProperty(CORPUS_DIRECTORY_PROPERTY, DEFAULT_CORPUS_DIRECTORY)));
+    }
+  }
+
+  public List<File> getFiles() {
+    return files;
+  }
+
+  /**
+   * Some files of the integration corpus use preprocessing instructions which are not supported: they are left out, so that all the
+   * benchmarks process the same files.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<File> listParsableFiles(File directory) {
+    if (!directory.isDirectory()) {
+      throw new IllegalStateException("The C# corpus directory does not exist: " + directory.getAbsolutePath() + ". Set the "
+        + CORPUS_DIRECTORY_PROPERTY + " system property.");
+    }
+    Parser<CSharpGrammar> parser = CSharpParser.create(new CSharpConfiguration(CHARSET));
+    List<File> result = Lists.newArrayList();
+    for (File file : (Collection<File>) FileUtils.listFiles(directory, new String[] {"cs"}, true)) {
+      try {
+        parser.parse(file);
+        result.add(file);
+      } catch (RecognitionException e) {
+        // not part of the corpus
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Benchmarks
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Generates a large C# file, with a mix of declarations, statements, literals and comments.
+ */
+public final class LargeFileGenerator {
+
+  private LargeFileGenerator() {
+  }
+
+  public static File generate(File file, int classes) throws IOException {
+    StringBuilder source = new StringBuilder();
+    source.append("// Generated file\n");
+    source.append("using System;\n");
+    source.append("using System.Collections.Generic;\n\n");
+    source.append("namespace Benchmarks.Generated\n{\n");
+    for (int i = 0; i < classes; i++) {
+      appendClass(source, i);
+    }
+    source.append("}\n");
+    FileUtils.writeStringToFile(file, source.toString(), Corpus.CHARSET.name());
+    return file;
+  }
+
+  private static void appendClass(StringBuilder source, int index) {
+    source.append("    /// <summary>\n");
+    source.append("    /// Generated class number ").append(index).append(".\n");
+    source.append("    /// </summary>\n");
+    source.append("    public class Generated").append(index).append(" : IDisposable\n    {\n");
+    source.append("        private readonly List<string> values = new List<string>();\n");
+    source.append("        private int count = 0x").append(Integer.toHexString(index)).append(";\n\n");
+    source.append("        public int Count\n        {\n");
+    source.append("            get { return count; }\n");
+    source.append("            set { count = value; }\n");
+    source.append("        }\n\n");
+    source.append("        public string Compute(int input, double ratio)\n        {\n");
+    source.append("            /* Loops and conditions */\n");
+    source.append("            for (int i = 0; i < input; i++)\n            {\n");
+    source.append("                if (i % 2 == 0 && ratio > 1.5e3)\n                {\n");
+    source.append("                    values.Add(\"even \" + i);\n");
+    source.append("                }\n");
+    source.append("                else if (i % 3 == 0 || ratio < 0.5f)\n                {\n");
+    source.append("                    values.Add(@\"verbatim \\ \" + i);\n");
+    source.append("                }\n");
+    source.append("            }\n");
+    source.append("            switch (input)\n            {\n");
+    source.append("                case 0:\n                    return \"zero\";\n");
+    source.append("                case 1:\n                    return 'a'.ToString();\n");
+    source.append("                default:\n                    break;\n");
+    source.append("            }\n");
+    source.append("            while (count > 100L)\n            {\n");
+    source.append("                count -= input; // decrease\n");
+    source.append("            }\n");
+    source.append("            return string.Join(\",\", values.ToArray());\n");
+    source.append("        }\n\n");
+    source.append("        public void Dispose()\n        {\n");
+    source.append("            values.Clear();\n");
+    source.append("        }\n");
+    source.append("    }\n\n");
+  }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Benchmarks
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.sonar.csharp.checks.CheckList;
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.api.CSharpMetric;
+import com.sonar.csharp.squid.parser.CSharpParser;
+import com.sonar.csharp.squid.scanner.CSharpAstScanner;
+import com.sonar.sslr.impl.Parser;
+import com.sonar.sslr.squid.AstScanner;
+import com.sonar.sslr.squid.SquidAstVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.squid.api.SourceProject;
+import org.sonar.squid.indexer.QueryByType;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of the corpus by {@link CSharpAstScanner}: parsing, Squid tree, all the metric visitors and, depending on the profile, the
+ * checks of {@link CheckList}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScannerBenchmark {
+
+  @Param({"metrics", "fusedMetrics", "checks"})
+  public String profile;
+
+  private CSharpConfiguration conf;
+  private Parser<CSharpGrammar> parser;
+
+  @Setup
+  public void setUp() {
+    conf = new CSharpConfiguration(Corpus.CHARSET);
+    conf.setUseFusedMetrics("fusedMetrics".equals(profile));
+    parser = CSharpParser.create(conf);
+  }
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public double scan(Corpus corpus) throws Exception {
+    // Visitors are initialized by their scanner: each scan needs new instances
+    List<SquidAstVisitor<CSharpGrammar>> checks = Lists.newArrayList();
+    if ("checks".equals(profile)) {
+      for (Class checkClass : CheckList.getChecks()) {
+        checks.add((SquidAstVisitor<CSharpGrammar>) checkClass.newInstance());
+      }
+    }
+    AstScanner<CSharpGrammar> scanner = CSharpAstScanner.create(conf, parser, checks.toArray(new SquidAstVisitor[checks.size()]));
+    scanner.scanFiles(corpus.getFiles());
+
+    SourceProject project = (SourceProject) scanner.getIndex().search(new QueryByType(SourceProject.class)).iterator().next();
+    return project.getDouble(CSharpMetric.COMPLEXITY);
+  }
+
+}
@@ -26,6 +26,8 @@ import java.nio.charset.Charset;
 public class CSharpConfiguration extends SquidConfiguration {
 
   private boolean ignoreHeaderComments = true;
+  private boolean useFastLexer = false;
+  private boolean useFusedMetrics = false;
 
   public CSharpConfiguration(Charset charset) {
     super(charset);
@@ -43,4 +45,28 @@ public class CSharpConfiguration extends SquidConfiguration {
     return ignoreHeaderComments;
   }
 
+  /**
+   * If true, the lexer recognizes most of the tokens with a hand-written channel instead of regular expressions. The produced tokens are
+   * the same.
+   */
+  public void setUseFastLexer(boolean useFastLexer) {
+    this.useFastLexer = useFastLexer;
+  }
+
+  public boolean getUseFastLexer() {
+    return useFastLexer;
+  }
+
+  /**
+   * If true, the scanner computes the lines, comments, statements, accessors, complexity and public API metrics with a single visitor
+   * instead of one visitor per metric. The computed values are the same.
+   */
+  public void setUseFusedMetrics(boolean useFusedMetrics) {
+    this.useFusedMetrics = useFusedMetrics;
+  }
+
+  public boolean getUseFusedMetrics() {
+    return useFusedMetrics;
+  }
+
 }
@@ -0,0 +1,487 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.lexer;
+
+import com.google.common.collect.Maps;
+import com.sonar.csharp.squid.api.CSharpKeyword;
+import com.sonar.csharp.squid.api.CSharpPunctuator;
+import com.sonar.csharp.squid.api.CSharpTokenType;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.Lexer;
+import org.sonar.channel.Channel;
+import org.sonar.channel.CodeReader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Hand-written channel that recognizes, with a switch on the current character, the tokens and comments that are otherwise recognized
+ * by the regular expression based channels of {@link CSharpLexer}.<br/>
+ * It declines (returns false) every time the regular expressions would have to backtrack to find a match (unterminated strings for
+ * instance): the regular expression based channels, which come next, then give exactly the same result as without this channel.
+ */
+public class CSharpChannel extends Channel<Lexer> {
+
+  private static final int EOF = -1;
+
+  private final Map<String, CSharpKeyword> keywords = Maps.newHashMap();
+  private final CSharpPunctuator[] punctuators;
+
+  public CSharpChannel() {
+    for (CSharpKeyword keyword : CSharpKeyword.values()) {
+      keywords.put(keyword.getValue(), keyword);
+    }
+    punctuators = CSharpPunctuator.values();
+    // Longest punctuators first
+    Arrays.sort(punctuators, new Comparator<CSharpPunctuator>() {
+
+      public int compare(CSharpPunctuator punctuator1, CSharpPunctuator punctuator2) {
+        return punctuator2.getValue().length() - punctuator1.getValue().length();
+      }
+    });
+  }
+
+  @Override
+  public boolean consume(CodeReader code, Lexer lexer) {
+    int c = code.peek();
+    switch (c) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000B':
+      case '\f':
+      case '\r':
+        while (isWhitespace(charAt(code, 0))) {
+          code.pop();
+        }
+        return true;
+      case '/':
+        return consumeComment(code, lexer) || consumePunctuator(code, lexer);
+      case '"':
+        return consumeString(code, lexer);
+      case '\'':
+        return consumeCharacter(code, lexer);
+      case '@':
+        return charAt(code, 1) == '"' ? consumeVerbatimString(code, lexer) : consumeIdentifierOrKeyword(code, lexer, 1);
+      case '#':
+        return consumePreprocessorDirective(code, lexer);
+      case '.':
+        return consumeNumber(code, lexer) || consumePunctuator(code, lexer);
+      default:
+        if (isDigit(c)) {
+          return consumeNumber(code, lexer);
+        }
+        return consumeIdentifierOrKeyword(code, lexer, 0) || consumePunctuator(code, lexer);
+    }
+  }
+
+  private boolean consumeComment(CodeReader code, Lexer lexer) {
+    int next = charAt(code, 1);
+    int length;
+    if (next == '/') {
+      length = 2;
+      while (!isEndOfLine(charAt(code, length))) {
+        length++;
+      }
+    } else if (next == '*') {
+      length = indexOfEndOfComment(code);
+      if (length == EOF) {
+        return false;
+      }
+    } else {
+      return false;
+    }
+
+    Token token = createToken(GenericTokenType.COMMENT, code, length, lexer);
+    lexer.addTrivia(Trivia.createComment(token));
+    return true;
+  }
+
+  private static int indexOfEndOfComment(CodeReader code) {
+    int length = code.length();
+    for (int i = 2; i < length - 1; i++) {
+      if (code.charAt(i) == '*' && code.charAt(i + 1) == '/') {
+        return i + 2;
+      }
+    }
+    return EOF;
+  }
+
+  /**
+   * "(\\.|[^"\n\r])*"
+   */
+  private static boolean consumeString(CodeReader code, Lexer lexer) {
+    int length = endOfQuotedLiteral(code, '"', 1);
+    if (length == EOF) {
+      return false;
+    }
+    addToken(CSharpTokenType.STRING_LITERAL, code, length, lexer);
+    return true;
+  }
+
+  /**
+   * '(\\.|[^'\n\r])+'
+   */
+  private static boolean consumeCharacter(CodeReader code, Lexer lexer) {
+    if (charAt(code, 1) == '\'') {
+      return false;
+    }
+    int length = endOfQuotedLiteral(code, '\'', 1);
+    if (length == EOF) {
+      return false;
+    }
+    addToken(CSharpTokenType.CHARACTER_LITERAL, code, length, lexer);
+    return true;
+  }
+
+  private static int endOfQuotedLiteral(CodeReader code, char quote, int start) {
+    int i = start;
+    while (true) {
+      int c = charAt(code, i);
+      if (c == quote) {
+        return i + 1;
+      } else if (c == EOF || c == '\n' || c == '\r') {
+        // The regular expression would backtrack on escaped quotes
+        return EOF;
+      } else if (c == '\\' && !isLineTerminator(charAt(code, i + 1))) {
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Verbatim string literal: @"(""|[^"])*"
+   */
+  private static boolean consumeVerbatimString(CodeReader code, Lexer lexer) {
+    int i = 2;
+    while (true) {
+      int c = charAt(code, i);
+      if (c == EOF) {
+        // The regular expression would backtrack on doubled quotes
+        return false;
+      } else if (c == '"') {
+        if (charAt(code, i + 1) != '"') {
+          break;
+        }
+        i += 2;
+      } else {
+        i++;
+      }
+    }
+    addToken(CSharpTokenType.STRING_LITERAL, code, i + 1, lexer);
+    return true;
+  }
+
+  /**
+   * #[^\r\n]*
+   */
+  private static boolean consumePreprocessorDirective(CodeReader code, Lexer lexer) {
+    int length = 1;
+    while (!isEndOfLine(charAt(code, length))) {
+      length++;
+    }
+    addToken(CSharpTokenType.PREPROCESSOR, code, length, lexer);
+    return true;
+  }
+
+  /**
+   * Tries the real literals, the hexadecimal integer literals and the decimal integer literals, in that order.
+   */
+  private static boolean consumeNumber(CodeReader code, Lexer lexer) {
+    int integralPartEnd = skipDigits(code, 0);
+
+    // [0-9]*\.[0-9]+ EXP? REAL_SUFFIX?
+    if (charAt(code, integralPartEnd) == '.' && isDigit(charAt(code, integralPartEnd + 1))) {
+      int end = skipDigits(code, integralPartEnd + 1);
+      end = skipRealSuffix(code, skipExponent(code, end));
+      addToken(CSharpTokenType.REAL_LITERAL, code, end, lexer);
+      return true;
+    }
+    if (integralPartEnd == 0) {
+      return false;
+    }
+
+    // [0-9]+ EXP REAL_SUFFIX?
+    int exponentEnd = skipExponent(code, integralPartEnd);
+    if (exponentEnd > integralPartEnd) {
+      addToken(CSharpTokenType.REAL_LITERAL, code, skipRealSuffix(code, exponentEnd), lexer);
+      return true;
+    }
+
+    // [0-9]+ REAL_SUFFIX
+    int realSuffixEnd = skipRealSuffix(code, integralPartEnd);
+    if (realSuffixEnd > integralPartEnd) {
+      addToken(CSharpTokenType.REAL_LITERAL, code, realSuffixEnd, lexer);
+      return true;
+    }
+
+    // 0[xX][0-9a-fA-F]+ INT_SUFFIX?
+    int x = charAt(code, 1);
+    if (code.peek() == '0' && (x == 'x' || x == 'X') && isHexaDigit(charAt(code, 2))) {
+      int end = 3;
+      while (isHexaDigit(charAt(code, end))) {
+        end++;
+      }
+      addToken(CSharpTokenType.INTEGER_HEX_LITERAL, code, skipIntegerSuffix(code, end), lexer);
+      return true;
+    }
+
+    // [0-9]+ INT_SUFFIX?
+    addToken(CSharpTokenType.INTEGER_DEC_LITERAL, code, skipIntegerSuffix(code, integralPartEnd), lexer);
+    return true;
+  }
+
+  private static int skipDigits(CodeReader code, int start) {
+    int i = start;
+    while (isDigit(charAt(code, i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * [Ee][+-]?[0-9]+
+   */
+  private static int skipExponent(CodeReader code, int start) {
+    int e = charAt(code, start);
+    if (e != 'e' && e != 'E') {
+      return start;
+    }
+    int i = start + 1;
+    int sign = charAt(code, i);
+    if (sign == '+' || sign == '-') {
+      i++;
+    }
+    if (!isDigit(charAt(code, i))) {
+      return start;
+    }
+    return skipDigits(code, i);
+  }
+
+  /**
+   * (F|f|D|d|M|m)
+   */
+  private static int skipRealSuffix(CodeReader code, int start) {
+    switch (charAt(code, start)) {
+      case 'F':
+      case 'f':
+      case 'D':
+      case 'd':
+      case 'M':
+      case 'm':
+        return start + 1;
+      default:
+        return start;
+    }
+  }
+
+  /**
+   * (((U|u)(L|l)?)|((L|l)(u|U)?))
+   */
+  private static int skipIntegerSuffix(CodeReader code, int start) {
+    int c = charAt(code, start);
+    if (c == 'U' || c == 'u') {
+      int l = charAt(code, start + 1);
+      return l == 'L' || l == 'l' ? start + 2 : start + 1;
+    } else if (c == 'L' || c == 'l') {
+      int u = charAt(code, start + 1);
+      return u == 'U' || u == 'u' ? start + 2 : start + 1;
+    }
+    return start;
+  }
+
+  /**
+   * Identifier or keyword: @?(LETTER_CHAR|_)(LETTER_CHAR|DECIMAL_DIGIT_CHAR|CONNECTING_CHAR|COMBINING_CHAR|FORMATTING_CHAR)*
+   */
+  private boolean consumeIdentifierOrKeyword(CodeReader code, Lexer lexer, int start) {
+    int length = code.length();
+    if (start >= length) {
+      return false;
+    }
+    int i = start;
+    int c = code.charAt(i);
+    if (c < 128) {
+      if (!isAsciiLetter(c) && c != '_') {
+        return false;
+      }
+      i++;
+    } else {
+      int codePoint = Character.codePointAt(code, i);
+      if (!isLetter(codePoint)) {
+        return false;
+      }
+      i += Character.charCount(codePoint);
+    }
+
+    while (i < length) {
+      c = code.charAt(i);
+      if (c < 128) {
+        // ASCII fast path
+        if (!isAsciiLetter(c) && !isDigit(c) && c != '_') {
+          break;
+        }
+        i++;
+      } else {
+        int codePoint = Character.codePointAt(code, i);
+        if (!isIdentifierPart(codePoint)) {
+          break;
+        }
+        i += Character.charCount(codePoint);
+      }
+    }
+
+    String value = value(code, i);
+    TokenType keyword = keywords.get(value);
+    addToken(keyword == null ? GenericTokenType.IDENTIFIER : keyword, value, code, lexer);
+    return true;
+  }
+
+  private boolean consumePunctuator(CodeReader code, Lexer lexer) {
+    int c = code.peek();
+    for (CSharpPunctuator punctuator : punctuators) {
+      String value = punctuator.getValue();
+      if (value.charAt(0) == c && startsWith(code, value)) {
+        addToken(punctuator, value, code, lexer);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean startsWith(CodeReader code, String value) {
+    if (value.length() > code.length()) {
+      return false;
+    }
+    for (int i = 1; i < value.length(); i++) {
+      if (code.charAt(i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addToken(TokenType type, CodeReader code, int length, Lexer lexer) {
+    lexer.addToken(createToken(type, code, length, lexer));
+  }
+
+  private static void addToken(TokenType type, String value, CodeReader code, Lexer lexer) {
+    lexer.addToken(createToken(type, value, code, lexer));
+  }
+
+  private static Token createToken(TokenType type, CodeReader code, int length, Lexer lexer) {
+    return createToken(type, value(code, length), code, lexer);
+  }
+
+  /**
+   * The first characters of the code, as CodeBuffer does not support subSequence().
+   */
+  private static String value(CodeReader code, int length) {
+    StringBuilder value = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      value.append(code.charAt(i));
+    }
+    return value.toString();
+  }
+
+  private static Token createToken(TokenType type, String value, CodeReader code, Lexer lexer) {
+    Token token = Token.builder()
+        .setType(type)
+        .setValueAndOriginalValue(value)
+        .setURI(lexer.getURI())
+        .setLine(code.getLinePosition())
+        .setColumn(code.getColumnPosition())
+        .build();
+    for (int i = 0; i < value.length(); i++) {
+      code.pop();
+    }
+    return token;
+  }
+
+  private static int charAt(CodeReader code, int index) {
+    return index < code.length() ? code.charAt(index) : EOF;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isEndOfLine(int c) {
+    return c == EOF || c == '\n' || c == '\r';
+  }
+
+  /**
+   * Characters that are not matched by "." in a regular expression.
+   */
+  private static boolean isLineTerminator(int c) {
+    return c == EOF || c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexaDigit(int c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isAsciiLetter(int c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  /**
+   * \p{Lu}|\p{Ll}|\p{Lt}|\p{Lm}|\p{Lo}|\p{Nl}
+   */
+  private static boolean isLetter(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.UPPERCASE_LETTER:
+      case Character.LOWERCASE_LETTER:
+      case Character.TITLECASE_LETTER:
+      case Character.MODIFIER_LETTER:
+      case Character.OTHER_LETTER:
+      case Character.LETTER_NUMBER:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * LETTER_CHAR|\p{Nd}|\p{Pc}|\p{Mn}|\p{Mc}|\p{Cf}
+   */
+  private static boolean isIdentifierPart(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.DECIMAL_DIGIT_NUMBER:
+      case Character.CONNECTOR_PUNCTUATION:
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.FORMAT:
+        return true;
+      default:
+        return isLetter(codePoint);
+    }
+  }
+
+}
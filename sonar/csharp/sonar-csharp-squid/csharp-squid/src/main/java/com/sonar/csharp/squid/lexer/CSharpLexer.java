@@ -69,8 +69,14 @@ public final class CSharpLexer {
     Lexer.Builder builder = Lexer.builder()
         .withCharset(conf.getCharset())
 
-        .withFailIfNoChannelToConsumeOneCharacter(true)
+        .withFailIfNoChannelToConsumeOneCharacter(true);
 
+    if (conf.getUseFastLexer()) {
+      // Handles most of the characters without regular expressions, and leaves the other ones to the following channels
+      builder.withChannel(new CSharpChannel());
+    }
+
+    builder
         // Comments
         .withChannel(commentRegexp("//", o2n("[^\\n\\r]")))
         .withChannel(commentRegexp("/\\*", ANY_CHAR + "*?", "\\*/"))
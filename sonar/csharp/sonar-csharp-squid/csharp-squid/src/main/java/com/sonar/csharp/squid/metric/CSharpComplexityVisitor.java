@@ -24,6 +24,7 @@ import com.sonar.csharp.squid.api.CSharpKeyword;
 import com.sonar.csharp.squid.api.CSharpMetric;
 import com.sonar.csharp.squid.api.CSharpPunctuator;
 import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.squid.SquidAstVisitor;
 
 /**
@@ -39,9 +40,7 @@ public class CSharpComplexityVisitor extends SquidAstVisitor<CSharpGrammar> {
   @Override
   public void init() {
     g = getContext().getGrammar();
-    subscribeTo(g.ifStatement, g.switchStatement, g.labeledStatement, g.whileStatement, g.doStatement, g.forStatement, g.returnStatement,
-        g.methodBody, g.accessorBody, g.addAccessorDeclaration, g.removeAccessorDeclaration, g.operatorBody, g.constructorBody,
-        g.destructorBody, g.staticConstructorBody, CSharpPunctuator.AND_OP, CSharpPunctuator.OR_OP, CSharpKeyword.CASE);
+    subscribeTo(getComplexityNodeTypes(g));
   }
 
   /**
@@ -49,18 +48,33 @@ public class CSharpComplexityVisitor extends SquidAstVisitor<CSharpGrammar> {
    */
   @Override
   public void visitNode(AstNode node) {
+    if (isComplexityIncrement(g, node)) {
+      getContext().peekSourceCode().add(CSharpMetric.COMPLEXITY, 1);
+    }
+  }
+
+  static AstNodeType[] getComplexityNodeTypes(CSharpGrammar g) {
+    return new AstNodeType[] {g.ifStatement, g.switchStatement, g.labeledStatement, g.whileStatement, g.doStatement, g.forStatement,
+      g.returnStatement, g.methodBody, g.accessorBody, g.addAccessorDeclaration, g.removeAccessorDeclaration, g.operatorBody,
+      g.constructorBody, g.destructorBody, g.staticConstructorBody, CSharpPunctuator.AND_OP, CSharpPunctuator.OR_OP, CSharpKeyword.CASE};
+  }
+
+  /**
+   * @return true if the given node, the type of which is one of {@link #getComplexityNodeTypes(CSharpGrammar)}, adds 1 to the complexity
+   */
+  static boolean isComplexityIncrement(CSharpGrammar g, AstNode node) {
     if (node.hasChildren() && node.getChild(0).is(CSharpPunctuator.SEMICOLON)) {
       // this is an empty declaration
-      return;
+      return false;
     }
-    if (node.is(g.returnStatement) && isLastReturnStatement(node)) {
+    if (node.is(g.returnStatement) && isLastReturnStatement(g, node)) {
       // last return of a block, do not count +1
-      return;
+      return false;
     }
-    getContext().peekSourceCode().add(CSharpMetric.COMPLEXITY, 1);
+    return true;
   }
 
-  private boolean isLastReturnStatement(AstNode node) {
+  private static boolean isLastReturnStatement(CSharpGrammar g, AstNode node) {
     AstNode currentNode = node;
     AstNode parent = currentNode.getParent();
     while (!parent.is(g.block)) {
@@ -71,13 +85,13 @@ public class CSharpComplexityVisitor extends SquidAstVisitor<CSharpGrammar> {
     if (!currentNode.nextSibling().is(CSharpPunctuator.RCURLYBRACE)) {
       return false;
     }
-    if (isMemberBloc(parent.getParent())) {
+    if (isMemberBloc(g, parent.getParent())) {
       return true;
     }
     return false;
   }
 
-  private boolean isMemberBloc(AstNode parent) {
+  private static boolean isMemberBloc(CSharpGrammar g, AstNode parent) {
     return parent.is(g.methodBody) || parent.is(g.accessorBody) || parent.is(g.addAccessorDeclaration)
       || parent.is(g.removeAccessorDeclaration) || parent.is(g.operatorBody) || parent.is(g.constructorBody)
       || parent.is(g.destructorBody) || parent.is(g.staticConstructorBody);
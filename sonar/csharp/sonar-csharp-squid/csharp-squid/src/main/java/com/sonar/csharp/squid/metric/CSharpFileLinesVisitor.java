@@ -19,7 +19,6 @@
  */
 package com.sonar.csharp.squid.metric;
 
-import com.google.common.collect.Sets;
 import com.sonar.csharp.squid.api.CSharpGrammar;
 import com.sonar.csharp.squid.api.CSharpMetric;
 import com.sonar.sslr.api.AstAndTokenVisitor;
@@ -34,8 +33,8 @@ import org.sonar.api.measures.FileLinesContextFactory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Visitor that computes the CoreMetrics.NCLOC_DATA_KEY & CoreMetrics.COMMENT_LINES_DATA_KEY metrics used by the DevCockpit.
@@ -44,33 +43,37 @@ public class CSharpFileLinesVisitor extends SquidAstVisitor<CSharpGrammar> imple
 
   private Project project;
   private FileLinesContextFactory fileLinesContextFactory;
-  private FileLinesContext fileLinesContext;
-  private Set<Integer> linesOfCode = Sets.newHashSet();
-  private Set<Integer> linesOfComments = Sets.newHashSet();
+  // Bit sets are reused from one file to the other, and do not box the line numbers of the tokens
+  private final BitSet linesOfCode = new BitSet();
+  private final BitSet linesOfComments = new BitSet();
 
   public CSharpFileLinesVisitor(Project project, FileLinesContextFactory fileLinesContextFactory) {
     this.project = project;
     this.fileLinesContextFactory = fileLinesContextFactory;
   }
 
-  @Override
-  public void visitFile(AstNode astNode) {
-    File sonarFile = File.fromIOFile(getContext().getFile(), project);
-    fileLinesContext = fileLinesContextFactory.createFor(sonarFile);
-  }
-
   @Override
   public void leaveFile(AstNode astNode) {
     int fileLength = getContext().peekSourceCode().getInt(CSharpMetric.LINES);
+    saveLines(getContext().getFile(), fileLength, linesOfCode, linesOfComments);
 
+    linesOfCode.clear();
+    linesOfComments.clear();
+  }
+
+  /**
+   * Saves the lines of code and the lines of comments of a file. Can be overridden to keep them and save them later on, for instance
+   * when the file is not scanned from the thread of the sensor. The bit sets are cleared once this method returns.
+   */
+  protected void saveLines(java.io.File file, int fileLength, BitSet linesOfCode, BitSet linesOfComments) {
+    FileLinesContext fileLinesContext = fileLinesContextFactory.createFor(File.fromIOFile(file, project));
+    for (int line = 1; line <= fileLength; line++) {
+      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, linesOfCode.get(line) ? 1 : 0);
+    }
     for (int line = 1; line <= fileLength; line++) {
-      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, getLineOfCode(line));
-      fileLinesContext.setIntValue(CoreMetrics.COMMENT_LINES_DATA_KEY, line, getLineOfComment(line));
+      fileLinesContext.setIntValue(CoreMetrics.COMMENT_LINES_DATA_KEY, line, linesOfComments.get(line) ? 1 : 0);
     }
     fileLinesContext.save();
-
-    linesOfCode.clear();
-    linesOfComments.clear();
   }
 
   public void visitToken(Token token) {
@@ -78,27 +81,13 @@ public class CSharpFileLinesVisitor extends SquidAstVisitor<CSharpGrammar> imple
       return;
     }
 
-    linesOfCode.add(token.getLine());
+    linesOfCode.set(token.getLine());
     List<Trivia> trivias = token.getTrivia();
     for (Trivia trivia : trivias) {
       if (trivia.isComment()) {
-        linesOfComments.add(trivia.getToken().getLine());
+        linesOfComments.set(trivia.getToken().getLine());
       }
     }
   }
 
-  private int getLineOfCode(int line) {
-    if (linesOfCode.contains(line)) {
-      return 1;
-    }
-    return 0;
-  }
-
-  private int getLineOfComment(int line) {
-    if (linesOfComments.contains(line)) {
-      return 1;
-    }
-    return 0;
-  }
-
 }
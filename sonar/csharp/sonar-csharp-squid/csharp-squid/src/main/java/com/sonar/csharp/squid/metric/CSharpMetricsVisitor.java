@@ -0,0 +1,188 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.metric;
+
+import com.google.common.collect.Sets;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.api.CSharpMetric;
+import com.sonar.sslr.api.AstAndTokenVisitor;
+import com.sonar.sslr.api.AstNode;
+import com.sonar.sslr.api.AstNodeType;
+import com.sonar.sslr.api.CommentAnalyser;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.squid.SquidAstVisitor;
+import org.sonar.squid.api.SourceCode;
+import org.sonar.squid.api.SourceFile;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Visitor that computes in a single pass the metrics otherwise computed by the LinesVisitor, LinesOfCodeVisitor, CommentsVisitor and
+ * CounterVisitor (statements and accessors) of the SSLR Squid bridge, and by {@link CSharpComplexityVisitor} and
+ * {@link CSharpPublicApiVisitor}. Lines are tracked in bit sets rather than in sets of integers.
+ */
+public class CSharpMetricsVisitor extends SquidAstVisitor<CSharpGrammar> implements AstAndTokenVisitor {
+
+  private static final Pattern LINE_SEPARATOR = Pattern.compile("(\r)?\n|\r");
+
+  private final boolean ignoreHeaderComments;
+
+  private CSharpGrammar g;
+  private final Set<AstNodeType> statementTypes = Sets.newHashSet();
+  private final Set<AstNodeType> accessorTypes = Sets.newHashSet();
+  private final Set<AstNodeType> complexityTypes = Sets.newHashSet();
+  private final Set<AstNodeType> publicApiTypes = Sets.newHashSet();
+  private Map<AstNodeType, AstNodeType> modifiersMap;
+
+  private final BitSet linesOfCode = new BitSet();
+  private final BitSet comments = new BitSet();
+  private final BitSet blankComments = new BitSet();
+  private final BitSet noSonar = new BitSet();
+  private boolean seenFirstToken;
+
+  public CSharpMetricsVisitor(boolean ignoreHeaderComments) {
+    this.ignoreHeaderComments = ignoreHeaderComments;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void init() {
+    g = getContext().getGrammar();
+    statementTypes.addAll(Arrays.<AstNodeType> asList(g.labeledStatement, g.declarationStatement, g.expressionStatement,
+        g.selectionStatement, g.iterationStatement, g.jumpStatement, g.tryStatement, g.checkedStatement, g.uncheckedStatement,
+        g.lockStatement, g.usingStatement, g.yieldStatement));
+    accessorTypes.addAll(Arrays.<AstNodeType> asList(g.getAccessorDeclaration, g.setAccessorDeclaration, g.addAccessorDeclaration,
+        g.removeAccessorDeclaration));
+    complexityTypes.addAll(Arrays.asList(CSharpComplexityVisitor.getComplexityNodeTypes(g)));
+    modifiersMap = CSharpPublicApiVisitor.createModifiersMap(g);
+    publicApiTypes.addAll(modifiersMap.keySet());
+    publicApiTypes.addAll(Arrays.asList(CSharpPublicApiVisitor.getInterfaceMemberTypes(g)));
+
+    Set<AstNodeType> subscribedTypes = Sets.newHashSet();
+    subscribedTypes.addAll(statementTypes);
+    subscribedTypes.addAll(accessorTypes);
+    subscribedTypes.addAll(complexityTypes);
+    subscribedTypes.addAll(publicApiTypes);
+    subscribeTo(subscribedTypes.toArray(new AstNodeType[subscribedTypes.size()]));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitFile(AstNode astNode) {
+    linesOfCode.clear();
+    comments.clear();
+    blankComments.clear();
+    noSonar.clear();
+    seenFirstToken = false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitNode(AstNode node) {
+    AstNodeType type = node.getType();
+    SourceCode sourceCode = getContext().peekSourceCode();
+    if (statementTypes.contains(type)) {
+      sourceCode.add(CSharpMetric.STATEMENTS, 1);
+    }
+    if (accessorTypes.contains(type)) {
+      sourceCode.add(CSharpMetric.ACCESSORS, 1);
+    }
+    if (complexityTypes.contains(type) && CSharpComplexityVisitor.isComplexityIncrement(g, node)) {
+      sourceCode.add(CSharpMetric.COMPLEXITY, 1);
+    }
+    if (publicApiTypes.contains(type)) {
+      CSharpPublicApiVisitor.visitDeclaration(g, modifiersMap, node, sourceCode);
+    }
+  }
+
+  public void visitToken(Token token) {
+    if (token.getType().equals(GenericTokenType.EOF)) {
+      getContext().peekSourceCode().setMeasure(CSharpMetric.LINES, token.getLine());
+    } else {
+      // Lines of code are counted on the source code being visited when their first token is met, all the lines of multi-line tokens
+      // (verbatim strings) included
+      int lastLine = token.getLine();
+      String value = token.getValue();
+      for (int i = value.indexOf('\n'); i >= 0; i = value.indexOf('\n', i + 1)) {
+        lastLine++;
+      }
+      for (int line = token.getLine(); line <= lastLine; line++) {
+        if (!linesOfCode.get(line)) {
+          linesOfCode.set(line);
+          getContext().peekSourceCode().add(CSharpMetric.LINES_OF_CODE, 1);
+        }
+      }
+    }
+
+    for (Trivia trivia : token.getTrivia()) {
+      if (trivia.isComment() && (seenFirstToken || !ignoreHeaderComments)) {
+        visitComment(trivia.getToken());
+      }
+    }
+    seenFirstToken = true;
+  }
+
+  private void visitComment(Token commentToken) {
+    CommentAnalyser commentAnalyser = getContext().getCommentAnalyser();
+    String[] commentLines = LINE_SEPARATOR.split(commentAnalyser.getContents(commentToken.getOriginalValue()), -1);
+    int line = commentToken.getLine();
+    for (String commentLine : commentLines) {
+      if (commentLine.contains("NOSONAR")) {
+        noSonar.set(line);
+      } else if (commentAnalyser.isBlank(commentLine)) {
+        blankComments.set(line);
+      } else {
+        comments.set(line);
+      }
+      line++;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void leaveFile(AstNode astNode) {
+    SourceCode sourceCode = getContext().peekSourceCode();
+    if (sourceCode instanceof SourceFile) {
+      Set<Integer> noSonarLines = Sets.newHashSet();
+      for (int line = noSonar.nextSetBit(0); line >= 0; line = noSonar.nextSetBit(line + 1)) {
+        noSonarLines.add(line);
+      }
+      ((SourceFile) sourceCode).addNoSonarTagLines(noSonarLines);
+    }
+    sourceCode.add(CSharpMetric.COMMENT_LINES, comments.cardinality());
+    blankComments.andNot(comments);
+    sourceCode.add(CSharpMetric.COMMENT_BLANK_LINES, blankComments.cardinality());
+  }
+
+}
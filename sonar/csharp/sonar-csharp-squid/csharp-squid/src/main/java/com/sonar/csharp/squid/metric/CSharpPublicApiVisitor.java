@@ -27,6 +27,7 @@ import com.sonar.sslr.api.AstNode;
 import com.sonar.sslr.api.AstNodeType;
 import com.sonar.sslr.api.Trivia;
 import com.sonar.sslr.squid.SquidAstVisitor;
+import org.sonar.squid.api.SourceCode;
 
 import java.util.List;
 import java.util.Map;
@@ -36,7 +37,7 @@ import java.util.Map;
  */
 public class CSharpPublicApiVisitor extends SquidAstVisitor<CSharpGrammar> {
 
-  private final Map<AstNodeType, AstNodeType> modifiersMap = Maps.newHashMap();
+  private Map<AstNodeType, AstNodeType> modifiersMap;
 
   /**
    * {@inheritDoc}
@@ -44,6 +45,27 @@ public class CSharpPublicApiVisitor extends SquidAstVisitor<CSharpGrammar> {
   @Override
   public void init() {
     CSharpGrammar g = getContext().getGrammar();
+    modifiersMap = createModifiersMap(g);
+
+    subscribeTo(modifiersMap.keySet().toArray(new AstNodeType[modifiersMap.keySet().size()]));
+    // and we need to add interface members that are special cases (they do not have modifiers, they inherit the visibility of their
+    // enclosing interface definition)
+    subscribeTo(getInterfaceMemberTypes(g));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void visitNode(AstNode node) {
+    visitDeclaration(getContext().getGrammar(), modifiersMap, node, getContext().peekSourceCode());
+  }
+
+  /**
+   * @return the types of the declarations that can be part of the public API, associated with the type of their modifiers
+   */
+  static Map<AstNodeType, AstNodeType> createModifiersMap(CSharpGrammar g) {
+    Map<AstNodeType, AstNodeType> modifiersMap = Maps.newHashMap();
     modifiersMap.put(g.classDeclaration, g.classModifier);
     modifiersMap.put(g.structDeclaration, g.structModifier);
     modifiersMap.put(g.interfaceDeclaration, g.interfaceModifier);
@@ -56,49 +78,49 @@ public class CSharpPublicApiVisitor extends SquidAstVisitor<CSharpGrammar> {
     modifiersMap.put(g.eventDeclaration, g.eventModifier);
     modifiersMap.put(g.indexerDeclarator, g.indexerModifier);
     modifiersMap.put(g.operatorDeclaration, g.operatorModifier);
+    return modifiersMap;
+  }
 
-    subscribeTo(modifiersMap.keySet().toArray(new AstNodeType[modifiersMap.keySet().size()]));
-    // and we need to add interface members that are special cases (they do not have modifiers, they inherit the visibility of their
-    // enclosing interface definition)
-    subscribeTo(g.interfaceMethodDeclaration, g.interfacePropertyDeclaration, g.interfaceEventDeclaration, g.interfaceIndexerDeclaration);
+  static AstNodeType[] getInterfaceMemberTypes(CSharpGrammar g) {
+    return new AstNodeType[] {g.interfaceMethodDeclaration, g.interfacePropertyDeclaration, g.interfaceEventDeclaration,
+      g.interfaceIndexerDeclaration};
   }
 
   /**
-   * {@inheritDoc}
+   * Adds the given declaration to the public API of the given source code if it is public, and to its documented public API if it is
+   * preceded by a comment.
    */
-  @Override
-  public void visitNode(AstNode node) {
-    CSharpGrammar g = getContext().getGrammar();
+  static void visitDeclaration(CSharpGrammar g, Map<AstNodeType, AstNodeType> modifiersMap, AstNode node, SourceCode sourceCode) {
     AstNodeType nodeType = node.getType();
     boolean isPublicApi = false;
     if (node.getType().equals(g.interfaceMethodDeclaration) || node.getType().equals(g.interfacePropertyDeclaration)
       || node.getType().equals(g.interfaceEventDeclaration) || node.getType().equals(g.interfaceIndexerDeclaration)) {
       // then we must look at the visibility of the enclosing interface definition
-      isPublicApi = checkNodeForPublicModifier(node.findFirstParent(g.interfaceDeclaration), g.interfaceModifier);
+      isPublicApi = checkNodeForPublicModifier(node.findFirstParent(g.interfaceDeclaration), g.interfaceModifier, sourceCode);
     } else {
-      isPublicApi = checkNodeForPublicModifier(node, modifiersMap.get(nodeType));
+      isPublicApi = checkNodeForPublicModifier(node, modifiersMap.get(nodeType), sourceCode);
     }
     if (isPublicApi) {
       // let's see if it's documented
-      checkNodeForPreviousComments(node);
+      checkNodeForPreviousComments(node, sourceCode);
     }
   }
 
-  private boolean checkNodeForPublicModifier(AstNode currentNode, AstNodeType wantedChildrenType) {
+  private static boolean checkNodeForPublicModifier(AstNode currentNode, AstNodeType wantedChildrenType, SourceCode sourceCode) {
     List<AstNode> modifiers = currentNode.findDirectChildren(wantedChildrenType);
     for (AstNode astNode : modifiers) {
       if (astNode.getToken().getType().equals(CSharpKeyword.PUBLIC)) {
-        getContext().peekSourceCode().add(CSharpMetric.PUBLIC_API, 1);
+        sourceCode.add(CSharpMetric.PUBLIC_API, 1);
         return true;
       }
     }
     return false;
   }
 
-  private void checkNodeForPreviousComments(AstNode node) {
+  private static void checkNodeForPreviousComments(AstNode node, SourceCode sourceCode) {
     for (Trivia trivia : node.getToken().getTrivia()) {
       if (trivia.isComment()) {
-        getContext().peekSourceCode().add(CSharpMetric.PUBLIC_DOC_API, 1);
+        sourceCode.add(CSharpMetric.PUBLIC_DOC_API, 1);
         break;
       }
     }
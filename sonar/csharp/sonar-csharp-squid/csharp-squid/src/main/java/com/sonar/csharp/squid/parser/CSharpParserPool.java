@@ -0,0 +1,140 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.parser;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.lexer.CSharpLexer;
+import com.sonar.sslr.api.Preprocessor;
+import com.sonar.sslr.impl.Lexer;
+import com.sonar.sslr.impl.Parser;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the C# parsers and lexers which are not in use, so that the grammar and the lexer channels are built once per configuration
+ * instead of once per file or per analysis.
+ * <p>
+ * A borrowed instance is used by a single thread until it is given back. At most {@link #getMaxIdle()} idle instances are kept per
+ * configuration, the other ones are left to the garbage collector. Borrowing never blocks: a new instance is created when none is idle.
+ * </p>
+ */
+public final class CSharpParserPool {
+
+  public static final int DEFAULT_MAX_IDLE = 8;
+
+  private static final CSharpParserPool SHARED = new CSharpParserPool(DEFAULT_MAX_IDLE);
+
+  private final int maxIdle;
+  private final Map<String, LinkedList<Parser<CSharpGrammar>>> idleParsers = Maps.newHashMap();
+  private final Map<String, LinkedList<Lexer>> idleLexers = Maps.newHashMap();
+
+  public CSharpParserPool(int maxIdle) {
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * @return the pool shared by all the components of the analysis
+   */
+  public static CSharpParserPool getShared() {
+    return SHARED;
+  }
+
+  public int getMaxIdle() {
+    return maxIdle;
+  }
+
+  /**
+   * @return a parser for the given configuration, starting at the root rule of the grammar
+   */
+  public synchronized Parser<CSharpGrammar> borrowParser(CSharpConfiguration conf) {
+    Parser<CSharpGrammar> parser = poll(idleParsers, key(conf));
+    return parser == null ? CSharpParser.create(conf) : parser;
+  }
+
+  /**
+   * Gives back a parser previously borrowed with the same configuration. Its root rule is reset to the one of the grammar.
+   */
+  public synchronized void returnParser(CSharpConfiguration conf, Parser<CSharpGrammar> parser) {
+    parser.setRootRule(parser.getGrammar().getRootRule());
+    offer(idleParsers, key(conf), parser);
+  }
+
+  /**
+   * A pooled lexer keeps the preprocessors it has been created with: they must not hold any state between two files. Lexers are pooled
+   * per configuration and per classes of preprocessors.
+   *
+   * @return a lexer for the given configuration and preprocessors
+   */
+  public synchronized Lexer borrowLexer(CSharpConfiguration conf, Preprocessor... preprocessors) {
+    Lexer lexer = poll(idleLexers, key(conf, preprocessors));
+    return lexer == null ? CSharpLexer.create(conf, preprocessors) : lexer;
+  }
+
+  /**
+   * Gives back a lexer previously borrowed with the same configuration and the same classes of preprocessors.
+   */
+  public synchronized void returnLexer(CSharpConfiguration conf, Lexer lexer, Preprocessor... preprocessors) {
+    offer(idleLexers, key(conf, preprocessors), lexer);
+  }
+
+  synchronized int getIdleCount() {
+    int count = 0;
+    for (List<Parser<CSharpGrammar>> parsers : idleParsers.values()) {
+      count += parsers.size();
+    }
+    for (List<Lexer> lexers : idleLexers.values()) {
+      count += lexers.size();
+    }
+    return count;
+  }
+
+  private static <T> T poll(Map<String, LinkedList<T>> idle, String key) {
+    LinkedList<T> instances = idle.get(key);
+    return instances == null ? null : instances.poll();
+  }
+
+  private <T> void offer(Map<String, LinkedList<T>> idle, String key, T instance) {
+    LinkedList<T> instances = idle.get(key);
+    if (instances == null) {
+      instances = Lists.newLinkedList();
+      idle.put(key, instances);
+    }
+    if (instances.size() < maxIdle) {
+      instances.addFirst(instance);
+    }
+  }
+
+  private static String key(CSharpConfiguration conf, Preprocessor... preprocessors) {
+    StringBuilder key = new StringBuilder()
+        .append(conf.getCharset().name())
+        .append(';').append(conf.getIgnoreHeaderComments())
+        .append(';').append(conf.getUseFastLexer());
+    for (Preprocessor preprocessor : preprocessors) {
+      key.append(';').append(preprocessor.getClass().getName());
+    }
+    return key.toString();
+  }
+
+}
@@ -23,6 +23,7 @@ import com.sonar.csharp.squid.CSharpConfiguration;
 import com.sonar.csharp.squid.api.CSharpGrammar;
 import com.sonar.csharp.squid.api.CSharpMetric;
 import com.sonar.csharp.squid.metric.CSharpComplexityVisitor;
+import com.sonar.csharp.squid.metric.CSharpMetricsVisitor;
 import com.sonar.csharp.squid.metric.CSharpPublicApiVisitor;
 import com.sonar.csharp.squid.parser.CSharpParser;
 import com.sonar.csharp.squid.tree.CSharpMemberVisitor;
@@ -44,9 +45,17 @@ public final class CSharpAstScanner {
   }
 
   public static AstScanner<CSharpGrammar> create(CSharpConfiguration conf, SquidAstVisitor<CSharpGrammar>... visitors) {
+    return create(conf, CSharpParser.create(conf), visitors);
+  }
+
+  /**
+   * Creates a scanner on top of an existing parser, typically borrowed from {@link com.sonar.csharp.squid.parser.CSharpParserPool}. The
+   * parser must have been created with the same configuration, and must not be used elsewhere as long as the scanner is in use.
+   */
+  public static AstScanner<CSharpGrammar> create(CSharpConfiguration conf, final Parser<CSharpGrammar> parser,
+      SquidAstVisitor<CSharpGrammar>... visitors) {
 
     final SquidAstVisitorContextImpl<CSharpGrammar> context = new SquidAstVisitorContextImpl<CSharpGrammar>(new SourceProject("C# Project"));
-    final Parser<CSharpGrammar> parser = CSharpParser.create(conf);
 
     AstScanner.Builder<CSharpGrammar> builder = AstScanner.<CSharpGrammar> builder(context).setBaseParser(parser);
 
@@ -83,6 +92,21 @@ public final class CSharpAstScanner {
     builder.withSquidAstVisitor(new CSharpTypeVisitor());
     builder.withSquidAstVisitor(new CSharpMemberVisitor());
 
+    if (conf.getUseFusedMetrics()) {
+      builder.withSquidAstVisitor(new CSharpMetricsVisitor(conf.getIgnoreHeaderComments()));
+    } else {
+      addMetricVisitors(builder, conf, parser.getGrammar());
+    }
+
+    /* External visitors (typically Check ones) */
+    for (SquidAstVisitor<CSharpGrammar> visitor : visitors) {
+      builder.withSquidAstVisitor(visitor);
+    }
+
+    return builder.build();
+  }
+
+  private static void addMetricVisitors(AstScanner.Builder<CSharpGrammar> builder, CSharpConfiguration conf, CSharpGrammar g) {
     /* Metrics */
     builder.withSquidAstVisitor(new LinesVisitor<CSharpGrammar>(CSharpMetric.LINES));
     builder.withSquidAstVisitor(new LinesOfCodeVisitor<CSharpGrammar>(CSharpMetric.LINES_OF_CODE));
@@ -94,27 +118,17 @@ public final class CSharpAstScanner {
         .build());
     builder.withSquidAstVisitor(CounterVisitor.<CSharpGrammar> builder()
         .setMetricDef(CSharpMetric.STATEMENTS)
-        .subscribeTo(parser.getGrammar().labeledStatement, parser.getGrammar().declarationStatement, parser.getGrammar().expressionStatement,
-            parser.getGrammar().selectionStatement, parser.getGrammar().iterationStatement, parser.getGrammar().jumpStatement, parser.getGrammar().tryStatement,
-            parser.getGrammar().checkedStatement, parser.getGrammar().uncheckedStatement, parser.getGrammar().lockStatement, parser.getGrammar().usingStatement,
-            parser.getGrammar().yieldStatement)
+        .subscribeTo(g.labeledStatement, g.declarationStatement, g.expressionStatement, g.selectionStatement, g.iterationStatement,
+            g.jumpStatement, g.tryStatement, g.checkedStatement, g.uncheckedStatement, g.lockStatement, g.usingStatement, g.yieldStatement)
         .build());
     builder.withSquidAstVisitor(CounterVisitor.<CSharpGrammar> builder()
         .setMetricDef(CSharpMetric.ACCESSORS)
-        .subscribeTo(parser.getGrammar().getAccessorDeclaration, parser.getGrammar().setAccessorDeclaration, parser.getGrammar().addAccessorDeclaration,
-            parser.getGrammar().removeAccessorDeclaration)
+        .subscribeTo(g.getAccessorDeclaration, g.setAccessorDeclaration, g.addAccessorDeclaration, g.removeAccessorDeclaration)
         .build());
 
     /* Visitors */
     builder.withSquidAstVisitor(new CSharpComplexityVisitor());
     builder.withSquidAstVisitor(new CSharpPublicApiVisitor());
-
-    /* External visitors (typically Check ones) */
-    for (SquidAstVisitor<CSharpGrammar> visitor : visitors) {
-      builder.withSquidAstVisitor(visitor);
-    }
-
-    return builder.build();
   }
 
 }
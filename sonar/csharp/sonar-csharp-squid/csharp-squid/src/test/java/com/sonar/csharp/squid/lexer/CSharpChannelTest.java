@@ -0,0 +1,118 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.lexer;
+
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.Lexer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks that the lexer gives the same tokens and trivia with and without the {@link CSharpChannel}.
+ */
+public class CSharpChannelTest {
+
+  private final Lexer regexpLexer = createLexer(false);
+  private final Lexer fastLexer = createLexer(true);
+
+  private static Lexer createLexer(boolean useFastLexer) {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    conf.setUseFastLexer(useFastLexer);
+    return CSharpLexer.create(conf);
+  }
+
+  @Test
+  public void shouldLexLikeRegularExpressions() {
+    String[] sources = {
+      "class A { int a = 2; } // comment",
+      "/* multi\n line */ int a;",
+      "/* unterminated comment\n int a;",
+      "/*/ int a; */",
+      "a /= b; a <<= 2; a >>= 2; a => b; a ?? b; a::b; a->b",
+      "\"abc\\\"\n",
+      "\"a\\\\\" b\"",
+      "\"a\\\" b\\\" c\n",
+      "\"a\\ \"",
+      "'\\''",
+      "''",
+      "'a\n'",
+      "@\"verbatim \n \"\" string\"",
+      "@\"unterminated\"\"",
+      "@\"unterminated",
+      "@",
+      "@1",
+      "@class @_a",
+      "1.ToString() 1e 1e+ 1e+5 1.5e 1.5e-2m .5f . 5 12.34E1F",
+      "0x 0xG 0x1uL 0x1e5 00x1 0f 0d 123Xu 1lU 1UL 1Lu",
+      "$ ` \\ \uFEFFclass A {}",
+      "#region Constants\nint a;\n#endregion",
+      "A\uD835\uDC00b éléphant A‿ A؂ A⃕",
+      "a b\u0085c"};
+    for (String source : sources) {
+      assertSameTokens(source, regexpLexer.lex(source), fastLexer.lex(source));
+    }
+  }
+
+  @Test
+  public void shouldLexIntegrationFilesLikeRegularExpressions() throws Exception {
+    Collection<File> files = listFiles("/integration/");
+    files.addAll(listFiles("/lexer/"));
+    for (File file : files) {
+      assertSameTokens(file.getName(), regexpLexer.lex(file), fastLexer.lex(file));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Collection<File> listFiles(String path) throws Exception {
+    return FileUtils.listFiles(new File(CSharpChannelTest.class.getResource(path).toURI()), new String[] {"cs"}, true);
+  }
+
+  private static void assertSameTokens(String source, List<Token> expectedTokens, List<Token> actualTokens) {
+    assertThat(source, describe(actualTokens), is(describe(expectedTokens)));
+  }
+
+  private static String describe(List<Token> tokens) {
+    StringBuilder description = new StringBuilder();
+    for (Token token : tokens) {
+      for (Trivia trivia : token.getTrivia()) {
+        description.append("  trivia comment=").append(trivia.isComment()).append(" skipped=").append(trivia.isSkippedText());
+        describe(description, trivia.getToken());
+      }
+      describe(description, token);
+    }
+    return description.toString();
+  }
+
+  private static void describe(StringBuilder description, Token token) {
+    description.append(token.getType()).append(' ').append(token.getLine()).append(':').append(token.getColumn()).append(" [")
+        .append(token.getOriginalValue()).append("]\n");
+  }
+
+}
@@ -29,9 +29,13 @@ import com.sonar.sslr.impl.Lexer;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
 import java.io.FileNotFoundException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import static com.sonar.sslr.test.lexer.LexerMatchers.hasComment;
@@ -40,13 +44,26 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
+@RunWith(value = Parameterized.class)
 public class CSharpLexerTest {
 
+  private final boolean useFastLexer;
   private Lexer lexer;
 
+  public CSharpLexerTest(boolean useFastLexer) {
+    this.useFastLexer = useFastLexer;
+  }
+
+  @Parameterized.Parameters
+  public static Collection<Object[]> data() {
+    return Arrays.asList(new Object[][] { {false}, {true}});
+  }
+
   @Before
   public void init() {
-    lexer = CSharpLexer.create(new CSharpConfiguration(Charset.forName("UTF-8")));
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    conf.setUseFastLexer(useFastLexer);
+    lexer = CSharpLexer.create(conf);
   }
 
   @Test
@@ -0,0 +1,115 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.metric;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.csharp.squid.api.CSharpMetric;
+import com.sonar.csharp.squid.scanner.CSharpAstScanner;
+import com.sonar.sslr.squid.AstScanner;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sonar.squid.api.SourceCode;
+import org.sonar.squid.api.SourceFile;
+import org.sonar.squid.api.SourceProject;
+import org.sonar.squid.indexer.QueryByType;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CSharpMetricsVisitorTest {
+
+  @Test
+  public void testComments() {
+    AstScanner<CSharpGrammar> scanner = CSharpAstScanner.create(createConfiguration(true));
+    scanner.scanFile(readFile("/metric/simpleFile-withComments.cs"));
+    SourceProject project = (SourceProject) scanner.getIndex().search(new QueryByType(SourceProject.class)).iterator().next();
+
+    assertThat(project.getInt(CSharpMetric.COMMENT_BLANK_LINES), is(12));
+    assertThat(project.getInt(CSharpMetric.COMMENT_LINES), is(14));
+
+    SourceFile file = (SourceFile) project.getFirstChild();
+    assertThat(file.getNoSonarTagLines(), hasItem(24));
+    assertThat(file.getNoSonarTagLines(), hasItem(55));
+    assertThat(file.getNoSonarTagLines().size(), is(2));
+  }
+
+  @Test
+  public void shouldComputeSameMetricsAsSeparateVisitors() throws URISyntaxException {
+    List<File> files = Lists.newArrayList(listFiles("/integration/"));
+    files.add(readFile("/metric/simpleFile-withComments.cs"));
+
+    for (boolean ignoreHeaderComments : new boolean[] {true, false}) {
+      Map<String, SourceCode> expected = scan(createConfiguration(false), ignoreHeaderComments, files);
+      Map<String, SourceCode> actual = scan(createConfiguration(true), ignoreHeaderComments, files);
+
+      assertThat(actual.keySet(), is(expected.keySet()));
+      for (Map.Entry<String, SourceCode> entry : expected.entrySet()) {
+        SourceCode expectedSourceCode = entry.getValue();
+        SourceCode actualSourceCode = actual.get(entry.getKey());
+        for (CSharpMetric metric : CSharpMetric.values()) {
+          assertThat(entry.getKey() + " " + metric, actualSourceCode.getDouble(metric), is(expectedSourceCode.getDouble(metric)));
+        }
+        if (expectedSourceCode instanceof SourceFile) {
+          assertThat(entry.getKey(), ((SourceFile) actualSourceCode).getNoSonarTagLines(),
+              is(((SourceFile) expectedSourceCode).getNoSonarTagLines()));
+        }
+      }
+    }
+  }
+
+  private Map<String, SourceCode> scan(CSharpConfiguration conf, boolean ignoreHeaderComments, List<File> files) {
+    conf.setIgnoreHeaderComments(ignoreHeaderComments);
+    AstScanner<CSharpGrammar> scanner = CSharpAstScanner.create(conf);
+    scanner.scanFiles(files);
+
+    Map<String, SourceCode> sourceCodes = Maps.newHashMap();
+    for (SourceCode sourceCode : scanner.getIndex().search()) {
+      sourceCodes.put(sourceCode.getKey(), sourceCode);
+    }
+    return sourceCodes;
+  }
+
+  private CSharpConfiguration createConfiguration(boolean useFusedMetrics) {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    conf.setUseFusedMetrics(useFusedMetrics);
+    return conf;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Collection<File> listFiles(String path) throws URISyntaxException {
+    return FileUtils.listFiles(new File(getClass().getResource(path).toURI()), new String[] {"cs"}, true);
+  }
+
+  protected File readFile(String path) {
+    return FileUtils.toFile(getClass().getResource(path));
+  }
+
+}
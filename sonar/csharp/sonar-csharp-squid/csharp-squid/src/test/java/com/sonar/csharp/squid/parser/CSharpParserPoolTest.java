@@ -0,0 +1,114 @@
+/*
+ * Sonar C# Plugin :: C# Squid :: Squid
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package com.sonar.csharp.squid.parser;
+
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.api.CSharpGrammar;
+import com.sonar.sslr.impl.Lexer;
+import com.sonar.sslr.impl.Parser;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CSharpParserPoolTest {
+
+  private final CSharpParserPool pool = new CSharpParserPool(1);
+
+  @Test
+  public void shouldReuseReturnedParser() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser = pool.borrowParser(conf);
+    pool.returnParser(conf, parser);
+
+    assertThat(pool.borrowParser(new CSharpConfiguration(Charset.forName("UTF-8"))), sameInstance(parser));
+  }
+
+  @Test
+  public void shouldNotShareBorrowedParser() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser = pool.borrowParser(conf);
+
+    assertThat(pool.borrowParser(conf), not(sameInstance(parser)));
+  }
+
+  @Test
+  public void shouldKeyParsersByConfiguration() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser = pool.borrowParser(conf);
+    pool.returnParser(conf, parser);
+
+    CSharpConfiguration otherCharset = new CSharpConfiguration(Charset.forName("ISO-8859-1"));
+    assertThat(pool.borrowParser(otherCharset), not(sameInstance(parser)));
+    CSharpConfiguration otherHeaderComments = new CSharpConfiguration(Charset.forName("UTF-8"));
+    otherHeaderComments.setIgnoreHeaderComments(false);
+    assertThat(pool.borrowParser(otherHeaderComments), not(sameInstance(parser)));
+    CSharpConfiguration fastLexer = new CSharpConfiguration(Charset.forName("UTF-8"));
+    fastLexer.setUseFastLexer(true);
+    assertThat(pool.borrowParser(fastLexer), not(sameInstance(parser)));
+  }
+
+  @Test
+  public void shouldResetRootRuleOfReturnedParser() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser = pool.borrowParser(conf);
+    parser.setRootRule(parser.getGrammar().usingDirective);
+    pool.returnParser(conf, parser);
+
+    parser = pool.borrowParser(conf);
+    parser.parse("class A { }");
+  }
+
+  @Test
+  public void shouldKeepAtMostMaxIdleInstances() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser1 = pool.borrowParser(conf);
+    Parser<CSharpGrammar> parser2 = pool.borrowParser(conf);
+    pool.returnParser(conf, parser1);
+    pool.returnParser(conf, parser2);
+
+    assertThat(pool.getIdleCount(), is(1));
+  }
+
+  @Test
+  public void shouldReuseReturnedLexer() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Lexer lexer = pool.borrowLexer(conf);
+    pool.returnLexer(conf, lexer);
+
+    assertThat(pool.borrowLexer(conf), sameInstance(lexer));
+  }
+
+  @Test
+  public void shouldParseWithSharedPool() {
+    CSharpConfiguration conf = new CSharpConfiguration(Charset.forName("UTF-8"));
+    Parser<CSharpGrammar> parser = CSharpParserPool.getShared().borrowParser(conf);
+    try {
+      parser.parse("class A { }");
+    } finally {
+      CSharpParserPool.getShared().returnParser(conf, parser);
+    }
+  }
+
+}
@@ -19,7 +19,8 @@
  */
 package com.sonar.csharp.toolkit;
 
-import com.sonar.csharp.squid.parser.CSharpParser;
+import com.sonar.csharp.squid.CSharpConfiguration;
+import com.sonar.csharp.squid.parser.CSharpParserPool;
 import org.sonar.sslr.toolkit.Toolkit;
 
 public final class CSharpToolkit {
@@ -28,7 +29,7 @@ public final class CSharpToolkit {
   }
 
   public static void main(String[] args) {
-    Toolkit toolkit = new Toolkit(CSharpParser.create(),
+    Toolkit toolkit = new Toolkit(CSharpParserPool.getShared().borrowParser(new CSharpConfiguration()),
         CSharpSourceCodeColorizer.getTokenizers(),
         "SSLR :: C# :: Toolkit");
 
@@ -24,6 +24,7 @@ import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.DependsUpon;
@@ -38,7 +39,6 @@ import org.sonar.api.utils.ParsingUtils;
 import org.sonar.dotnet.tools.gallio.GallioRunnerConstants;
 import org.sonar.plugins.csharp.gallio.results.coverage.CoverageResultParser;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
-import org.sonar.plugins.csharp.gallio.results.coverage.model.SourceLine;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.plugins.dotnet.api.sensor.AbstractDotNetSensor;
 import org.sonar.plugins.dotnet.api.sensor.AbstractRegularDotNetSensor;
@@ -48,6 +48,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Gets the coverage test report and pushes data from it into sonar.
@@ -65,6 +66,8 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
 
   private CoverageResultParser parser;
 
+  private TestImpact testImpact;
+
   /**
    * Constructs a {@link CoverageReportSensor}.
    *
@@ -74,8 +77,14 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
    */
   public CoverageReportSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
       CoverageResultParser parser) {
+    this(configuration, microsoftWindowsEnvironment, parser, new TestImpact(configuration));
+  }
+
+  public CoverageReportSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
+      CoverageResultParser parser, TestImpact testImpact) {
     super(configuration, microsoftWindowsEnvironment, "Coverage", configuration.getString(GallioConstants.MODE));
     this.parser = parser;
+    this.testImpact = testImpact;
   }
 
   /**
@@ -109,7 +118,7 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
     }
 
     // We parse the file and save the results
-    parseAndSaveCoverageResults(project, context, coverageReportFiles, false);
+    parseAndSaveCoverageResults(project, context, coverageReportFiles, MODE_REUSE_REPORT.equals(executionMode), false);
   }
 
   public void analyseIntegCoverage(Project project, SensorContext context) {
@@ -123,7 +132,7 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
     }
 
     // We parse the file and save the results
-    parseAndSaveCoverageResults(project, context, coverageReportFiles, true);
+    parseAndSaveCoverageResults(project, context, coverageReportFiles, MODE_REUSE_REPORT.equals(itExecutionMode), true);
   }
 
   private Collection<File> findReportsToAnalyse(String executionMode, String reportFileName, String reportPathKey) {
@@ -138,7 +147,7 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
     } else if (!getMicrosoftWindowsEnvironment().isTestExecutionDone()) {
       // This means that we are not in REUSE or SKIP mode, but for some reasons execution has not been done => skip the analysis
       LOG.info("It Coverage report analysis won't execute as Gallio was not executed.");
-    } else if (configuration.getBoolean(GallioConstants.SAFE_MODE_KEY)) {
+    } else if (configuration.getBoolean(GallioConstants.SAFE_MODE_KEY) || configuration.getInt(GallioConstants.SHARDS_KEY) > 1) {
       reportFiles = FileFinder.findFiles(getVSSolution(), workDir, "*." + reportFileName);
       LOG.info("(Safe mode) Parsing Gallio it coverage reports: " + Joiner.on(" ; ").join(reportFiles));
     } else {
@@ -153,23 +162,57 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
     return reportFiles;
   }
 
-  private void parseAndSaveCoverageResults(Project project, SensorContext context, Collection<File> reportFiles, boolean it) {
-    Map<File, FileCoverage> fileCoverageMap = Maps.newHashMap();
+  private void parseAndSaveCoverageResults(Project project, SensorContext context, Collection<File> reportFiles, boolean reuseMode,
+      boolean it) {
+    List<File> existingReports = Lists.newArrayList();
     for (File report : reportFiles) {
       if (report.exists()) {
-        List<FileCoverage> coverages = parser.parse(project, report);
-        for (FileCoverage fileCoverage : coverages) {
-          File file = fileCoverage.getFile();
-          if (fileCoverageMap.containsKey(file)) {
-            fileCoverageMap.get(file).merge(fileCoverage);
-          } else {
-            fileCoverageMap.put(file, fileCoverage);
-          }
-        }
+        existingReports.add(report);
       } else {
         LOG.error("Coverage report \"{}\" not found", report);
       }
     }
+    if (existingReports.isEmpty()) {
+      return;
+    }
+    List<File> baselineReports = Lists.newArrayList();
+    for (File report : existingReports) {
+      baselineReports.addAll(testImpact.getBaselineReports(report));
+    }
+    // reused reports are likely to be fed to other analyses: keep a binary snapshot of them
+    List<File> parsedReports = Lists.newArrayList(existingReports);
+    parsedReports.addAll(baselineReports);
+    parser.parseAll(parsedReports, reuseMode);
+
+    Map<File, FileCoverage> fileCoverageMap = Maps.newHashMap();
+    // coverages are shared by the solution wide index: the first merge of a file is done into a copy
+    Set<File> mergedFiles = Sets.newHashSet();
+    for (File report : existingReports) {
+      for (FileCoverage fileCoverage : parser.parse(project, report)) {
+        File file = fileCoverage.getFile();
+        FileCoverage existing = fileCoverageMap.get(file);
+        if (existing == null) {
+          fileCoverageMap.put(file, fileCoverage);
+        } else {
+          if (mergedFiles.add(file)) {
+            existing = new FileCoverage(existing);
+            fileCoverageMap.put(file, existing);
+          }
+          existing.merge(fileCoverage);
+        }
+      }
+    }
+
+    // after a partial run of the test impact mode, the files neither covered by the run nor changed keep their previous coverage
+    for (File baseline : baselineReports) {
+      for (FileCoverage fileCoverage : parser.parse(project, baseline)) {
+        File file = fileCoverage.getFile();
+        FileCoverage current = fileCoverageMap.get(file);
+        if ((current == null || current.getCoveredLines() == 0) && !testImpact.isChanged(file)) {
+          fileCoverageMap.put(file, fileCoverage);
+        }
+      }
+    }
 
     // Save data for each file
     for (FileCoverage fileCoverage : fileCoverageMap.values()) {
@@ -208,11 +251,8 @@ public class CoverageReportSensor extends AbstractRegularDotNetSensor {
     PropertiesBuilder<String, Integer> hitsBuilder = it ? itLineHitsBuilder : this.lineHitsBuilder;
 
     hitsBuilder.clear();
-    Map<Integer, SourceLine> lines = coverable.getLines();
-    for (SourceLine line : lines.values()) {
-      int lineNumber = line.getLineNumber();
-      int countVisits = line.getCountVisits();
-      hitsBuilder.add(Integer.toString(lineNumber), countVisits);
+    for (int lineNumber : coverable.getLineNumbers()) {
+      hitsBuilder.add(Integer.toString(lineNumber), coverable.getCountVisits(lineNumber));
     }
     return hitsBuilder.build().setPersistenceMode(PersistenceMode.DATABASE);
   }
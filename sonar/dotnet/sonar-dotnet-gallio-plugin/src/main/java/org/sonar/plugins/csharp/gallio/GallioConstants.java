@@ -54,6 +54,18 @@ public final class GallioConstants {
   public static final String COVERAGE_EXCLUDES_KEY = "sonar.gallio.coverage.excludes";
   public static final String COVERAGE_EXCLUDES_DEFVALUE = null;
   
+  public static final String COVERAGE_PARSING_THREADS_KEY = "sonar.gallio.coverage.parsingThreads";
+  public static final int COVERAGE_PARSING_THREADS_DEFVALUE = 1;
+
+  public static final String DETAILS_MAX_LENGTH_KEY = "sonar.gallio.details.maxLength";
+  public static final int DETAILS_MAX_LENGTH_DEFVALUE = 8192;
+
+  public static final String TEST_DATA_MAX_LENGTH_KEY = "sonar.gallio.testData.maxLength";
+  public static final int TEST_DATA_MAX_LENGTH_DEFVALUE = 524288;
+
+  public static final String TEST_DATA_STACK_TRACE_MAX_LENGTH_KEY = "sonar.gallio.testData.stackTraceMaxLength";
+  public static final int TEST_DATA_STACK_TRACE_MAX_LENGTH_DEFVALUE = 4096;
+
   public static final String ABSOLUTE_BASE_DIRECTORY_KEY = "sonar.gallio.absoluteBaseDirectory";
   public static final String ABSOLUTE_BASE_DIRECTORY_DEFVALUE = "C:/Program Files/Gallio/bin";
 
@@ -65,6 +77,17 @@ public final class GallioConstants {
   public static final String SAFE_MODE_KEY = "sonar.gallio.safe.mode";
   public static final boolean SAFE_MODE_DEFVALUE = false;
 
+  public static final String SAFE_MODE_PARALLELISM_KEY = "sonar.gallio.safe.mode.parallelism";
+  public static final int SAFE_MODE_PARALLELISM_DEFVALUE = 1;
+
+  public static final String SHARDS_KEY = "sonar.gallio.shards";
+  public static final int SHARDS_DEFVALUE = 1;
+
+  public static final String TEST_IMPACT_KEY = "sonar.gallio.testImpact";
+  public static final boolean TEST_IMPACT_DEFVALUE = false;
+
+  public static final String TEST_IMPACT_CHANGED_FILES_KEY = "sonar.gallio.testImpact.changedFiles";
+
   public static final String REPORTS_PATH_KEY = "sonar.gallio.reports.path";
   public static final String REPORTS_COVERAGE_PATH_KEY = "sonar.gallio.coverage.reports.path";
 
@@ -25,7 +25,9 @@ import org.sonar.api.Property;
 import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 import org.sonar.dotnet.tools.gallio.GallioRunnerConstants;
+import org.sonar.plugins.csharp.gallio.results.coverage.CoverageResultIndex;
 import org.sonar.plugins.csharp.gallio.results.coverage.CoverageResultParser;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultIndex;
 import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
 import org.sonar.plugins.csharp.gallio.ui.GallioRubyWidget;
 import org.sonar.plugins.dotnet.api.sensor.AbstractDotNetSensor;
@@ -50,6 +52,20 @@ import java.util.List;
     description = "When set to true, gallio is launched once per test assembly of the analysed solution. " +
       "Otherwise gallio is launched once for the whole solution", global = true, project = true,
     type = PropertyType.BOOLEAN),
+  @Property(key = GallioConstants.SAFE_MODE_PARALLELISM_KEY, defaultValue = GallioConstants.SAFE_MODE_PARALLELISM_DEFVALUE + "",
+    name = "Gallio safe mode parallelism", description = "Maximum number of Gallio processes launched at the same time in safe mode. "
+      + "Each process tests one assembly and writes its own reports.", global = true, project = true, type = PropertyType.INTEGER),
+  @Property(key = GallioConstants.SHARDS_KEY, defaultValue = GallioConstants.SHARDS_DEFVALUE + "", name = "Gallio shards",
+    description = "When greater than 1 and safe mode is not activated, the test namespaces are split into this number of Gallio processes "
+      + "launched at the same time, balanced with the test durations of the previous analysis.", global = true, project = true,
+    type = PropertyType.INTEGER),
+  @Property(key = GallioConstants.TEST_IMPACT_KEY, defaultValue = GallioConstants.TEST_IMPACT_DEFVALUE + "", name = "Test impact mode",
+    description = "When set to true, the full runs track the source files covered by each test fixture with OpenCover. When changed "
+      + "files are given, only the fixtures impacted by them are run, and the results of the previous full run are reused for the "
+      + "other ones. Not used in safe mode or with shards.", global = true, project = true, type = PropertyType.BOOLEAN),
+  @Property(key = GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY, defaultValue = "", name = "Changed files",
+    description = "Comma separated list of the files changed since the last full run, relative to the solution directory or absolute. "
+      + "Leave empty to run all the tests.", global = false, project = true),
   @Property(key = GallioConstants.REPORTS_PATH_KEY, defaultValue = "", name = "Name of the Gallio report files",
     description = "Path to the Gallio report file used when reuse report mode is activated. "
       + "This can be an absolute path, or a path relative to the solution base directory.", global = false, project = false),
@@ -92,6 +108,22 @@ import java.util.List;
   @Property(key = GallioConstants.OPEN_COVER_ATTRIBUTE_EXCLUDES_KEY,
 	name = "OpenCover attribute excludes", description = "Exclude a class or method by filter(s) that match attributes that have been applied that have been applied. An * can be used as a wildcard. Example: *.ExcludeFromCoverage*",
 	global = false, project = false, defaultValue = GallioConstants.OPEN_COVER_ATTRIBUTE_EXCLUDES_DEFVALUE),
+  @Property(key = GallioConstants.COVERAGE_PARSING_THREADS_KEY, defaultValue = GallioConstants.COVERAGE_PARSING_THREADS_DEFVALUE + "",
+    name = "Coverage report parsing threads", description = "Maximum number of coverage reports parsed at the same time, "
+      + "for instance when safe mode generates one report per test assembly.", global = true, project = true,
+    type = PropertyType.INTEGER),
+  @Property(key = GallioConstants.DETAILS_MAX_LENGTH_KEY, defaultValue = GallioConstants.DETAILS_MAX_LENGTH_DEFVALUE + "",
+    name = "Maximum length of the test failure details", description = "Maximum number of characters kept from the message and "
+      + "the stack trace of each failed test when parsing the Gallio reports. Use 0 to keep them entirely.", global = true,
+    project = true, type = PropertyType.INTEGER),
+  @Property(key = GallioConstants.TEST_DATA_MAX_LENGTH_KEY, defaultValue = GallioConstants.TEST_DATA_MAX_LENGTH_DEFVALUE + "",
+    name = "Maximum length of the test details of a file", description = "Once the details of the tests of a file reach this number "
+      + "of characters, the remaining failures are stored without their message and stack trace. Use 0 for no limit.",
+    global = true, project = true, type = PropertyType.INTEGER),
+  @Property(key = GallioConstants.TEST_DATA_STACK_TRACE_MAX_LENGTH_KEY,
+    defaultValue = GallioConstants.TEST_DATA_STACK_TRACE_MAX_LENGTH_DEFVALUE + "", name = "Maximum length of a stored stack trace",
+    description = "Stack traces longer than this number of characters are truncated in the test details. Use 0 for no limit.",
+    global = true, project = true, type = PropertyType.INTEGER),
   @Property(key = GallioConstants.ABSOLUTE_BASE_DIRECTORY_KEY,
     name = "Gallio absolute base directory", description = "Set the base directory of the application that is being tested",
     global = true, project = false, defaultValue = GallioConstants.ABSOLUTE_BASE_DIRECTORY_DEFVALUE),
@@ -125,8 +157,11 @@ public class GallioPlugin extends SonarPlugin {
     extensions.add(TestMetrics.class);
 
     // Parser(s)
+    extensions.add(CoverageResultIndex.class);
     extensions.add(CoverageResultParser.class);
+    extensions.add(GallioResultIndex.class);
     extensions.add(GallioResultParser.class);
+    extensions.add(TestImpact.class);
 
     // Sensors
     extensions.add(GallioSensor.class);
@@ -25,6 +25,7 @@ import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.DependedUpon;
@@ -35,6 +36,7 @@ import org.sonar.api.utils.SonarException;
 import org.sonar.dotnet.tools.gallio.GallioCommandBuilder;
 import org.sonar.dotnet.tools.gallio.GallioException;
 import org.sonar.dotnet.tools.gallio.GallioRunner;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.plugins.dotnet.api.DotNetConstants;
 import org.sonar.plugins.dotnet.api.sensor.AbstractDotNetSensor;
@@ -44,7 +46,14 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Executes Gallio only once in the Solution directory to generate test execution and coverage reports.
@@ -55,8 +64,16 @@ public class GallioSensor extends AbstractDotNetSensor {
 
   private static final Logger LOG = LoggerFactory.getLogger(GallioSensor.class);
 
+  private static final String SHARD_REPORT_PREFIX = "shard-";
+
+  private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
   private DotNetConfiguration configuration;
 
+  private GallioResultParser parser;
+
+  private TestImpact testImpact;
+
   private VisualStudioSolution solution;
 
   private File workDir;
@@ -73,8 +90,20 @@ public class GallioSensor extends AbstractDotNetSensor {
    * @param microsoftWindowsEnvironment
    */
   public GallioSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment) {
+    this(configuration, microsoftWindowsEnvironment, new GallioResultParser(configuration));
+  }
+
+  public GallioSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
+      GallioResultParser parser) {
+    this(configuration, microsoftWindowsEnvironment, parser, new TestImpact(configuration));
+  }
+
+  public GallioSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
+      GallioResultParser parser, TestImpact testImpact) {
     super(microsoftWindowsEnvironment, "Gallio", configuration.getString(GallioConstants.MODE));
     this.configuration = configuration;
+    this.parser = parser;
+    this.testImpact = testImpact;
   }
 
   /**
@@ -180,25 +209,174 @@ public class GallioSensor extends AbstractDotNetSensor {
       List<File> testAssemblies = findTestAssemblies(it, assemblyPatterns);
 
       if (safeMode) {
-        for (File assembly : testAssemblies) {
-          File gallioReportFile = new File(workDir, assembly.getName() + "." + reportFileName);
-          File coverageReportFile = new File(workDir, assembly.getName() + "." + coverageReportFileName);
-          GallioRunner runner = createRunner(workDir);
-          GallioCommandBuilder builder = createBuilder(runner, Collections.singletonList(assembly), gallioFilter, gallioReportFile, coverageReportFile);
-          runner.execute(builder, timeout);
-        }
+        executeSafeMode(testAssemblies, gallioFilter, reportFileName, coverageReportFileName);
+      } else if (configuration.getInt(GallioConstants.SHARDS_KEY) > 1) {
+        executeShards(testAssemblies, gallioFilter, reportFileName, coverageReportFileName);
       } else {
         File gallioReportFile = new File(workDir, reportFileName);
         File coverageReportFile = new File(workDir, coverageReportFileName);
+        String impactFilter = testImpact.createImpactFilter(gallioReportFile, coverageReportFile, gallioFilter);
+        boolean trackTests = impactFilter == null && testImpact.isEnabled();
         GallioRunner runner = createRunner(workDir);
-        GallioCommandBuilder builder = createBuilder(runner, testAssemblies, gallioFilter, gallioReportFile, coverageReportFile);
+        GallioCommandBuilder builder = createBuilder(runner, testAssemblies, impactFilter == null ? gallioFilter : impactFilter,
+            gallioReportFile, coverageReportFile);
+        if (trackTests) {
+          builder.setCoverByTest(true);
+        }
         runner.execute(builder, timeout);
+        if (trackTests) {
+          testImpact.recordFullRun(gallioReportFile, coverageReportFile);
+        }
       }
     } catch (GallioException e) {
       throw new SonarException("Gallio execution failed.", e);
     }
   }
 
+  /**
+   * Launches Gallio once per test assembly, with at most {@link GallioConstants#SAFE_MODE_PARALLELISM_KEY} processes at the same
+   * time. Each process writes its own reports.
+   */
+  private void executeSafeMode(List<File> testAssemblies, String gallioFilter, String reportFileName, String coverageReportFileName)
+      throws GallioException {
+    File[] workDirFiles = workDir.listFiles();
+    deletePreviousReports(workDirFiles, reportFileName, coverageReportFileName);
+
+    List<GallioExecution> executions = Lists.newArrayList();
+    Set<String> reportPrefixes = Sets.newHashSet();
+    for (File assembly : testAssemblies) {
+      String reportPrefix = assembly.getName();
+      for (int i = 2; !reportPrefixes.add(reportPrefix); i++) {
+        // two assemblies with the same name must not share their reports
+        reportPrefix = assembly.getName() + "-" + i;
+      }
+      File gallioReportFile = new File(workDir, reportPrefix + "." + reportFileName);
+      File coverageReportFile = new File(workDir, reportPrefix + "." + coverageReportFileName);
+      GallioRunner runner = createRunner(workDir);
+      GallioCommandBuilder builder = createBuilder(runner, Collections.singletonList(assembly), gallioFilter, gallioReportFile,
+          coverageReportFile);
+      executions.add(new GallioExecution(runner, builder, timeout));
+    }
+
+    execute(executions, configuration.getInt(GallioConstants.SAFE_MODE_PARALLELISM_KEY));
+  }
+
+  /**
+   * Splits the tests into {@link GallioConstants#SHARDS_KEY} Gallio processes launched at the same time, balanced with the durations
+   * of the fixtures found in the reports of the previous run. When no duration is known, or when the filters of the shards would be
+   * too long for a command line, the tests are run in a single shard.
+   */
+  private void executeShards(List<File> testAssemblies, String gallioFilter, String reportFileName, String coverageReportFileName)
+      throws GallioException {
+    List<File> previousReports = Lists.newArrayList();
+    File[] workDirFiles = workDir.listFiles();
+    for (File file : workDirFiles == null ? new File[0] : workDirFiles) {
+      String name = file.getName();
+      if (name.equals(reportFileName) || name.endsWith("." + reportFileName)) {
+        previousReports.add(file);
+      }
+    }
+    Map<String, Long> durations = TestShards.readFixtureDurations(previousReports, parser);
+    deletePreviousReports(workDirFiles, reportFileName, coverageReportFileName);
+
+    List<String> filters = TestShards.createFilters(durations, configuration.getInt(GallioConstants.SHARDS_KEY), gallioFilter);
+    if (filters.isEmpty()) {
+      if (durations.isEmpty()) {
+        LOG.info("No test duration found in the previous Gallio reports: the tests are run in a single shard");
+      }
+      filters = Collections.singletonList(gallioFilter);
+    }
+    List<GallioExecution> executions = Lists.newArrayList();
+    for (int i = 0; i < filters.size(); i++) {
+      String reportPrefix = SHARD_REPORT_PREFIX + (i + 1);
+      File gallioReportFile = new File(workDir, reportPrefix + "." + reportFileName);
+      File coverageReportFile = new File(workDir, reportPrefix + "." + coverageReportFileName);
+      GallioRunner runner = createRunner(workDir);
+      GallioCommandBuilder builder = createBuilder(runner, testAssemblies, filters.get(i), gallioReportFile, coverageReportFile);
+      executions.add(new GallioExecution(runner, builder, timeout));
+    }
+    execute(executions, executions.size());
+  }
+
+  /**
+   * Deletes the reports written by a previous run in safe mode or in shards: the reports of the assemblies or of the shards that
+   * are not part of the current run must not be analysed.
+   */
+  private static void deletePreviousReports(File[] workDirFiles, String reportFileName, String coverageReportFileName) {
+    for (File file : workDirFiles == null ? new File[0] : workDirFiles) {
+      String name = file.getName();
+      if (name.endsWith("." + reportFileName) || name.endsWith("." + coverageReportFileName)) {
+        FileUtils.deleteQuietly(file);
+      }
+    }
+  }
+
+  /**
+   * Launches the given executions with at most the given number of processes at the same time. The first failure stops the
+   * executions that are not finished yet: the pending ones are not launched, and the running ones are interrupted, which destroys
+   * their Gallio process.
+   */
+  private void execute(List<GallioExecution> executions, int maxParallelism) throws GallioException {
+    int parallelism = Math.min(maxParallelism, executions.size());
+    if (parallelism <= 1) {
+      for (GallioExecution execution : executions) {
+        execution.call();
+      }
+      return;
+    }
+
+    LOG.info("Launching {} Gallio processes, {} at a time", executions.size(), parallelism);
+    ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (GallioExecution execution : executions) {
+        futures.add(executorService.submit(execution));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while waiting for the Gallio executions", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof GallioException) {
+        throw (GallioException) e.getCause();
+      }
+      throw new SonarException("Gallio execution failed.", e.getCause());
+    } finally {
+      executorService.shutdownNow();
+      awaitTermination(executorService);
+    }
+  }
+
+  private static void awaitTermination(ExecutorService executorService) {
+    try {
+      if (!executorService.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("Some Gallio processes are still running");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static class GallioExecution implements Callable<Void> {
+
+    private final GallioRunner runner;
+    private final GallioCommandBuilder builder;
+    private final int timeout;
+
+    GallioExecution(GallioRunner runner, GallioCommandBuilder builder, int timeout) {
+      this.runner = runner;
+      this.builder = builder;
+      this.timeout = timeout;
+    }
+
+    public Void call() throws GallioException {
+      runner.execute(builder, timeout);
+      return null;
+    }
+  }
+
   private GallioRunner createRunner(File workDir) {
     // create runner
     File gallioInstallDir = new File(configuration.getString(GallioConstants.INSTALL_FOLDER_KEY));
@@ -0,0 +1,157 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Test impact mode. The full runs track the test methods with OpenCover, store the source files covered by each fixture next to
+ * the reports, and keep a copy of the reports as baseline. When changed files are given, only the fixtures covering them, the
+ * fixtures defined in them and the fixtures unknown to the previous full run are executed. The report sensors then complete the
+ * results of this partial run with the baseline reports.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class TestImpact implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestImpact.class);
+
+  private static final String MAP_SUFFIX = ".impact";
+  private static final String BASELINE_SUFFIX = ".baseline";
+
+  private final DotNetConfiguration configuration;
+  private final GallioResultParser parser;
+  private final Set<String> partialRunReports = Sets.newHashSet();
+
+  public TestImpact(DotNetConfiguration configuration) {
+    this.configuration = configuration;
+    // built here rather than injected: the parser is instantiated per project, and this component per batch
+    this.parser = new GallioResultParser(configuration);
+  }
+
+  public boolean isEnabled() {
+    return configuration.getBoolean(GallioConstants.TEST_IMPACT_KEY);
+  }
+
+  /**
+   * Returns the filter that restricts the run writing the given reports to the fixtures impacted by the changed files, or null
+   * when all the tests have to be run, which is also the case when the filter would exceed {@link TestShards#MAX_FILTER_LENGTH}.
+   */
+  public String createImpactFilter(File gallioReportFile, File coverageReportFile, String gallioFilter) {
+    String[] changedFiles = configuration.getStringArray(GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY);
+    if (!isEnabled() || changedFiles.length == 0) {
+      return null;
+    }
+    File mapFile = getMapFile(gallioReportFile);
+    if (!mapFile.isFile() || !getBaselineFile(gallioReportFile).isFile() || !getBaselineFile(coverageReportFile).isFile()) {
+      LOG.info("No previous full run found for {}: all the tests are run", gallioReportFile.getName());
+      return null;
+    }
+
+    TestImpactMap map = TestImpactMap.read(mapFile);
+    if (map.getFixtures().isEmpty()) {
+      LOG.info("The test impact map of {} is empty: all the tests are run", gallioReportFile.getName());
+      return null;
+    }
+    Set<String> fixtures = map.getImpactedFixtures(Arrays.asList(changedFiles));
+    LOG.info("{} test fixtures impacted by the {} changed files", fixtures.size(), changedFiles.length);
+
+    String filter = "not (" + TestShards.createFilter(map.getFixtures()) + ")";
+    if (!fixtures.isEmpty()) {
+      filter = TestShards.createFilter(fixtures) + " or " + filter;
+    }
+    if (StringUtils.isNotBlank(gallioFilter)) {
+      filter = "(" + gallioFilter + ") and (" + filter + ")";
+    }
+    if (filter.length() > TestShards.MAX_FILTER_LENGTH) {
+      LOG.info("The Gallio filter of the impacted fixtures would be " + filter.length() + " characters long, which exceeds the maximum "
+        + "length of " + TestShards.MAX_FILTER_LENGTH + " characters: all the tests are run");
+      return null;
+    }
+    partialRunReports.add(gallioReportFile.getName());
+    partialRunReports.add(coverageReportFile.getName());
+    return filter;
+  }
+
+  /**
+   * Stores the test impact map of a full run tracking the test methods, and keeps its reports as the baseline of the next partial
+   * runs.
+   */
+  public void recordFullRun(File gallioReportFile, File coverageReportFile) {
+    if (!gallioReportFile.isFile() || !coverageReportFile.isFile()) {
+      return;
+    }
+    TestImpactMap map = new TestImpactMap();
+    if (map.addOpenCoverReport(coverageReportFile) == 0) {
+      LOG.warn("No tracked test method found in {}: test impact mode requires OpenCover", coverageReportFile);
+    }
+    map.addTestReports(parser.parse(gallioReportFile));
+    map.write(getMapFile(gallioReportFile));
+    try {
+      FileUtils.copyFile(gallioReportFile, getBaselineFile(gallioReportFile));
+      FileUtils.copyFile(coverageReportFile, getBaselineFile(coverageReportFile));
+    } catch (IOException e) {
+      throw new SonarException("Could not keep the baseline reports of the test impact mode", e);
+    }
+  }
+
+  /**
+   * Returns the baseline reports to analyse with the given report, which are only the ones of a partial run of this analysis.
+   */
+  public Collection<File> getBaselineReports(File report) {
+    if (!partialRunReports.contains(report.getName())) {
+      return Collections.emptyList();
+    }
+    File baseline = getBaselineFile(report);
+    return baseline.isFile() ? Lists.newArrayList(baseline) : Collections.<File> emptyList();
+  }
+
+  /**
+   * Returns whether the given file is one of the changed files of the partial runs.
+   */
+  public boolean isChanged(File file) {
+    return TestImpactMap.isChanged(file, Arrays.asList(configuration.getStringArray(GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY)));
+  }
+
+  private static File getMapFile(File gallioReportFile) {
+    return new File(gallioReportFile.getParentFile(), gallioReportFile.getName() + MAP_SUFFIX);
+  }
+
+  private static File getBaselineFile(File report) {
+    return new File(report.getParentFile(), report.getName() + BASELINE_SUFFIX);
+  }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
+import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Source files covered by each test fixture. It is built from the OpenCover report of a run tracking the test methods
+ * ("-coverbytest") and from the Gallio report of the same run, which gives the source file of each fixture. It is stored as a text
+ * file with one "fixture TAB path" line per covered file.
+ */
+public class TestImpactMap {
+
+  private static final String ENCODING = "UTF-8";
+  private static final char SEPARATOR = '\t';
+
+  private final Map<String, Set<String>> pathsByFixture = Maps.newTreeMap();
+
+  public static TestImpactMap read(File file) {
+    TestImpactMap map = new TestImpactMap();
+    try {
+      for (Object line : FileUtils.readLines(file, ENCODING)) {
+        String fixture = StringUtils.substringBefore((String) line, String.valueOf(SEPARATOR));
+        String path = StringUtils.substringAfter((String) line, String.valueOf(SEPARATOR));
+        if (StringUtils.isNotEmpty(fixture) && StringUtils.isNotEmpty(path)) {
+          map.add(fixture, path);
+        }
+      }
+    } catch (IOException e) {
+      throw new SonarException("Could not read the test impact map " + file, e);
+    }
+    return map;
+  }
+
+  public void write(File file) {
+    List<String> lines = Lists.newArrayList();
+    for (Map.Entry<String, Set<String>> entry : pathsByFixture.entrySet()) {
+      for (String path : entry.getValue()) {
+        lines.add(entry.getKey() + SEPARATOR + path);
+      }
+    }
+    try {
+      FileUtils.writeLines(file, ENCODING, lines);
+    } catch (IOException e) {
+      throw new SonarException("Could not write the test impact map " + file, e);
+    }
+  }
+
+  public void add(String fixture, String path) {
+    Set<String> paths = pathsByFixture.get(fixture);
+    if (paths == null) {
+      paths = Sets.newTreeSet();
+      pathsByFixture.put(fixture, paths);
+    }
+    paths.add(normalize(path));
+  }
+
+  public Set<String> getFixtures() {
+    return pathsByFixture.keySet();
+  }
+
+  /**
+   * Returns the fixtures covering at least one of the given files. A changed file can be an absolute path or a path relative to
+   * any parent directory, such as the solution directory.
+   */
+  public Set<String> getImpactedFixtures(Collection<String> changedFiles) {
+    List<String> changedPaths = normalizeChangedFiles(changedFiles);
+    Set<String> fixtures = Sets.newTreeSet();
+    for (Map.Entry<String, Set<String>> entry : pathsByFixture.entrySet()) {
+      if (coversOneOf(entry.getValue(), changedPaths)) {
+        fixtures.add(entry.getKey());
+      }
+    }
+    return fixtures;
+  }
+
+  /**
+   * Returns whether the given file is one of the given changed files, with the same matching as
+   * {@link #getImpactedFixtures(Collection)}.
+   */
+  public static boolean isChanged(File file, Collection<String> changedFiles) {
+    return coversOneOf(Collections.singleton(normalize(file.getPath())), normalizeChangedFiles(changedFiles));
+  }
+
+  private static List<String> normalizeChangedFiles(Collection<String> changedFiles) {
+    List<String> changedPaths = Lists.newArrayList();
+    for (String changedFile : changedFiles) {
+      String changedPath = StringUtils.removeStart(normalize(changedFile.trim()), "./");
+      if (changedPath.length() > 0) {
+        changedPaths.add(changedPath);
+      }
+    }
+    return changedPaths;
+  }
+
+  private static boolean coversOneOf(Set<String> paths, List<String> changedPaths) {
+    for (String path : paths) {
+      for (String changedPath : changedPaths) {
+        if (path.equals(changedPath) || path.endsWith("/" + changedPath)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Maps each fixture of the given unit test reports to its own source file, so that a change in a test file selects its tests.
+   */
+  public void addTestReports(Collection<UnitTestReport> reports) {
+    for (UnitTestReport report : reports) {
+      for (TestCaseDetail detail : report.getDetails()) {
+        if (detail.getClassName() != null && detail.getSourceFile() != null) {
+          add(detail.getClassName(), detail.getSourceFile().getPath());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the tracked test methods of an OpenCover report and maps their fixtures to the files of the points they visited.
+   * 
+   * @return the number of tracked test methods found
+   */
+  public int addOpenCoverReport(File report) {
+    Map<String, String> fixturesByTrackedMethod = Maps.newHashMap();
+    Map<String, Set<String>> pathsByTrackedMethod = Maps.newHashMap();
+    InputStream input = null;
+    XMLStreamReader reader = null;
+    try {
+      input = new FileInputStream(report);
+      reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+      Map<String, String> files = Maps.newHashMap();
+      String methodPath = null;
+      String pointPath = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String name = reader.getLocalName();
+          if ("Module".equals(name)) {
+            files.clear();
+          } else if ("File".equals(name)) {
+            files.put(reader.getAttributeValue(null, "uid"), reader.getAttributeValue(null, "fullPath"));
+          } else if ("TrackedMethod".equals(name)) {
+            fixturesByTrackedMethod.put(reader.getAttributeValue(null, "uid"), getFixture(reader.getAttributeValue(null, "name")));
+          } else if ("Method".equals(name)) {
+            methodPath = null;
+          } else if ("FileRef".equals(name)) {
+            methodPath = files.get(reader.getAttributeValue(null, "uid"));
+          } else if ("SequencePoint".equals(name) || "BranchPoint".equals(name)) {
+            String fileId = reader.getAttributeValue(null, "fileid");
+            pointPath = fileId == null ? methodPath : files.get(fileId);
+          } else if ("TrackedMethodRef".equals(name)) {
+            addTrackedPath(pathsByTrackedMethod, reader.getAttributeValue(null, "uid"), pointPath == null ? methodPath : pointPath);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && ("SequencePoint".equals(reader.getLocalName())
+          || "BranchPoint".equals(reader.getLocalName()))) {
+          pointPath = null;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new SonarException("Could not read the tracked methods of " + report, e);
+    } catch (IOException e) {
+      throw new SonarException("Could not read the tracked methods of " + report, e);
+    } finally {
+      closeQuietly(reader);
+      IOUtils.closeQuietly(input);
+    }
+
+    for (Map.Entry<String, Set<String>> entry : pathsByTrackedMethod.entrySet()) {
+      String fixture = fixturesByTrackedMethod.get(entry.getKey());
+      if (fixture != null) {
+        for (String path : entry.getValue()) {
+          add(fixture, path);
+        }
+      }
+    }
+    return fixturesByTrackedMethod.size();
+  }
+
+  private static void addTrackedPath(Map<String, Set<String>> pathsByTrackedMethod, String trackedMethod, String path) {
+    if (trackedMethod != null && path != null) {
+      Set<String> paths = pathsByTrackedMethod.get(trackedMethod);
+      if (paths == null) {
+        paths = Sets.newHashSet();
+        pathsByTrackedMethod.put(trackedMethod, paths);
+      }
+      paths.add(path);
+    }
+  }
+
+  /**
+   * "System.Void Example.Core.Tests.TestMoney::BagMultiply()" is a method of the "Example.Core.Tests.TestMoney" fixture. Nested
+   * types are named the way Gallio filters expect them.
+   */
+  static String getFixture(String trackedMethodName) {
+    String type = StringUtils.substringBefore(trackedMethodName, "::");
+    return type.substring(type.lastIndexOf(' ') + 1).replace('/', '+');
+  }
+
+  private static String normalize(String path) {
+    return path.replace('\\', '/').toLowerCase(Locale.ENGLISH);
+  }
+
+  private static void closeQuietly(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // nothing to do
+      }
+    }
+  }
+
+}
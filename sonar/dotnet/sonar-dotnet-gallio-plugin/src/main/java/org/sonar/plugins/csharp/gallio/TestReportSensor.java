@@ -20,10 +20,12 @@
 package org.sonar.plugins.csharp.gallio;
 
 import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.DependsUpon;
@@ -33,9 +35,10 @@ import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.ParsingUtils;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultIndex;
 import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
+import org.sonar.plugins.csharp.gallio.results.execution.TestDetailsSerializer;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
-import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
 import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.plugins.dotnet.api.sensor.AbstractDotNetSensor;
@@ -45,7 +48,6 @@ import org.sonar.plugins.dotnet.api.utils.FileFinder;
 import java.io.File;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -58,6 +60,9 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
   private static final Logger LOG = LoggerFactory.getLogger(TestReportSensor.class);
 
   private GallioResultParser parser;
+  private GallioResultIndex index;
+  private TestImpact testImpact;
+  private TestDetailsSerializer testDetailsSerializer;
 
   /**
    * Constructs a {@link TestReportSensor}.
@@ -68,8 +73,22 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
    */
   public TestReportSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
       GallioResultParser parser) {
+    this(configuration, microsoftWindowsEnvironment, parser, new GallioResultIndex(microsoftWindowsEnvironment));
+  }
+
+  public TestReportSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
+      GallioResultParser parser, GallioResultIndex index) {
+    this(configuration, microsoftWindowsEnvironment, parser, index, new TestImpact(configuration));
+  }
+
+  public TestReportSensor(DotNetConfiguration configuration, MicrosoftWindowsEnvironment microsoftWindowsEnvironment,
+      GallioResultParser parser, GallioResultIndex index, TestImpact testImpact) {
     super(configuration, microsoftWindowsEnvironment, "Gallio Report Parser", configuration.getString(GallioConstants.MODE));
     this.parser = parser;
+    this.index = index;
+    this.testImpact = testImpact;
+    this.testDetailsSerializer = new TestDetailsSerializer(configuration.getInt(GallioConstants.TEST_DATA_MAX_LENGTH_KEY),
+        configuration.getInt(GallioConstants.TEST_DATA_STACK_TRACE_MAX_LENGTH_KEY));
   }
 
   /**
@@ -125,7 +144,7 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
       if (!getMicrosoftWindowsEnvironment().isTestExecutionDone()) {
         // This means that we are not in REUSE or SKIP mode, but for some reasons execution has not been done => skip the analysis
         LOG.info("Test report analysis won't execute as Gallio was not executed.");
-      } else if (configuration.getBoolean(GallioConstants.SAFE_MODE_KEY)) {
+      } else if (configuration.getBoolean(GallioConstants.SAFE_MODE_KEY) || configuration.getInt(GallioConstants.SHARDS_KEY) > 1) {
         reportFiles = FileFinder.findFiles(getVSSolution(), workDir, "*." + reportFileName);
         LOG.info("(Safe mode) Parsing Gallio reports: " + Joiner.on(" ; ").join(reportFiles));
       } else {
@@ -142,16 +161,21 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
 
   private void collect(Project project, Collection<File> reportFiles, SensorContext context) {
     Map<File, UnitTestReport> fileTestMap = Maps.newHashMap();
+    // reports are shared by the solution wide index: the first merge of a file is done into a copy
+    Set<File> mergedFiles = Sets.newHashSet();
+    VisualStudioProject vsProject = getVSProject(project);
     for (File report : reportFiles) {
       if (report.exists()) {
-        Collection<UnitTestReport> tests = parser.parse(report);
+        // reports are parsed once for the whole solution: only the tests of the current project are looked up
+        Collection<UnitTestReport> tests = index.getReports(vsProject, report, parser);
         for (UnitTestReport test : tests) {
-          collectTest(test, fileTestMap);
+          collectTest(test, fileTestMap, mergedFiles);
         }
       } else {
         LOG.error("Coverage report \"{}\" not found", report);
       }
     }
+    collectBaseline(vsProject, reportFiles, fileTestMap, mergedFiles);
     LOG.debug("Found {} test data", fileTestMap.size());
 
     Set<File> csFilesAlreadyTreated = new HashSet<File>();
@@ -187,12 +211,52 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
     }
   }
 
-  protected void collectTest(UnitTestReport test, Map<File, UnitTestReport> fileTestMap) {
+  /**
+   * After a partial run of the test impact mode, the fixtures that were not run again get the results of the previous full run. A
+   * file defining several fixtures keeps the previous results of the ones that were not run again.
+   */
+  private void collectBaseline(VisualStudioProject vsProject, Collection<File> reportFiles, Map<File, UnitTestReport> fileTestMap,
+      Set<File> mergedFiles) {
+    Set<File> runFiles = Sets.newHashSet(fileTestMap.keySet());
+    Set<String> runFixtures = Sets.newHashSet();
+    for (UnitTestReport test : fileTestMap.values()) {
+      for (TestCaseDetail detail : test.getDetails()) {
+        runFixtures.add(detail.getClassName());
+      }
+    }
+    for (File report : reportFiles) {
+      for (File baseline : testImpact.getBaselineReports(report)) {
+        for (UnitTestReport test : index.getReports(vsProject, baseline, parser)) {
+          UnitTestReport notRunTest = new UnitTestReport();
+          notRunTest.setAssemblyName(test.getAssemblyName());
+          notRunTest.setSourceFile(test.getSourceFile());
+          for (TestCaseDetail detail : test.getDetails()) {
+            // without fixture name, a test of a file that was run again is considered as run again
+            String fixture = detail.getClassName();
+            boolean run = fixture == null ? runFiles.contains(test.getSourceFile()) : runFixtures.contains(fixture);
+            if (!run) {
+              notRunTest.addDetail(detail);
+            }
+          }
+          if (!notRunTest.getDetails().isEmpty()) {
+            collectTest(notRunTest, fileTestMap, mergedFiles);
+          }
+        }
+      }
+    }
+  }
+
+  protected void collectTest(UnitTestReport test, Map<File, UnitTestReport> fileTestMap, Set<File> mergedFiles) {
     File file = test.getSourceFile();
-    if (fileTestMap.containsKey(file)) {
-      fileTestMap.get(file).merge(test);
-    } else {
+    UnitTestReport existing = fileTestMap.get(file);
+    if (existing == null) {
       fileTestMap.put(file, test);
+    } else {
+      if (mergedFiles.add(file)) {
+        existing = new UnitTestReport(existing);
+        fileTestMap.put(file, existing);
+      }
+      existing.merge(test);
     }
   }
 
@@ -204,25 +268,9 @@ public class TestReportSensor extends AbstractRegularDotNetSensor {
    * @param fileReport
    */
   private void saveTestsDetails(org.sonar.api.resources.File testFile, SensorContext context, UnitTestReport fileReport) {
-    StringBuilder testCaseDetails = new StringBuilder(256);
-    testCaseDetails.append("<tests-details>");
-    List<TestCaseDetail> details = fileReport.getDetails();
-    for (TestCaseDetail detail : details) {
-      testCaseDetails.append("<testcase status=\"").append(detail.getStatus().getSonarStatus()).append("\" time=\"")
-          .append(detail.getTimeMillis()).append("\" name=\"").append(detail.getName()).append("\"");
-      boolean isError = (detail.getStatus() == TestStatus.ERROR);
-      if (isError || (detail.getStatus() == TestStatus.FAILED)) {
-
-        testCaseDetails.append(">").append(isError ? "<error message=\"" : "<failure message=\"").append(detail.getFormatedErrorMessage())
-            .append("\">").append("<![CDATA[").append(detail.getFormatedStackTrace()).append("]]>")
-            .append(isError ? "</error>" : "</failure>").append("</testcase>");
-      } else {
-        testCaseDetails.append("/>");
-      }
-    }
-    testCaseDetails.append("</tests-details>");
-    context.saveMeasure(testFile, new Measure(CoreMetrics.TEST_DATA, testCaseDetails.toString()));
-    LOG.debug("test detail : {}", testCaseDetails);
+    String testCaseDetails = testDetailsSerializer.serialize(fileReport.getDetails());
+    context.saveMeasure(testFile, new Measure(CoreMetrics.TEST_DATA, testCaseDetails));
+    LOG.debug("test details of {} : {} characters", testFile, testCaseDetails.length());
   }
 
   /**
@@ -0,0 +1,209 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
+import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the fixtures of a test run into shards of similar durations, using the durations found in the Gallio reports of a
+ * previous run. The fixtures are assigned by namespace, so that the filters of the shards stay short whatever the number of
+ * fixtures: the longest namespaces are assigned first, each one to the shard whose total duration is the lowest so far.
+ */
+public final class TestShards {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TestShards.class);
+
+  /**
+   * Maximum length of the filter of a shard. Windows limits a command line to 32767 characters, and to 8191 characters when it goes
+   * through cmd.exe: the filter must leave some room for the other arguments of Gallio and of the coverage tool.
+   */
+  static final int MAX_FILTER_LENGTH = 6000;
+
+  private TestShards() {
+  }
+
+  /**
+   * Sums the durations of the test cases of each fixture found in the given reports.
+   * 
+   * @return the durations in milliseconds, by full name of fixture
+   */
+  public static Map<String, Long> readFixtureDurations(Collection<File> reports, GallioResultParser parser) {
+    Map<String, Long> durations = Maps.newHashMap();
+    for (File report : reports) {
+      try {
+        for (UnitTestReport unitTestReport : parser.parse(report)) {
+          for (TestCaseDetail detail : unitTestReport.getDetails()) {
+            String fixture = detail.getClassName();
+            if (fixture != null) {
+              Long duration = durations.get(fixture);
+              durations.put(fixture, (duration == null ? 0L : duration) + detail.getTimeMillis());
+            }
+          }
+        }
+      } catch (SonarException e) {
+        LOG.warn("Could not read the test durations of the previous Gallio report " + report, e);
+      }
+    }
+    return durations;
+  }
+
+  /**
+   * Splits the given fixtures into at most the given number of shards, sorted from the longest one to the shortest one.
+   */
+  public static List<List<String>> split(Map<String, Long> durations, int shardCount) {
+    List<Map.Entry<String, Long>> fixtures = Lists.newArrayList(durations.entrySet());
+    Collections.sort(fixtures, new Comparator<Map.Entry<String, Long>>() {
+
+      public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+        int result = o2.getValue().compareTo(o1.getValue());
+        return result == 0 ? o1.getKey().compareTo(o2.getKey()) : result;
+      }
+    });
+
+    int count = Math.min(shardCount, fixtures.size());
+    final long[] totals = new long[count];
+    List<List<String>> shards = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      shards.add(Lists.<String> newArrayList());
+    }
+    for (Map.Entry<String, Long> fixture : fixtures) {
+      int lightest = 0;
+      for (int i = 1; i < count; i++) {
+        if (totals[i] < totals[lightest]) {
+          lightest = i;
+        }
+      }
+      shards.get(lightest).add(fixture.getKey());
+      totals[lightest] += fixture.getValue();
+    }
+
+    List<Integer> order = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      order.add(i);
+    }
+    Collections.sort(order, new Comparator<Integer>() {
+
+      public int compare(Integer o1, Integer o2) {
+        return totals[o1] == totals[o2] ? o1.compareTo(o2) : (totals[o1] > totals[o2] ? -1 : 1);
+      }
+    });
+    List<List<String>> sortedShards = Lists.newArrayList();
+    for (Integer i : order) {
+      sortedShards.add(shards.get(i));
+    }
+    return sortedShards;
+  }
+
+  /**
+   * Creates the Gallio filters of the shards, each one selecting whole namespaces. A new fixture of a known namespace is run with
+   * the other fixtures of its namespace, and the namespaces that were not part of the previous run are given to the shortest shard.
+   * The given filter, if any, is applied to every shard.
+   * 
+   * @param durations
+   *          the durations of the fixtures, by full name of fixture
+   * @return the filters, empty if no duration is known or if a filter would exceed {@link #MAX_FILTER_LENGTH}
+   */
+  public static List<String> createFilters(Map<String, Long> durations, int shardCount, String gallioFilter) {
+    Map<String, Long> namespaceDurations = Maps.newHashMap();
+    for (Map.Entry<String, Long> fixture : durations.entrySet()) {
+      String namespace = getNamespace(fixture.getKey());
+      Long duration = namespaceDurations.get(namespace);
+      namespaceDurations.put(namespace, (duration == null ? 0L : duration) + fixture.getValue());
+    }
+    List<List<String>> shards = split(namespaceDurations, shardCount);
+    List<String> filters = Lists.newArrayList();
+    for (int i = 0; i < shards.size(); i++) {
+      String filter = createNamespaceFilter(shards.get(i));
+      if (i == shards.size() - 1) {
+        filter += " or not (" + createNamespaceFilter(namespaceDurations.keySet()) + ")";
+      }
+      if (StringUtils.isNotBlank(gallioFilter)) {
+        filter = "(" + gallioFilter + ") and (" + filter + ")";
+      }
+      if (filter.length() > MAX_FILTER_LENGTH) {
+        LOG.warn("The Gallio filter of a shard would be " + filter.length() + " characters long, which exceeds the maximum length of "
+          + MAX_FILTER_LENGTH + " characters: the tests are not split into shards");
+        return Collections.emptyList();
+      }
+      filters.add(filter);
+    }
+    return filters;
+  }
+
+  /**
+   * Returns the namespace of the given fixture, the one of its outermost type when it is nested.
+   */
+  static String getNamespace(String fixture) {
+    String type = StringUtils.substringBefore(fixture, "+");
+    int lastDot = type.lastIndexOf('.');
+    return lastDot < 0 ? "" : type.substring(0, lastDot);
+  }
+
+  private static String createNamespaceFilter(Collection<String> namespaces) {
+    List<String> filters = Lists.newArrayList();
+    for (String namespace : namespaces) {
+      filters.add("Namespace:" + quote(namespace));
+    }
+    return StringUtils.join(filters, " or ");
+  }
+
+  /**
+   * Creates the Gallio filter selecting exactly the given fixtures.
+   */
+  static String createFilter(Collection<String> fixtures) {
+    List<String> types = Lists.newArrayList();
+    for (String fixture : fixtures) {
+      types.add("ExactType:" + quote(fixture));
+    }
+    return StringUtils.join(types, " or ");
+  }
+
+  /**
+   * Quotes a value of a Gallio filter. The backslash escapes the quote and the backslash, but also the backtick of the generic types
+   * and the plus sign of the nested types.
+   */
+  static String quote(String value) {
+    StringBuilder quoted = new StringBuilder(value.length() + 2).append('\'');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\'' || c == '\\' || c == '`' || c == '+') {
+        quoted.append('\\');
+      }
+      quoted.append(c);
+    }
+    return quoted.append('\'').toString();
+  }
+
+}
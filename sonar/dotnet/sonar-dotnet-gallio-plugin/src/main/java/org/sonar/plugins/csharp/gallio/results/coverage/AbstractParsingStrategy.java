@@ -27,7 +27,6 @@ import org.codehaus.staxmate.in.SMFilterFactory;
 import org.codehaus.staxmate.in.SMInputCursor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
-import org.sonar.plugins.csharp.gallio.results.coverage.model.CoveragePoint;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
 
 import java.util.ArrayList;
@@ -64,6 +63,9 @@ public abstract class AbstractParsingStrategy implements CoverageResultParsingSt
 
   protected Map<Integer, FileCoverage> sourceFilesById = new HashMap<Integer, FileCoverage>();
 
+  private int[] pointBuffer = new int[96];
+  private int pointCount;
+
   private String pointElement;
   private String countVisitsPointAttribute;
   private String startLinePointAttribute;
@@ -87,17 +89,18 @@ public abstract class AbstractParsingStrategy implements CoverageResultParsingSt
     }
   }
 
-  protected CoveragePoint createPoint(SMInputCursor pointCursor) {
-
-    CoveragePoint point = new CoveragePoint();
-    int startLine = findAttributeIntValue(pointCursor, getStartLinePointAttribute());
-    int endLine = findAttributeIntValue(pointCursor, getEndLinePointAttribute());
-
-    point.setCountVisits(findAttributeIntValue(pointCursor, getCountVisitsPointAttribute()));
-    point.setStartLine(startLine);
-    point.setEndLine(endLine);
-
-    return point;
+  /**
+   * Buffers the coverage point under the cursor, as (start line, end line, visits) triples, until its file is known.
+   */
+  protected void bufferPoint(SMInputCursor pointCursor) {
+    if (pointCount + 3 > pointBuffer.length) {
+      int[] newBuffer = new int[pointBuffer.length * 2];
+      System.arraycopy(pointBuffer, 0, newBuffer, 0, pointCount);
+      pointBuffer = newBuffer;
+    }
+    pointBuffer[pointCount++] = findAttributeIntValue(pointCursor, getStartLinePointAttribute());
+    pointBuffer[pointCount++] = findAttributeIntValue(pointCursor, getEndLinePointAttribute());
+    pointBuffer[pointCount++] = findAttributeIntValue(pointCursor, getCountVisitsPointAttribute());
   }
 
   /**
@@ -115,28 +118,31 @@ public abstract class AbstractParsingStrategy implements CoverageResultParsingSt
     if (isAStartElement(method)) {
 
       SMInputCursor pointTag = descendantElements(method);
-      List<CoveragePoint> points = new ArrayList<CoveragePoint>();
+      pointCount = 0;
       int fid = 0;
 
       while (nextPosition(pointTag) != null) {
         if (isAStartElement(pointTag) && (findAttributeValue(pointTag, getFileIdPointAttribute()) != null)) {
-          CoveragePoint point = createPoint(pointTag);
-          points.add(point);
+          bufferPoint(pointTag);
           fid = findAttributeIntValue(pointTag, getFileIdPointAttribute());
         }
       }
       FileCoverage fileCoverage = sourceFilesById.get(Integer.valueOf(fid));
-      fillFileCoverage(fileCoverage, points);
+      flushPoints(fileCoverage);
     }
   }
 
-  protected void fillFileCoverage(FileCoverage fileCoverage, List<CoveragePoint> points) {
+  /**
+   * Writes the buffered points into the given file coverage and empties the buffer.
+   */
+  protected void flushPoints(FileCoverage fileCoverage) {
 
     if (fileCoverage != null) {
-      for (CoveragePoint point : points) {
-        fileCoverage.addPoint(point);
+      for (int i = 0; i < pointCount; i += 3) {
+        fileCoverage.addPoint(pointBuffer[i], pointBuffer[i + 1], pointBuffer[i + 2]);
       }
     }
+    pointCount = 0;
   }
 
   public String getFileTag() {
@@ -207,8 +213,10 @@ public abstract class AbstractParsingStrategy implements CoverageResultParsingSt
       return Collections.EMPTY_LIST;
     }
 
-    // filter files according to the exclusion patterns
-    sourceFilesById = Maps.filterValues(sourceFilesById, new IsFileIndexedPredicate(sonarProject, context));
+    // filter files according to the exclusion patterns, unless the report is parsed for the whole solution
+    if (context != null) {
+      sourceFilesById = Maps.filterValues(sourceFilesById, new IsFileIndexedPredicate(sonarProject, context));
+    }
 
     // We finally process the coverage details
     fillProjects(rootChildCursor);
@@ -0,0 +1,274 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.coverage;
+
+import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.codehaus.staxmate.SMInputFactory;
+import org.codehaus.staxmate.in.SMHierarchicCursor;
+import org.codehaus.staxmate.in.SMInputCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.csharp.gallio.GallioConstants;
+import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findElementName;
+
+/**
+ * Solution wide index of the coverage reports. Each report is parsed only once per analysis, whatever the number of
+ * modules of the solution, and the resulting file coverages are grouped by visual studio project so that every module
+ * only fetches its own slice. Several reports can be parsed concurrently, each of them with its own parsing strategies as those
+ * hold the state of the parsing.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class CoverageResultIndex implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageResultIndex.class);
+
+  private final MicrosoftWindowsEnvironment microsoftWindowsEnvironment;
+  private final int threads;
+  private final Map<String, IndexedReport> reports = Maps.newHashMap();
+
+  public CoverageResultIndex(MicrosoftWindowsEnvironment microsoftWindowsEnvironment) {
+    this(microsoftWindowsEnvironment, GallioConstants.COVERAGE_PARSING_THREADS_DEFVALUE);
+  }
+
+  public CoverageResultIndex(MicrosoftWindowsEnvironment microsoftWindowsEnvironment, DotNetConfiguration configuration) {
+    this(microsoftWindowsEnvironment, configuration.getInt(GallioConstants.COVERAGE_PARSING_THREADS_KEY));
+  }
+
+  private CoverageResultIndex(MicrosoftWindowsEnvironment microsoftWindowsEnvironment, int threads) {
+    this.microsoftWindowsEnvironment = microsoftWindowsEnvironment;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Parses the given reports that are not indexed yet, or that have been modified since they were indexed. Up to
+   * {@link GallioConstants#COVERAGE_PARSING_THREADS_KEY} reports are parsed at the same time.
+   * 
+   * @param reportFiles
+   *          the coverage reports
+   */
+  public void index(Collection<File> reportFiles) {
+    index(reportFiles, false);
+  }
+
+  /**
+   * Same as {@link #index(Collection)}, but when useSnapshots is true the reports are read from their {@link CoverageSnapshot} when
+   * it is up to date, and the snapshot is written after the XML parsing otherwise.
+   * 
+   * @param reportFiles
+   *          the coverage reports
+   * @param useSnapshots
+   *          whether the binary snapshots of the reports should be used
+   */
+  public synchronized void index(Collection<File> reportFiles, final boolean useSnapshots) {
+    final List<File> toParse = Lists.newArrayList();
+    for (File report : reportFiles) {
+      IndexedReport indexedReport = reports.get(report.getAbsolutePath());
+      if (indexedReport == null || indexedReport.lastModified != report.lastModified()) {
+        toParse.add(report);
+      }
+    }
+    int poolSize = Math.min(threads, toParse.size());
+    if (poolSize <= 1) {
+      for (File report : toParse) {
+        reports.put(report.getAbsolutePath(), new IndexedReport(report.lastModified(), parse(report, useSnapshots)));
+      }
+      return;
+    }
+
+    LOG.debug("Parsing {} coverage reports with {} threads", toParse.size(), poolSize);
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+    try {
+      List<Future<Map<VisualStudioProject, List<FileCoverage>>>> futures = Lists.newArrayList();
+      for (final File report : toParse) {
+        futures.add(executor.submit(new Callable<Map<VisualStudioProject, List<FileCoverage>>>() {
+          public Map<VisualStudioProject, List<FileCoverage>> call() {
+            return parse(report, useSnapshots);
+          }
+        }));
+      }
+      for (int i = 0; i < toParse.size(); i++) {
+        File report = toParse.get(i);
+        reports.put(report.getAbsolutePath(), new IndexedReport(report.lastModified(), futures.get(i).get()));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Parsing of the coverage reports was interrupted.", e);
+    } catch (ExecutionException e) {
+      throw new SonarException("Could not parse the coverage reports", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the summarized coverage of the files of the given project found in the given report. The report is parsed the first
+   * time it is requested, the following calls are served from the index as long as the report is not modified.
+   * 
+   * @param vsProject
+   *          the project for which coverage is wanted
+   * @param report
+   *          the coverage report
+   * @return the coverages of the files of the project, never null
+   */
+  public synchronized List<FileCoverage> getCoverages(VisualStudioProject vsProject, File report) {
+    index(Collections.singletonList(report));
+    IndexedReport indexedReport = reports.get(report.getAbsolutePath());
+    List<FileCoverage> result = indexedReport.coveragesByProject.get(vsProject);
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    return result;
+  }
+
+  /**
+   * Number of reports currently held by the index.
+   */
+  int getIndexedReportCount() {
+    return reports.size();
+  }
+
+  private Map<VisualStudioProject, List<FileCoverage>> parse(File report, boolean useSnapshots) {
+    List<FileCoverage> fileCoverages = null;
+    if (useSnapshots) {
+      fileCoverages = CoverageSnapshot.read(report);
+    }
+    if (fileCoverages == null) {
+      fileCoverages = parseXml(report);
+      if (useSnapshots) {
+        CoverageSnapshot.write(report, fileCoverages);
+      }
+    } else {
+      LOG.debug("Coverage report {} read from its snapshot", report);
+    }
+
+    // We group the files by project and we summarize them
+    VisualStudioSolution solution = microsoftWindowsEnvironment.getCurrentSolution();
+    Map<VisualStudioProject, List<FileCoverage>> coveragesByProject = Maps.newHashMap();
+    for (FileCoverage fileCoverage : fileCoverages) {
+      VisualStudioProject vsProject = solution.getProject(fileCoverage.getFile());
+      if (vsProject == null) {
+        LOG.debug("Coverage report contains a reference to a cs file outside the solution {}", fileCoverage.getFile());
+      } else {
+        List<FileCoverage> projectCoverages = coveragesByProject.get(vsProject);
+        if (projectCoverages == null) {
+          projectCoverages = Lists.newArrayList();
+          coveragesByProject.put(vsProject, projectCoverages);
+        }
+        fileCoverage.summarize();
+        projectCoverages.add(fileCoverage);
+      }
+    }
+    return coveragesByProject;
+  }
+
+  private List<FileCoverage> parseXml(File report) {
+    LOG.debug("Parsing coverage report {}", report);
+    final SMHierarchicCursor rootCursor;
+    final SMInputCursor root;
+    try {
+      SMInputFactory inf = new SMInputFactory(XMLInputFactory.newInstance());
+      rootCursor = inf.rootElementCursor(report);
+      root = rootCursor.advance();
+    } catch (XMLStreamException e) {
+      throw new SonarException("Could not parse the result file", e);
+    }
+
+    LOG.debug("\nrootCursor is at : {}", findElementName(rootCursor));
+    // First define the version, the strategies are not shared between the reports as they are not thread safe
+    CoverageResultParsingStrategy strategy = chooseParsingStrategy(createParsingStrategies(), root);
+
+    // No sensor context here: the files are filtered against the exclusions of each module when the slices are fetched
+    return strategy.parse(null, microsoftWindowsEnvironment.getCurrentSolution(), null, root);
+  }
+
+  /**
+   * This method is necessary due to a modification of the schema between partcover 2.2 and 2.3, for which elements start now with an
+   * uppercase letter. Format is a little bit different with partcover4, and NCover use a different format too.
+   * 
+   * @param root
+   *          : root cursor
+   */
+  private static CoverageResultParsingStrategy chooseParsingStrategy(List<CoverageResultParsingStrategy> parsingStrategies,
+      SMInputCursor root) {
+    CoverageResultParsingStrategy currentStrategy = null;
+    Iterator<CoverageResultParsingStrategy> strategyIterator = parsingStrategies.iterator();
+    while (strategyIterator.hasNext()) {
+      CoverageResultParsingStrategy strategy = strategyIterator.next();
+      if (strategy.isCompatible(root)) {
+        currentStrategy = strategy;
+      }
+    }
+    if (currentStrategy == null) {
+      LOG.warn("XML coverage format unknown, using default strategy");
+      currentStrategy = parsingStrategies.get(0);
+    }
+    return currentStrategy;
+  }
+
+  private static List<CoverageResultParsingStrategy> createParsingStrategies() {
+    List<CoverageResultParsingStrategy> parsingStrategies = new ArrayList<CoverageResultParsingStrategy>();
+    parsingStrategies.add(new PartCover23ParsingStrategy());
+    parsingStrategies.add(new PartCover22ParsingStrategy());
+    parsingStrategies.add(new PartCover4ParsingStrategy());
+    parsingStrategies.add(new NCover3ParsingStrategy());
+    parsingStrategies.add(new OpenCoverParsingStrategy());
+    parsingStrategies.add(new DotCoverParsingStrategy());
+    return parsingStrategies;
+  }
+
+  private static class IndexedReport {
+
+    private final long lastModified;
+    private final Map<VisualStudioProject, List<FileCoverage>> coveragesByProject;
+
+    IndexedReport(long lastModified, Map<VisualStudioProject, List<FileCoverage>> coveragesByProject) {
+      this.lastModified = lastModified;
+      this.coveragesByProject = coveragesByProject;
+    }
+  }
+
+}
@@ -24,57 +24,57 @@ import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
 import com.google.common.collect.Lists;
-import org.codehaus.staxmate.SMInputFactory;
-import org.codehaus.staxmate.in.SMHierarchicCursor;
-import org.codehaus.staxmate.in.SMInputCursor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
-import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamException;
-
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
 import java.util.List;
 
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findElementName;
-
 /**
- * Parses a coverage report using Stax
+ * Parses a coverage report using Stax. The report itself is parsed once for the whole solution by the
+ * {@link CoverageResultIndex}, this class only extracts the slice of the current module.
  * 
  * @author Maxime SCHNEIDER-DUFEUTRELLE January 26, 2011
  */
 public class CoverageResultParser implements BatchExtension {
 
-  /**
-   * Generates the logger.
-   */
-  private static final Logger LOG = LoggerFactory.getLogger(CoverageResultParser.class);
-
   private SensorContext context;
   private VisualStudioSolution solution;
-  private final List<CoverageResultParsingStrategy> parsingStrategies;
-  private CoverageResultParsingStrategy currentStrategy;
+  private final CoverageResultIndex index;
 
   /**
    * Constructs a @link{CoverageResultStaxParser}.
    */
   public CoverageResultParser(SensorContext context, MicrosoftWindowsEnvironment microsoftWindowsEnvironment) {
+    this(context, microsoftWindowsEnvironment, new CoverageResultIndex(microsoftWindowsEnvironment));
+  }
+
+  public CoverageResultParser(SensorContext context, MicrosoftWindowsEnvironment microsoftWindowsEnvironment, CoverageResultIndex index) {
     this.context = context;
     this.solution = microsoftWindowsEnvironment.getCurrentSolution();
-    parsingStrategies = new ArrayList<CoverageResultParsingStrategy>();
-    parsingStrategies.add(new PartCover23ParsingStrategy());
-    parsingStrategies.add(new PartCover22ParsingStrategy());
-    parsingStrategies.add(new PartCover4ParsingStrategy());
-    parsingStrategies.add(new NCover3ParsingStrategy());
-    parsingStrategies.add(new OpenCoverParsingStrategy());
-    parsingStrategies.add(new DotCoverParsingStrategy());
+    this.index = index;
+  }
+
+  /**
+   * Parses concurrently the given reports that have not been parsed yet, so that the following calls to
+   * {@link #parse(Project, File)} are served from the index.
+   * 
+   * @param files
+   *          the reports to parse
+   */
+  public void parseAll(Collection<File> files) {
+    parseAll(files, false);
+  }
+
+  /**
+   * Same as {@link #parseAll(Collection)}, reading and writing the binary {@link CoverageSnapshot} of each report when useSnapshots
+   * is true.
+   */
+  public void parseAll(Collection<File> files, boolean useSnapshots) {
+    index.index(files, useSnapshots);
   }
 
   /**
@@ -85,33 +85,12 @@ public class CoverageResultParser implements BatchExtension {
    * 
    */
   public List<FileCoverage> parse(final Project sonarProject, final File file) {
+    VisualStudioProject currentVsProject = solution.getProjectFromSonarProject(sonarProject);
 
-    final SMHierarchicCursor rootCursor;
-    final SMInputCursor root;
-    try {
-      SMInputFactory inf = new SMInputFactory(XMLInputFactory.newInstance());
-      rootCursor = inf.rootElementCursor(file);
-      root = rootCursor.advance();
-    } catch (XMLStreamException e) {
-      throw new SonarException("Could not parse the result file", e);
-    }
-
-    LOG.debug("\nrootCursor is at : {}", findElementName(rootCursor));
-    // First define the version
-    chooseParsingStrategy(root);
-
-    List<FileCoverage> fileCoverages = currentStrategy.parse(context, solution, sonarProject, root);
-
-    // We filter the files that belong to the current project
-    // and we summarize them
+    // We keep the files of the current project that are not excluded from the analysis
     List<FileCoverage> result = Lists.newArrayList();
-    VisualStudioProject currentVsProject = solution.getProjectFromSonarProject(sonarProject);
-    for (FileCoverage fileCoverage : fileCoverages) {
-      VisualStudioProject vsProject = solution.getProject(fileCoverage.getFile());
-      if (vsProject == null) {
-        LOG.debug("Coverage report contains a reference to a cs file outside the solution {}", fileCoverage.getFile());
-      } else if (currentVsProject.equals(vsProject)) {
-        fileCoverage.summarize();
+    for (FileCoverage fileCoverage : index.getCoverages(currentVsProject, file)) {
+      if (context.isIndexed(org.sonar.api.resources.File.fromIOFile(fileCoverage.getFile(), sonarProject), false)) {
         result.add(fileCoverage);
       }
     }
@@ -119,25 +98,4 @@ public class CoverageResultParser implements BatchExtension {
     return result;
   }
 
-  /**
-   * This method is necessary due to a modification of the schema between partcover 2.2 and 2.3, for which elements start now with an
-   * uppercase letter. Format is a little bit different with partcover4, and NCover use a different format too.
-   * 
-   * @param root
-   *          : root cursor
-   */
-  private void chooseParsingStrategy(SMInputCursor root) {
-
-    Iterator<CoverageResultParsingStrategy> strategyIterator = parsingStrategies.iterator();
-    while (strategyIterator.hasNext()) {
-      CoverageResultParsingStrategy strategy = strategyIterator.next();
-      if (strategy.isCompatible(root)) {
-        this.currentStrategy = strategy;
-      }
-    }
-    if (currentStrategy == null) {
-      LOG.warn("XML coverage format unknown, using default strategy");
-      this.currentStrategy = parsingStrategies.get(0);
-    }
-  }
 }
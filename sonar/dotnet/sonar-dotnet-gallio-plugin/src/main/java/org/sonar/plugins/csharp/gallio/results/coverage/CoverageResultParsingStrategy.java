@@ -32,6 +32,10 @@ public interface CoverageResultParsingStrategy {
 
   boolean isCompatible(SMInputCursor rootCursor);
 
+  /**
+   * Parses the coverage report. When no sensor context is given, the files are not filtered against the exclusions of the current
+   * module.
+   */
   List<FileCoverage> parse(SensorContext ctx, VisualStudioSolution solution, Project sonarProject, SMInputCursor cursor);
 
 }
@@ -0,0 +1,223 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.coverage;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary copy of a parsed coverage report, written next to the report so that the analyses reusing the report do not
+ * have to parse the XML again.<br/>
+ * The snapshot starts with a header identifying the report it was built from (size and last modification date), followed by the
+ * table of the source file paths and by one record per file: the index of its path, its uncovered lines and its instrumented lines
+ * as delta-encoded line numbers with their visits. All the integers are written as variable-length quantities. A snapshot that
+ * cannot be decoded is ignored, and the report is parsed again.
+ */
+public final class CoverageSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoverageSnapshot.class);
+
+  private static final int MAGIC = 0x47434F56;
+  private static final int VERSION = 1;
+  private static final String EXTENSION = ".snapshot";
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private CoverageSnapshot() {
+  }
+
+  /**
+   * Returns the snapshot file associated to a coverage report.
+   */
+  public static File getSnapshotFile(File report) {
+    return new File(report.getParentFile(), report.getName() + EXTENSION);
+  }
+
+  /**
+   * Reads the snapshot of the given report.
+   * 
+   * @param report
+   *          the coverage report
+   * @return the file coverages of the report, or null if there is no up to date and readable snapshot for this report
+   */
+  public static List<FileCoverage> read(File report) {
+    File snapshot = getSnapshotFile(report);
+    if (!snapshot.isFile()) {
+      return null;
+    }
+    try {
+      // Read on the heap rather than mapped, so that the snapshot file is not held until the buffer is garbage collected
+      return read(ByteBuffer.wrap(FileUtils.readFileToByteArray(snapshot)), report);
+    } catch (IOException e) {
+      LOG.warn("Could not read the coverage snapshot " + snapshot, e);
+      return null;
+    } catch (RuntimeException e) {
+      // Truncated or corrupted snapshot: buffer underflow, negative sizes, out of range indexes...
+      LOG.warn("Unreadable coverage snapshot " + snapshot + ", the report will be parsed again", e);
+      return null;
+    }
+  }
+
+  private static List<FileCoverage> read(ByteBuffer buffer, File report) {
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      LOG.debug("Ignoring coverage snapshot of an unknown format for {}", report);
+      return null;
+    }
+    if (buffer.getLong() != report.length() || buffer.getLong() != report.lastModified()) {
+      LOG.debug("Ignoring out of date coverage snapshot for {}", report);
+      return null;
+    }
+
+    File[] files = new File[readInt(buffer)];
+    for (int i = 0; i < files.length; i++) {
+      byte[] path = new byte[readInt(buffer)];
+      buffer.get(path);
+      files[i] = new File(UTF8.decode(ByteBuffer.wrap(path)).toString());
+    }
+
+    int coverageCount = readInt(buffer);
+    List<FileCoverage> result = Lists.newArrayListWithCapacity(coverageCount);
+    for (int i = 0; i < coverageCount; i++) {
+      FileCoverage coverage = new FileCoverage(files[readInt(buffer)]);
+      coverage.addUncoveredLines(readInt(buffer));
+      int lineCount = readInt(buffer);
+      int line = 0;
+      for (int j = 0; j < lineCount; j++) {
+        line += readInt(buffer);
+        coverage.addPoint(line, line, readInt(buffer));
+      }
+      result.add(coverage);
+    }
+    return result;
+  }
+
+  /**
+   * Writes the snapshot of the given report. Failures are only logged, as the report itself remains usable.
+   * 
+   * @param report
+   *          the coverage report
+   * @param coverages
+   *          the file coverages parsed from the report
+   */
+  public static void write(File report, List<FileCoverage> coverages) {
+    File snapshot = getSnapshotFile(report);
+    File tmpSnapshot = new File(snapshot.getPath() + ".tmp");
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpSnapshot)));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(report.length());
+      output.writeLong(report.lastModified());
+
+      List<String> paths = Lists.newArrayList();
+      Map<String, Integer> pathIndexes = Maps.newHashMap();
+      int[] fileIndexes = new int[coverages.size()];
+      for (int i = 0; i < coverages.size(); i++) {
+        String path = coverages.get(i).getFile().getPath();
+        Integer index = pathIndexes.get(path);
+        if (index == null) {
+          index = paths.size();
+          pathIndexes.put(path, index);
+          paths.add(path);
+        }
+        fileIndexes[i] = index;
+      }
+      writeInt(output, paths.size());
+      for (String path : paths) {
+        ByteBuffer encodedPath = UTF8.encode(path);
+        byte[] bytes = new byte[encodedPath.remaining()];
+        encodedPath.get(bytes);
+        writeInt(output, bytes.length);
+        output.write(bytes);
+      }
+
+      writeInt(output, coverages.size());
+      for (int i = 0; i < coverages.size(); i++) {
+        FileCoverage coverage = coverages.get(i);
+        writeInt(output, fileIndexes[i]);
+        writeInt(output, coverage.getUncoveredLines());
+        int[] lines = coverage.getLineNumbers();
+        writeInt(output, lines.length);
+        int previousLine = 0;
+        for (int line : lines) {
+          writeInt(output, line - previousLine);
+          writeInt(output, coverage.getCountVisits(line));
+          previousLine = line;
+        }
+      }
+      output.close();
+      output = null;
+
+      if ((snapshot.exists() && !snapshot.delete()) || !tmpSnapshot.renameTo(snapshot)) {
+        LOG.warn("Could not write the coverage snapshot {}", snapshot);
+      } else {
+        LOG.debug("Coverage snapshot written: {}", snapshot);
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not write the coverage snapshot " + snapshot, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+      if (tmpSnapshot.exists() && !tmpSnapshot.delete()) {
+        LOG.debug("Could not delete {}", tmpSnapshot);
+      }
+    }
+  }
+
+  /*
+   * Variable-length quantities: 7 bits per byte, the high bit telling whether another byte follows.
+   */
+  private static void writeInt(OutputStream output, int value) throws IOException {
+    int remaining = value;
+    while ((remaining & ~0x7F) != 0) {
+      output.write((remaining & 0x7F) | 0x80);
+      remaining >>>= 7;
+    }
+    output.write(remaining);
+  }
+
+  private static int readInt(ByteBuffer buffer) {
+    int result = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      result |= (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return result;
+  }
+
+}
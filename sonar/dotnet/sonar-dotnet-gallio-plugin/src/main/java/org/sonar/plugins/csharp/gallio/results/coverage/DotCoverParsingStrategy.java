@@ -21,24 +21,20 @@ package org.sonar.plugins.csharp.gallio.results.coverage;
 
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import org.codehaus.staxmate.in.SMInputCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.SonarException;
-import org.sonar.plugins.csharp.gallio.results.coverage.model.CoveragePoint;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
 
 import javax.xml.stream.XMLStreamException;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -49,7 +45,8 @@ public class DotCoverParsingStrategy implements CoverageResultParsingStrategy {
   private static final Logger LOG = LoggerFactory.getLogger(DotCoverParsingStrategy.class);
 
   private Map<Integer, File> fileRegistry;
-  private Multimap<Integer, CoveragePoint> coveragePointRegistry;
+  // files are declared after the assemblies: hits are gathered by file index until the files are known
+  private Map<Integer, FileCoverage> coverageRegistry;
 
   public boolean isCompatible(SMInputCursor rootCursor) {
     String version = findAttributeValue(rootCursor, "DotCoverVersion");
@@ -65,7 +62,7 @@ public class DotCoverParsingStrategy implements CoverageResultParsingStrategy {
 
   public List<FileCoverage> parse(SensorContext ctx, VisualStudioSolution solution, Project sonarProject, SMInputCursor cursor) {
     fileRegistry = Maps.newHashMap();
-    coveragePointRegistry = ArrayListMultimap.create();
+    coverageRegistry = Maps.newHashMap();
     try {
       cursor = cursor.childElementCursor();
       while (cursor.getNext() != null) {
@@ -80,14 +77,11 @@ public class DotCoverParsingStrategy implements CoverageResultParsingStrategy {
     }
 
     List<FileCoverage> result = Lists.newArrayList();
-    for (int fileIndex : coveragePointRegistry.keySet()) {
+    for (Integer fileIndex : coverageRegistry.keySet()) {
       File sourceFile = fileRegistry.get(fileIndex);
       if (sourceFile != null) {
         FileCoverage fileCoverage = new FileCoverage(sourceFile);
-        Collection<CoveragePoint> points = coveragePointRegistry.get(fileIndex);
-        for (CoveragePoint point : points) {
-          fileCoverage.addPoint(point);
-        }
+        fileCoverage.merge(coverageRegistry.get(fileIndex));
         result.add(fileCoverage);
       }
     }
@@ -129,13 +123,13 @@ public class DotCoverParsingStrategy implements CoverageResultParsingStrategy {
       } else {
         visits = 0;
       }
-      CoveragePoint point = new CoveragePoint();
-      point.setCountVisits(visits);
-      point.setStartLine(startLine);
-      point.setEndLine(endLine);
-
       int fileIndex = Integer.valueOf(statementCursor.getAttrValue("FileIndex"));
-      coveragePointRegistry.put(fileIndex, point);
+      FileCoverage fileCoverage = coverageRegistry.get(fileIndex);
+      if (fileCoverage == null) {
+        fileCoverage = new FileCoverage((File) null);
+        coverageRegistry.put(fileIndex, fileCoverage);
+      }
+      fileCoverage.addPoint(startLine, endLine, visits);
 
     }
   }
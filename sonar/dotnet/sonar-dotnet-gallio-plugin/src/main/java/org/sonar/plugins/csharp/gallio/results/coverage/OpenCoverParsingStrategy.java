@@ -21,7 +21,6 @@ package org.sonar.plugins.csharp.gallio.results.coverage;
 
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.codehaus.staxmate.in.SMInputCursor;
 import org.slf4j.Logger;
@@ -29,14 +28,12 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.SonarException;
-import org.sonar.plugins.csharp.gallio.results.coverage.model.CoveragePoint;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
 
 import javax.xml.stream.XMLStreamException;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -107,29 +104,21 @@ public class OpenCoverParsingStrategy implements CoverageResultParsingStrategy {
           fileCoverageRegistry.put(sourceFile, fileCoverage);
         }
       } else if ("SequencePoints".equals(methodCursor.getLocalName())) {
-        Collection<CoveragePoint> points = parseSequencePointsBloc(methodCursor);
         if (fileCoverage == null) {
           LOG.debug("Coverage point not associated to any source file");
         } else {
-          for (CoveragePoint point : points) {
-            fileCoverage.addPoint(point);
-          }
+          parseSequencePointsBloc(methodCursor, fileCoverage);
         }
       }
     }
   }
 
-  private Collection<CoveragePoint> parseSequencePointsBloc(SMInputCursor cursor) throws XMLStreamException {
+  private void parseSequencePointsBloc(SMInputCursor cursor, FileCoverage fileCoverage) throws XMLStreamException {
     SMInputCursor pointCursor = cursor.childElementCursor();
-    List<CoveragePoint> result = Lists.newArrayList();
     while (pointCursor.getNext() != null) {
-      CoveragePoint point = new CoveragePoint();
-      point.setCountVisits(Integer.valueOf(pointCursor.getAttrValue("vc")));
-      point.setStartLine(Integer.valueOf(pointCursor.getAttrValue("sl")));
-      point.setEndLine(Integer.valueOf(pointCursor.getAttrValue("el")));
-      result.add(point);
+      fileCoverage.addPoint(Integer.parseInt(pointCursor.getAttrValue("sl")), Integer.parseInt(pointCursor.getAttrValue("el")),
+          Integer.parseInt(pointCursor.getAttrValue("vc")));
     }
-    return result;
   }
 
 }
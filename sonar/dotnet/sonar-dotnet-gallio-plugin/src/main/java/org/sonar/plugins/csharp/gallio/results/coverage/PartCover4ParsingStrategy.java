@@ -23,12 +23,8 @@ import org.apache.commons.lang.StringUtils;
 import org.codehaus.staxmate.in.SMInputCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sonar.plugins.csharp.gallio.results.coverage.model.CoveragePoint;
 import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.descendantElements;
 import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findAttributeIntValue;
 import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findAttributeValue;
@@ -82,14 +78,12 @@ public class PartCover4ParsingStrategy extends PartCoverParsingStrategy {
       boolean methodWithPoints = false;
 
       SMInputCursor pointTag = descendantElements(method);
-      List<CoveragePoint> points = new ArrayList<CoveragePoint>();
       int fid = 0;
 
       while (nextPosition(pointTag) != null) {
         methodWithPoints = true;
         if (isAStartElement(pointTag) && (findAttributeValue(pointTag, getFileIdPointAttribute()) != null)) {
-          CoveragePoint point = createPoint(pointTag);
-          points.add(point);
+          bufferPoint(pointTag);
           fid = findAttributeIntValue(pointTag, getFileIdPointAttribute());
         }
       }
@@ -100,7 +94,7 @@ public class PartCover4ParsingStrategy extends PartCoverParsingStrategy {
       } else {
         fileCoverage = sourceFilesById.get(Integer.valueOf(fid));
       }
-      fillFileCoverage(fileCoverage, points);
+      flushPoints(fileCoverage);
     }
   }
 
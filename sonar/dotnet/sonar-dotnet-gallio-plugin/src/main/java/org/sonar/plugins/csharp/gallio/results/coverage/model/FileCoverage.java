@@ -23,18 +23,26 @@
 package org.sonar.plugins.csharp.gallio.results.coverage.model;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.BitSet;
 
 /**
- * A FileCoverage.
+ * A FileCoverage. The visits are stored in a growable array indexed by line number, along with the set of the lines that hold at
+ * least one coverage point.
  * 
  * @author Jose CHILLAN May 14, 2009
  */
 public class FileCoverage {
 
+  private static final int INITIAL_CAPACITY = 64;
+  /**
+   * Highest line number taken into account. The hits are stored in an array indexed by line number, so points beyond are ignored: they
+   * can only be bogus, like the 0xFEEFEE line number of the sequence points that the compilers hide from the debuggers.
+   */
+  static final int MAX_LINE = 1000000;
+
   private final File file;
-  private Map<Integer, SourceLine> lines = new HashMap<Integer, SourceLine>();
+  private final BitSet lines = new BitSet();
+  private int[] hits = new int[INITIAL_CAPACITY];
   private int uncoveredLines = 0;
   private int countLines;
   private int coveredLines;
@@ -44,20 +52,25 @@ public class FileCoverage {
    */
   public FileCoverage(File file) {
     this.file = file;
-    this.lines = new HashMap<Integer, SourceLine>();
+  }
+
+  /**
+   * Constructs a copy of the given @link{FileCoverage}, that can be merged without altering the original one.
+   */
+  public FileCoverage(FileCoverage coverage) {
+    this(coverage.file);
+    this.uncoveredLines = coverage.uncoveredLines;
+    merge(coverage);
+    summarize();
   }
 
   public void merge(FileCoverage coverage) {
-    for (SourceLine line : coverage.lines.values()) {
-      SourceLine existingLine = lines.get(line.getLineNumber());
-      if (existingLine == null) {
-        lines.put(line.getLineNumber(), line);
-      } else {
-        existingLine.update(line);
-      }
-      summarize();
+    ensureCapacity(coverage.lines.length());
+    for (int line = coverage.lines.nextSetBit(0); line >= 0; line = coverage.lines.nextSetBit(line + 1)) {
+      lines.set(line);
+      hits[line] += coverage.hits[line];
     }
-
+    summarize();
   }
 
   /**
@@ -69,6 +82,15 @@ public class FileCoverage {
     uncoveredLines += lines;
   }
 
+  /**
+   * Returns the number of uncovered lines that are not associated to any coverage point.
+   * 
+   * @return The number of uncovered lines.
+   */
+  public int getUncoveredLines() {
+    return uncoveredLines;
+  }
+
   /**
    * Returns the file.
    * 
@@ -79,21 +101,31 @@ public class FileCoverage {
   }
 
   /**
-   * Adds a line coverage.
+   * Adds the visits of a coverage point to each line it spans. Points with invalid lines, or lines beyond {@link #MAX_LINE}, are ignored.
    * 
-   * @param lineCoverage
+   * @param startLine
+   *          first line of the point
+   * @param endLine
+   *          last line of the point
+   * @param countVisits
+   *          number of visits of the point
    */
-  public void addPoint(CoveragePoint point) {
-    int startLine = point.getStartLine();
-    int endLine = point.getEndLine();
+  public void addPoint(int startLine, int endLine, int countVisits) {
+    if (startLine < 0 || endLine < startLine || endLine > MAX_LINE) {
+      return;
+    }
+    ensureCapacity(endLine + 1);
+    lines.set(startLine, endLine + 1);
     for (int idx = startLine; idx <= endLine; idx++) {
-      // We add a point for each line
-      SourceLine line = lines.get(idx);
-      if (line == null) {
-        line = new SourceLine(idx);
-        lines.put(idx, line);
-      }
-      line.update(point);
+      hits[idx] += countVisits;
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > hits.length) {
+      int[] newHits = new int[Math.max(capacity, hits.length * 2)];
+      System.arraycopy(hits, 0, newHits, 0, hits.length);
+      hits = newHits;
     }
   }
 
@@ -101,22 +133,41 @@ public class FileCoverage {
    * Summarize the results
    */
   public void summarize() {
-    countLines = lines.size() + uncoveredLines;
+    countLines = lines.cardinality() + uncoveredLines;
     coveredLines = 0;
-    for (SourceLine line : lines.values()) {
-      if (line.getCountVisits() > 0) {
+    for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+      if (hits[line] > 0) {
         this.coveredLines += 1;
       }
     }
   }
 
   /**
-   * Returns the lines.
+   * Returns the numbers of the lines that hold at least one coverage point, in ascending order.
    * 
-   * @return The lines to return.
+   * @return The line numbers.
    */
-  public Map<Integer, SourceLine> getLines() {
-    return this.lines;
+  public int[] getLineNumbers() {
+    int[] result = new int[lines.cardinality()];
+    int i = 0;
+    for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+      result[i++] = line;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of visits of a line, 0 when the line holds no coverage point.
+   * 
+   * @param line
+   *          the line number
+   * @return The number of visits.
+   */
+  public int getCountVisits(int line) {
+    if (line < 0 || line >= hits.length) {
+      return 0;
+    }
+    return hits[line];
   }
 
   /**
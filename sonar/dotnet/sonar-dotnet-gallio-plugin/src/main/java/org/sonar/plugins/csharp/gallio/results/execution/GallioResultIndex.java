@@ -0,0 +1,116 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.execution;
+
+import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Solution wide cache of the parsed Gallio reports. Each report is parsed once per analysis, as long as it is not modified, and
+ * its unit test reports are grouped by the visual studio project of their source file so that every test module only looks up
+ * its own files.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class GallioResultIndex implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GallioResultIndex.class);
+
+  private final MicrosoftWindowsEnvironment microsoftWindowsEnvironment;
+  private final Map<String, IndexedReport> reports = Maps.newHashMap();
+
+  public GallioResultIndex(MicrosoftWindowsEnvironment microsoftWindowsEnvironment) {
+    this.microsoftWindowsEnvironment = microsoftWindowsEnvironment;
+  }
+
+  /**
+   * Returns the unit test reports of the given project found in the given Gallio report, parsing it with the given parser the
+   * first time it is requested. The unit test reports of source files that cannot be associated to a project of the solution are
+   * returned for every project.
+   * 
+   * @param vsProject
+   *          the project for which the tests are wanted
+   * @param report
+   *          the Gallio report
+   * @param parser
+   *          the parser used when the report is not indexed yet
+   * @return the unit test reports, never null
+   */
+  public synchronized Collection<UnitTestReport> getReports(VisualStudioProject vsProject, File report, GallioResultParser parser) {
+    String key = report.getAbsolutePath();
+    IndexedReport indexedReport = reports.get(key);
+    if (indexedReport == null || indexedReport.lastModified != report.lastModified()) {
+      indexedReport = new IndexedReport(report.lastModified(), parser.parse(report), microsoftWindowsEnvironment.getCurrentSolution());
+      reports.put(key, indexedReport);
+    } else {
+      LOG.debug("Reusing the already parsed Gallio report {}", report);
+    }
+    return indexedReport.getReports(vsProject);
+  }
+
+  private static class IndexedReport {
+
+    private final long lastModified;
+    private final Map<VisualStudioProject, List<UnitTestReport>> reportsByProject = Maps.newHashMap();
+    private final List<UnitTestReport> unassignedReports = Lists.newArrayList();
+
+    IndexedReport(long lastModified, Collection<UnitTestReport> unitTestReports, VisualStudioSolution solution) {
+      this.lastModified = lastModified;
+      for (UnitTestReport unitTestReport : unitTestReports) {
+        File sourceFile = unitTestReport.getSourceFile();
+        VisualStudioProject vsProject = sourceFile == null || solution == null ? null : solution.getProject(sourceFile);
+        if (vsProject == null) {
+          unassignedReports.add(unitTestReport);
+        } else {
+          List<UnitTestReport> projectReports = reportsByProject.get(vsProject);
+          if (projectReports == null) {
+            projectReports = Lists.newArrayList();
+            reportsByProject.put(vsProject, projectReports);
+          }
+          projectReports.add(unitTestReport);
+        }
+      }
+    }
+
+    Collection<UnitTestReport> getReports(VisualStudioProject vsProject) {
+      List<UnitTestReport> projectReports = reportsByProject.get(vsProject);
+      if (projectReports == null) {
+        return unassignedReports;
+      }
+      List<UnitTestReport> result = Lists.newArrayList(projectReports);
+      result.addAll(unassignedReports);
+      return result;
+    }
+  }
+
+}
@@ -19,405 +19,342 @@
  */
 package org.sonar.plugins.csharp.gallio.results.execution;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
-import org.codehaus.staxmate.SMInputFactory;
-import org.codehaus.staxmate.in.SMEvent;
-import org.codehaus.staxmate.in.SMFilterFactory;
-import org.codehaus.staxmate.in.SMHierarchicCursor;
-import org.codehaus.staxmate.in.SMInputCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.csharp.gallio.GallioConstants;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestDescription;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
 import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 
-import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.advanceCursor;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.descendantElements;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.descendantSpecifiedElements;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findAttributeValue;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.findElementName;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.isAStartElement;
-import static org.sonar.plugins.csharp.gallio.helper.StaxHelper.nextPosition;
-
 /**
  * Gallio result report parser.
  * 
+ * The report is read in a single pass, without recursion: the descriptions of the test model are collected first, then each
+ * test step result is resolved to its source file as soon as it is read and aggregated into the unit test report of that file.
+ * Only the beginning of the failure messages and stack traces is kept, up to {@link GallioConstants#DETAILS_MAX_LENGTH_KEY}
+ * characters.
+ * 
  * @author Maxime SCHNEIDER-DUFEUTRELLE
  * 
  */
 public class GallioResultParser implements BatchExtension {
 
-  private static final String LOG_PATTERN = "--{} : {}";
   private static final String GALLIO_REPORT_PARSING_ERROR = "gallio report parsing error";
-  private static final String GALLIO_URI = "http://www.gallio.org/";
-  private static final String ASSEMBLY = "assembly";
-  private static final String NAMESPACE = "namespace";
-  private static final String TYPE = "type";
-  private static final String MEMBER = "member";
-  private static final String PATH = "path";
-  private static final String LINE = "line";
+  private static final String TRUE = "true";
 
   private static final Logger LOG = LoggerFactory.getLogger(GallioResultParser.class);
 
-  private Map<String, TestCaseDetail> testCaseDetailsByTestIds;
-
-  public Set<UnitTestReport> parse(File report) {
-    try {
-      testCaseDetailsByTestIds = new HashMap<String, TestCaseDetail>();
-      SMInputFactory inf = new SMInputFactory(XMLInputFactory.newInstance());
-      SMHierarchicCursor rootCursor = inf.rootElementCursor(report);
-      advanceCursor(rootCursor);
-      LOG.debug("rootCursor is at : {}", findElementName(rootCursor));
-
-      // We first get the tests ids and put them in a map to get the details later
-      Map<String, TestDescription> testsDetails = new HashMap<String, TestDescription>();
-
-      QName testModelTag = new QName(GALLIO_URI, "testModel");
-      SMInputCursor testModelCursor = descendantElements(rootCursor);
-      testModelCursor.setFilter(SMFilterFactory.getElementOnlyFilter(testModelTag));
-      advanceCursor(testModelCursor);
-      LOG.debug("TestModelCursor initialized at : {}", findElementName(testModelCursor));
-      testsDetails = recursiveParseTestsIds(testModelCursor, testsDetails, null, null);
-
-      QName testPackageRunTag = new QName(GALLIO_URI, "testPackageRun");
-      testModelCursor.setFilter(SMFilterFactory.getElementOnlyFilter(testPackageRunTag));
-      advanceCursor(testModelCursor);
-      String testId = "";
-      recursiveParseTestsResults(testModelCursor, testId);
-
-      // Finally, we fill the reports
-      final Set<UnitTestReport> reports = createUnitTestsReport(testsDetails);
-      rootCursor.getStreamReader().closeCompletely();
-      LOG.debug("Parsing ended");
-
-      return reports;
-    } catch (XMLStreamException e) {
-      throw new SonarException(GALLIO_REPORT_PARSING_ERROR, e);
-    }
+  private final int detailsMaxLength;
 
+  public GallioResultParser() {
+    this(GallioConstants.DETAILS_MAX_LENGTH_DEFVALUE);
   }
 
-  private Map<String, TestDescription> recursiveParseTestsIds(SMInputCursor rootCursor, Map<String, TestDescription> testDetails,
-      File source, String parentAssemblyName) {
-    File sourceFile = source;
-    QName testTag = new QName(GALLIO_URI, "test");
-    if (isAStartElement(rootCursor)) {
-      // Get all the tests
-      SMInputCursor currentTest = descendantSpecifiedElements(rootCursor, testTag);
-      while (null != nextPosition(currentTest) && isAStartElement(currentTest)) {
-        TestDescription testDescription = new TestDescription();
-        String id = findAttributeValue(currentTest, "id");
-        String name = findAttributeValue(currentTest, "name");
-        String testCase = findAttributeValue(currentTest, "isTestCase");
-        LOG.debug("Id : {} & isTestCase : {}", id, testCase);
-        boolean isTestCase = "true".equals(testCase);
-        // We analyse all the tests tags to get useful informations if the test is a TestCase,
-        // and to get their children
-        SMInputCursor currentTestChildren = descendantElements(currentTest);
-        String eltName = null;
-        while (null != nextPosition(currentTestChildren) && !"parameters".equals(eltName)) {
-          eltName = findElementName(currentTestChildren);
-          if (isTestCase) {
-            testDescription.setMethodName(name);
-            LOG.debug(eltName);
-            if ("codeReference".equals(eltName)) {
-              parentAssemblyName = codeReferenceTreatment(parentAssemblyName, testDescription, currentTestChildren);
-              retrieveCodeReferences(testDescription, currentTestChildren);
-            }
-            nextPosition(currentTestChildren);
-            if ("codeLocation".equals(eltName)) {
-              sourceFile = retrieveCodeLocation(sourceFile, testDescription, currentTestChildren);
-            }
-            if (null == testDescription.getSourceFile()) {
-              testDescription.setSourceFile(sourceFile);
-            }
-            testDetails.put(id, testDescription);
-          }
-          sourceFile = evaluatePath(sourceFile, eltName, currentTestChildren);
-          if ("children".equals(eltName)) {
-            recursiveParseTestsIds(currentTestChildren, testDetails, sourceFile, parentAssemblyName);
-          }
-          advanceCursor(currentTestChildren);
-        }
-      }
-    }
-    return testDetails;
+  public GallioResultParser(DotNetConfiguration configuration) {
+    this(configuration.getInt(GallioConstants.DETAILS_MAX_LENGTH_KEY));
   }
 
-  private String codeReferenceTreatment(String parentAssemblyName, TestDescription testDescription, SMInputCursor currentTestChildren) {
-    String assemblyName = parentAssemblyName;
-    String attributeValue;
-    if (null != findAttributeValue(currentTestChildren, ASSEMBLY)) {
-      attributeValue = findAttributeValue(currentTestChildren, ASSEMBLY);
-      LOG.debug(LOG_PATTERN, ASSEMBLY, attributeValue);
-      testDescription.setAssemblyName(StringUtils.substringBefore(attributeValue, ","));
-      assemblyName = testDescription.getAssemblyName();
-    } else {
-      // Get the precedent assemblyName if not filled
-      testDescription.setAssemblyName(assemblyName);
-    }
-    return assemblyName;
+  private GallioResultParser(int detailsMaxLength) {
+    this.detailsMaxLength = detailsMaxLength > 0 ? detailsMaxLength : Integer.MAX_VALUE;
   }
 
-  private File evaluatePath(File source, String eltName, SMInputCursor currentTestChildren) {
-    File sourceFile = source;
-    if ("codeLocation".equals(eltName) && null != findAttributeValue(currentTestChildren, PATH)) {
-      File currentSourceFile = new File(findAttributeValue(currentTestChildren, PATH));
-      if (currentSourceFile != null) {
-        sourceFile = currentSourceFile;
+  public Set<UnitTestReport> parse(File report) {
+    InputStream input = null;
+    XMLStreamReader reader = null;
+    try {
+      input = new FileInputStream(report);
+      reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+      ReportHandler handler = new ReportHandler();
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          handler.startElement(reader);
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          handler.endElement();
+        } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+          handler.characters(reader);
+        }
       }
+      Set<UnitTestReport> reports = handler.getReports();
+      LOG.debug("The result Set contains {} report(s)", reports.size());
+      return reports;
+    } catch (XMLStreamException e) {
+      throw new SonarException(GALLIO_REPORT_PARSING_ERROR, e);
+    } catch (IOException e) {
+      throw new SonarException(GALLIO_REPORT_PARSING_ERROR, e);
+    } finally {
+      closeQuietly(reader);
+      IOUtils.closeQuietly(input);
     }
-    return sourceFile;
   }
 
-  private void retrieveCodeReferences(TestDescription testDescription, SMInputCursor currentTestChildren) {
-    String attributeValue;
-    if (null != findAttributeValue(currentTestChildren, NAMESPACE)) {
-      attributeValue = findAttributeValue(currentTestChildren, NAMESPACE);
-      LOG.debug(LOG_PATTERN, NAMESPACE, attributeValue);
-      testDescription.setNamespace(attributeValue);
-    }
-    if (null != findAttributeValue(currentTestChildren, TYPE)) {
-      attributeValue = findAttributeValue(currentTestChildren, TYPE);
-      LOG.debug(LOG_PATTERN, TYPE, attributeValue);
-      testDescription.setClassName(attributeValue);
-    }
-    if (null != findAttributeValue(currentTestChildren, MEMBER)) {
-      attributeValue = findAttributeValue(currentTestChildren, MEMBER);
-      LOG.debug(LOG_PATTERN, MEMBER, attributeValue);
-      testDescription.setMethodName(attributeValue);
+  private static void closeQuietly(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        LOG.debug("Could not close the Gallio report reader", e);
+      }
     }
   }
 
-  private File retrieveCodeLocation(File source, TestDescription testDescription, SMInputCursor currentTestChildren) {
-    File sourceFile = source;
-    String attributeValue;
-    if (null != findAttributeValue(currentTestChildren, PATH)) {
-      attributeValue = findAttributeValue(currentTestChildren, PATH);
-      LOG.debug(LOG_PATTERN, PATH, attributeValue);
-      File currentSourceFile = new File(attributeValue);
-      testDescription.setSourceFile(currentSourceFile);
-      sourceFile = currentSourceFile;
-    }
-    if (null != findAttributeValue(currentTestChildren, LINE)) {
-      attributeValue = findAttributeValue(currentTestChildren, LINE);
-      LOG.debug(LOG_PATTERN, LINE, attributeValue);
-      int lineNumber = Integer.valueOf(attributeValue);
-      testDescription.setLine(lineNumber);
+  /**
+   * State of the parsing of one report. The stacks only grow with the depth of the XML elements, whatever the number of tests.
+   */
+  private class ReportHandler {
+
+    private final List<String> elements = Lists.newArrayList();
+    private final List<TestNode> tests = Lists.newArrayList();
+    private final List<StepRun> stepRuns = Lists.newArrayList();
+    private final Map<String, TestDescription> descriptionsByTestId = Maps.newHashMap();
+    private final Map<String, TestCaseDetail> detailsByTestId = Maps.newHashMap();
+    private final Map<String, UnitTestReport> reportsBySourceKey = Maps.newHashMap();
+
+    private boolean inTestModel;
+    private boolean inTestPackageRun;
+    /** Depth of the test log of a failed test, or -1 when the current log does not need to be read */
+    private int testLogDepth = -1;
+    /** Depth of the stack trace marker being read, or -1 */
+    private int stackTraceDepth = -1;
+    private StringBuilder text;
+
+    void startElement(XMLStreamReader reader) {
+      String name = reader.getLocalName();
+      String parent = elements.isEmpty() ? null : elements.get(elements.size() - 1);
+      elements.add(name);
+      if ("testModel".equals(name)) {
+        inTestModel = true;
+      } else if ("testPackageRun".equals(name)) {
+        inTestPackageRun = true;
+      } else if (inTestModel) {
+        startTestModelElement(reader, name, parent);
+      } else if (inTestPackageRun) {
+        startTestRunElement(reader, name, parent);
+      }
     }
-    return sourceFile;
-  }
 
-  private void recursiveParseTestsResults(SMInputCursor rootCursor, String testId) {
-    String currentTestId = testId;
-    QName testStepRunTag = new QName(GALLIO_URI, "testStepRun");
-    SMInputCursor currentTestStepRun = descendantSpecifiedElements(rootCursor, testStepRunTag);
-    String eltName = "";
-    while (null != nextPosition(currentTestStepRun) && isAStartElement(currentTestStepRun)) {
-      // currentTestTags represents the different tests
-      SMInputCursor currentTestTags = descendantElements(currentTestStepRun);
-      nextPosition(currentTestTags);
-      eltName = findElementName(currentTestTags);
-      if ("testStep".equals(eltName)) {
-        if ("true".equals(findAttributeValue(currentTestTags, "isTestCase"))) {
-          if (null != findAttributeValue(currentTestTags, "testId")) {
-            currentTestId = findAttributeValue(currentTestTags, "testId");
-            LOG.debug("--testId : {}", currentTestId);
-            LOG.debug("--isTestCase : {}", findAttributeValue(currentTestTags, "isTestCase"));
-            nextPosition(currentTestTags);
+    private void startTestModelElement(XMLStreamReader reader, String name, String parent) {
+      if ("test".equals(name)) {
+        TestNode test = new TestNode(tests.isEmpty() ? null : tests.get(tests.size() - 1));
+        test.id = reader.getAttributeValue(null, "id");
+        test.name = reader.getAttributeValue(null, "name");
+        test.isTestCase = TRUE.equals(reader.getAttributeValue(null, "isTestCase"));
+        tests.add(test);
+      } else if ("test".equals(parent)) {
+        TestNode test = tests.get(tests.size() - 1);
+        if ("codeReference".equals(name)) {
+          String assembly = reader.getAttributeValue(null, "assembly");
+          if (assembly != null) {
+            test.assemblyName = StringUtils.substringBefore(assembly, ",");
           }
-          while (null != nextPosition(currentTestTags)) {
-            TestCaseDetail testCaseDetail = parsingTags(currentTestTags, currentTestId);
-            if (null != testCaseDetail) {
-              testCaseDetailsByTestIds.put(currentTestId, testCaseDetail);
-            }
+          String type = reader.getAttributeValue(null, "type");
+          if (type != null) {
+            test.className = type;
           }
-        } else {
-          currentTestId = findAttributeValue(currentTestTags, "testId");
-          while (null != nextPosition(currentTestTags)) {
-            parseChildren(currentTestId, currentTestTags);
+          String member = reader.getAttributeValue(null, "member");
+          if (member != null) {
+            // The name of a data-driven test also holds its arguments, whereas the member is the name of the test method
+            test.name = member;
+          }
+        } else if ("codeLocation".equals(name)) {
+          String path = reader.getAttributeValue(null, "path");
+          if (path != null) {
+            test.sourceFile = new File(path);
           }
         }
       }
-      advanceCursor(currentTestTags);
-    }
-  }
-
-  private void parseChildren(String testId, SMInputCursor currentTestTags) {
-    if ("children".equals(findElementName(currentTestTags))) {
-      recursiveParseTestsResults(currentTestTags, testId);
-      nextPosition(currentTestTags);
     }
-  }
-
-  private TestCaseDetail parsingTags(SMInputCursor currentTestTags, String testId) {
-
-    parseChildren(testId, currentTestTags);
-    TestCaseDetail detail = new TestCaseDetail();
-    if ("result".equals(findElementName(currentTestTags))) {
-      LOG.debug("Result for test : {}", testId);
-
-      String assertCount = findAttributeValue(currentTestTags, "assertCount");
-      LOG.debug("---assertCount : {}", assertCount);
-      detail.setCountAsserts((int) Double.parseDouble(assertCount));
 
-      String duration = findAttributeValue(currentTestTags, "duration");
-      LOG.debug("---duration : {}", duration);
-      detail.setTimeMillis((int) Math.round(Double.parseDouble(duration) * 1000.));
-
-      SMInputCursor currentTestOutcomeResultCursor = descendantElements(currentTestTags);
-      advanceCursor(currentTestOutcomeResultCursor);
-      String status = findAttributeValue(currentTestOutcomeResultCursor, "status");
-      String category = null;
-      if (null != findAttributeValue(currentTestOutcomeResultCursor, "category")) {
-        category = findAttributeValue(currentTestOutcomeResultCursor, "category");
+    private void startTestRunElement(XMLStreamReader reader, String name, String parent) {
+      if ("testStepRun".equals(name)) {
+        stepRuns.add(new StepRun(stepRuns.isEmpty() ? null : stepRuns.get(stepRuns.size() - 1)));
+        return;
+      }
+      if (stepRuns.isEmpty()) {
+        return;
       }
-      LOG.debug("---status : {}", status);
+      StepRun stepRun = stepRuns.get(stepRuns.size() - 1);
+      if (testLogDepth >= 0) {
+        startTestLogElement(reader, name, parent, stepRun.detail);
+      } else if ("testStepRun".equals(parent)) {
+        if ("testStep".equals(name)) {
+          stepRun.isTestCase = TRUE.equals(reader.getAttributeValue(null, "isTestCase"));
+          String testId = reader.getAttributeValue(null, "testId");
+          if (testId != null) {
+            stepRun.testId = testId;
+          }
+        } else if ("result".equals(name) && stepRun.isTestCase) {
+          TestCaseDetail detail = new TestCaseDetail();
+          detail.setCountAsserts((int) Double.parseDouble(reader.getAttributeValue(null, "assertCount")));
+          detail.setTimeMillis((int) Math.round(Double.parseDouble(reader.getAttributeValue(null, "duration")) * 1000.));
+          stepRun.detail = detail;
+        } else if ("testLog".equals(name) && stepRun.detail != null && isFailure(stepRun.detail.getStatus())) {
+          testLogDepth = elements.size();
+        }
+      } else if ("outcome".equals(name) && "result".equals(parent) && stepRun.detail != null && stepRun.detail.getStatus() == null) {
+        stepRun.detail.setStatus(TestStatus.computeStatus(reader.getAttributeValue(null, "status"),
+            reader.getAttributeValue(null, "category")));
+      }
+    }
 
-      TestStatus executionStatus = TestStatus.computeStatus(status, category);
-      nextPosition(currentTestTags);
-      detail.setStatus(executionStatus);
-      if ((executionStatus == TestStatus.FAILED) || (executionStatus == TestStatus.ERROR)) {
-        detail = getMessages(currentTestTags, detail);
+    /**
+     * The messages are the texts found directly in the contents of a stream, or in the contents of its sections, and the stack
+     * traces the texts of the "StackTrace" markers. As before, the last ones found win.
+     */
+    private void startTestLogElement(XMLStreamReader reader, String name, String parent, TestCaseDetail detail) {
+      if ("marker".equals(name) && "StackTrace".equals(reader.getAttributeValue(null, "class"))) {
+        stackTraceDepth = elements.size();
+      } else if ("text".equals(name) && "contents".equals(parent)) {
+        int relativeDepth = elements.size() - testLogDepth;
+        if (stackTraceDepth >= 0) {
+          text = new StringBuilder();
+        } else if (relativeDepth == 5 || relativeDepth == 7 && "section".equals(elements.get(elements.size() - 3))) {
+          // streams/stream/body/contents/text or streams/stream/body/contents/section/contents/text
+          text = new StringBuilder();
+        }
       }
-      return detail;
     }
-    return null;
-  }
 
-  private TestCaseDetail getMessages(SMInputCursor currentTestTags, TestCaseDetail detail) {
-    if ("testLog".equals(findElementName(currentTestTags))) {
-      SMInputCursor currentTestLogStreamsTags = descendantElements(currentTestTags);
-      SMEvent streamsTag = nextPosition(currentTestLogStreamsTags);
-      if (null != streamsTag) {
-        LOG.debug("----streams Tag found : {}", findElementName(currentTestLogStreamsTags));
-        if (streamsTag.getEventCode() == SMEvent.START_ELEMENT.getEventCode()) {
-          LOG.debug("----Cursor is at <streams> Tag ");
-          SMInputCursor currentTestLogStreamTags = descendantElements(currentTestLogStreamsTags);
-          parseStreams(detail, currentTestLogStreamTags);
+    void characters(XMLStreamReader reader) {
+      if (text != null) {
+        int length = Math.min(reader.getTextLength(), detailsMaxLength - text.length());
+        if (length > 0) {
+          text.append(reader.getTextCharacters(), reader.getTextStart(), length);
         }
       }
     }
-    return detail;
-  }
 
-  private void parseStreams(TestCaseDetail detail, SMInputCursor currentTestLogStreamTags) {
-    try {
-      while (null != nextPosition(currentTestLogStreamTags)) {
-        LOG.debug("----Cursor is at <stream> Tag ");
-        String streamName = findAttributeValue(currentTestLogStreamTags, "name");
-        LOG.debug("----stream name : {}", streamName);
-        SMInputCursor currentTestLogStreamSectionsTags = currentTestLogStreamTags.descendantElementCursor().advance()
-            .descendantElementCursor().advance().descendantElementCursor();
-        while (null != nextPosition(currentTestLogStreamSectionsTags)) {
-          SMInputCursor sectionContentsChild = currentTestLogStreamSectionsTags;
-          if ("section".equals(findElementName(currentTestLogStreamSectionsTags))) {
-            String sectionName = findAttributeValue(currentTestLogStreamSectionsTags, "name");
-            LOG.debug("----section name : {}", sectionName);
-            sectionContentsChild = currentTestLogStreamSectionsTags.descendantElementCursor().advance().descendantElementCursor().advance();
-          }
-          if ("text".equals(findElementName(sectionContentsChild))) {
-            String message = sectionContentsChild.collectDescendantText();
-            LOG.debug("Error Message is : {}", message);
-            detail.setErrorMessage(message);
-          } else if ("marker".equals(findElementName(sectionContentsChild)) && isAStartElement(sectionContentsChild)) {
-            LOG.debug("-------Marker found ! ");
-            if ("StackTrace".equals(findAttributeValue(sectionContentsChild, "class"))) {
-              SMInputCursor sectionMarkerTextContent = sectionContentsChild.descendantElementCursor().advance().descendantElementCursor()
-                  .advance();
-              String stackTrace = sectionMarkerTextContent.collectDescendantText();
-              LOG.debug("StackTrace is : {}", stackTrace);
-              detail.setStackTrace(stackTrace);
-            }
-          }
+    void endElement() {
+      int depth = elements.size();
+      String name = elements.remove(depth - 1);
+      if (text != null && "text".equals(name)) {
+        TestCaseDetail detail = stepRuns.get(stepRuns.size() - 1).detail;
+        if (stackTraceDepth >= 0) {
+          detail.setStackTrace(text.toString());
+        } else {
+          detail.setErrorMessage(text.toString());
+        }
+        text = null;
+      } else if (depth == stackTraceDepth) {
+        stackTraceDepth = -1;
+      } else if (depth == testLogDepth) {
+        testLogDepth = -1;
+      } else if ("testModel".equals(name)) {
+        inTestModel = false;
+      } else if ("testPackageRun".equals(name)) {
+        inTestPackageRun = false;
+      } else if (inTestModel && "test".equals(name)) {
+        endTest(tests.remove(tests.size() - 1));
+      } else if (inTestPackageRun && "testStepRun".equals(name)) {
+        StepRun stepRun = stepRuns.remove(stepRuns.size() - 1);
+        if (stepRun.isTestCase && stepRun.detail != null) {
+          addResult(stepRun.testId, stepRun.detail);
         }
       }
-    } catch (XMLStreamException e) {
-      LOG.error(GALLIO_REPORT_PARSING_ERROR, e);
     }
-  }
 
-  private Set<UnitTestReport> createUnitTestsReport(Map<String, TestDescription> testsDescriptionByTestIds) {
-
-    Set<UnitTestReport> result = new HashSet<UnitTestReport>();
-    Set<String> testIds = testCaseDetailsByTestIds.keySet();
-    // We associate the descriptions with the test details
-    List<String> testsToRemove = new ArrayList<String>();
-    for (String testId : testIds) {
-      TestDescription description = testsDescriptionByTestIds.get(testId);
-      TestCaseDetail testCaseDetail = testCaseDetailsByTestIds.get(testId);
-      if (description == null) {
-        LOG.debug(
-            "Test {} is not considered as a testCase in your xml, there should not be any testStep associated, please check your gallio report. Skipping result",
-            testId);
-        testsToRemove.add(testId);
-      } else {
-        testCaseDetail.merge(description);
-        testCaseDetailsByTestIds.put(testId, testCaseDetail);
+    private void endTest(TestNode test) {
+      if (test.isTestCase) {
+        TestDescription description = new TestDescription();
+        description.setMethodName(test.name);
+        description.setSourceFile(test.sourceFile);
+        description.setAssemblyName(test.assemblyName);
+        description.setClassName(test.className);
+        descriptionsByTestId.put(test.id, description);
       }
     }
 
-    LOG.debug("Tests to be removed {}", testsToRemove.size());
-    for (String testToRemove : testsToRemove) {
-      testCaseDetailsByTestIds.remove(testToRemove);
+    /**
+     * Aggregates the result of a test case into the report of its source file. When a test has been run several times, only its
+     * last result is kept.
+     */
+    private void addResult(String testId, TestCaseDetail detail) {
+      TestDescription description = descriptionsByTestId.get(testId);
+      if (description == null || description.getSourceFile() == null) {
+        LOG.debug("Test {} is not considered as a testCase with a source file in your xml, please check your gallio report. "
+          + "Skipping result", testId);
+        return;
+      }
+      detail.merge(description);
+      String sourceKey = detail.createSourceKey();
+      UnitTestReport unitTestReport = reportsBySourceKey.get(sourceKey);
+      if (unitTestReport == null) {
+        unitTestReport = new UnitTestReport();
+        unitTestReport.setAssemblyName(detail.getAssemblyName());
+        unitTestReport.setSourceFile(detail.getSourceFile());
+        reportsBySourceKey.put(sourceKey, unitTestReport);
+      }
+      TestCaseDetail previousDetail = detailsByTestId.put(testId, detail);
+      if (previousDetail != null) {
+        unitTestReport.removeDetail(previousDetail);
+      }
+      unitTestReport.addDetail(detail);
     }
 
-    Collection<TestCaseDetail> testCases = testCaseDetailsByTestIds.values();
-    Multimap<String, TestCaseDetail> testCaseDetailsBySrcKey = ArrayListMultimap.create();
-    for (TestCaseDetail testCaseDetail : testCases) {
-      String sourceKey = testCaseDetail.createSourceKey();
-      testCaseDetailsBySrcKey.put(sourceKey, testCaseDetail);
+    Set<UnitTestReport> getReports() {
+      return Sets.newHashSet(reportsBySourceKey.values());
     }
+  }
 
-    Map<String, UnitTestReport> unitTestsReports = new HashMap<String, UnitTestReport>();
-    LOG.debug("testCaseDetails size : {}", String.valueOf(testCaseDetailsByTestIds.size()));
-
-    Set<String> pathKeys = testCaseDetailsBySrcKey.keySet();
-    LOG.debug("There are {} different pathKeys", String.valueOf(pathKeys.size()));
-    for (String pathKey : pathKeys) {
-      // If the Key already exists in the map, we add the details
-      if (unitTestsReports.containsKey(pathKey)) {
-        UnitTestReport unitTest = unitTestsReports.get(pathKey);
-        for (TestCaseDetail testDetail : testCaseDetailsBySrcKey.get(pathKey)) {
-          LOG.debug("Adding testDetail {} to the unitTestReport", testDetail.getName());
-          unitTest.addDetail(testDetail);
-        }
-        unitTestsReports.put(pathKey, unitTest);
-      } else {
-        // Else we create a new report
-        UnitTestReport unitTest = new UnitTestReport();
-        unitTest.setAssemblyName(testCaseDetailsBySrcKey.get(pathKey).iterator().next().getAssemblyName());
-        unitTest.setSourceFile(testCaseDetailsBySrcKey.get(pathKey).iterator().next().getSourceFile());
-        LOG.debug("Create new unitTest for path : {}", unitTest.getSourceFile().getPath());
-        for (TestCaseDetail testDetail : testCaseDetailsBySrcKey.get(pathKey)) {
-          LOG.debug("+ and add details : {}", testDetail.getName());
-          unitTest.addDetail(testDetail);
-        }
-        unitTestsReports.put(pathKey, unitTest);
+  private static boolean isFailure(TestStatus status) {
+    return status == TestStatus.FAILED || status == TestStatus.ERROR;
+  }
+
+  /**
+   * A test of the test model, inheriting the source file, the assembly and the fixture of its parent until its own are read.
+   */
+  private static class TestNode {
+
+    private String id;
+    private String name;
+    private boolean isTestCase;
+    private File sourceFile;
+    private String assemblyName;
+    private String className;
+
+    TestNode(TestNode parent) {
+      if (parent != null) {
+        this.sourceFile = parent.sourceFile;
+        this.assemblyName = parent.assemblyName;
+        this.className = parent.className;
       }
     }
-    result.addAll(unitTestsReports.values());
+  }
+
+  /**
+   * A test step run, inheriting the test id of its parent when it does not define one.
+   */
+  private static class StepRun {
 
-    LOG.debug("The result Set contains " + result.size() + " report(s)");
+    private String testId;
+    private boolean isTestCase;
+    private TestCaseDetail detail;
 
-    return result;
+    StepRun(StepRun parent) {
+      this.testId = parent == null ? null : parent.testId;
+    }
   }
+
 }
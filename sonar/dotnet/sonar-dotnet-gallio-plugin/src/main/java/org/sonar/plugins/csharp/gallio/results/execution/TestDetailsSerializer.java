@@ -0,0 +1,120 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.execution;
+
+import com.google.common.collect.Maps;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the test details of a file in the XML format of the {@link org.sonar.api.measures.CoreMetrics#TEST_DATA} measure, with a
+ * bounded size:
+ * <ul>
+ * <li>each stack trace is truncated to a maximum length,</li>
+ * <li>a stack trace already written for another test of the file is replaced by a reference to that test,</li>
+ * <li>the messages and stack traces are truncated to what remains of the maximum length once the tests before them, passing ones
+ * included, have been written.</li>
+ * </ul>
+ * The elements of the tests themselves are always written, so that no test is lost: only their messages and stack traces are bounded.
+ * The same buffer is reused from one file to the other, so an instance must not be shared between threads.
+ */
+public class TestDetailsSerializer {
+
+  private static final String TRUNCATED = "...";
+
+  private final int maxLength;
+  private final int stackTraceMaxLength;
+  private final StringBuilder buffer = new StringBuilder(256);
+  private final Map<String, String> testNamesByStackTrace = Maps.newHashMap();
+
+  /**
+   * @param maxLength
+   *          the maximum length of the details of a file, 0 or less for no limit
+   * @param stackTraceMaxLength
+   *          the maximum length of each stack trace, 0 or less for no limit
+   */
+  public TestDetailsSerializer(int maxLength, int stackTraceMaxLength) {
+    this.maxLength = maxLength > 0 ? maxLength : Integer.MAX_VALUE;
+    this.stackTraceMaxLength = stackTraceMaxLength > 0 ? stackTraceMaxLength : Integer.MAX_VALUE;
+  }
+
+  public String serialize(Collection<TestCaseDetail> details) {
+    buffer.setLength(0);
+    testNamesByStackTrace.clear();
+    buffer.append("<tests-details>");
+    for (TestCaseDetail detail : details) {
+      buffer.append("<testcase status=\"").append(detail.getStatus().getSonarStatus()).append("\" time=\"")
+          .append(detail.getTimeMillis()).append("\" name=\"").append(detail.getName()).append("\"");
+      boolean isError = (detail.getStatus() == TestStatus.ERROR);
+      if (isError || (detail.getStatus() == TestStatus.FAILED)) {
+        buffer.append(">").append(isError ? "<error message=\"" : "<failure message=\"");
+        appendFailure(detail);
+        buffer.append("]]>").append(isError ? "</error>" : "</failure>").append("</testcase>");
+      } else {
+        buffer.append("/>");
+      }
+    }
+    buffer.append("</tests-details>");
+    String result = buffer.toString();
+    testNamesByStackTrace.clear();
+    return result;
+  }
+
+  private void appendFailure(TestCaseDetail detail) {
+    appendTruncated(String.valueOf(detail.getFormatedErrorMessage()), Integer.MAX_VALUE);
+    buffer.append("\"><![CDATA[");
+    String stackTrace = detail.getFormatedStackTrace();
+    String sameTestName = stackTrace == null ? null : testNamesByStackTrace.get(stackTrace);
+    if (sameTestName != null) {
+      appendTruncated("Same stack trace as " + sameTestName, Integer.MAX_VALUE);
+    } else if (appendTruncated(String.valueOf(stackTrace), stackTraceMaxLength) > 0 && stackTrace != null) {
+      testNamesByStackTrace.put(stackTrace, detail.getName());
+    }
+  }
+
+  /**
+   * Appends the given XML escaped text, truncated to the given length and to what remains of the maximum length, without cutting
+   * an entity.
+   * 
+   * @return the number of characters of the text that have been appended
+   */
+  private int appendTruncated(String text, int length) {
+    int available = maxLength - buffer.length();
+    int end = Math.min(length, available);
+    if (text.length() <= end) {
+      buffer.append(text);
+      return text.length();
+    }
+    if (available < TRUNCATED.length()) {
+      return 0;
+    }
+    end = Math.min(end, available - TRUNCATED.length());
+    int entityStart = text.lastIndexOf('&', end - 1);
+    if (entityStart >= 0 && text.indexOf(';', entityStart) >= end) {
+      end = entityStart;
+    }
+    buffer.append(text, 0, end).append(TRUNCATED);
+    return end;
+  }
+
+}
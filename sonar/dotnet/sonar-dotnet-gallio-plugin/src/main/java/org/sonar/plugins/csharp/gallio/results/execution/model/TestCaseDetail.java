@@ -42,6 +42,7 @@ public class TestCaseDetail {
   private int countAsserts;
   private File sourceFile;
   private String assemblyName;
+  private String className;
 
   /**
    * Constructs an empty @link{TestCaseDetail}.
@@ -145,6 +146,19 @@ public class TestCaseDetail {
     this.sourceFile = testFile;
   }
 
+  /**
+   * Returns the full name of the fixture of the test, if known.
+   * 
+   * @return The className to return.
+   */
+  public String getClassName() {
+    return className;
+  }
+
+  public void setClassName(String className) {
+    this.className = className;
+  }
+
   public String createSourceKey() {
     String path = this.sourceFile.getPath();
     return ("[" + this.assemblyName + "]" + path);
@@ -153,6 +167,7 @@ public class TestCaseDetail {
   public void merge(TestDescription description) {
     this.sourceFile = description.getSourceFile();
     this.name = description.getMethodName();
+    this.className = description.getClassName();
     if (description.getAssemblyName() == null) {
       this.assemblyName = "AssemblyNotFound";
     } else {
@@ -53,6 +53,22 @@ public class UnitTestReport {
     details = new ArrayList<TestCaseDetail>();
   }
 
+  /**
+   * Creates a copy of the given report, that can be merged without altering the original one.
+   */
+  public UnitTestReport(UnitTestReport report) {
+    this();
+    this.assemblyName = report.assemblyName;
+    this.sourceFile = report.sourceFile;
+    this.errors = report.errors;
+    this.skipped = report.skipped;
+    this.tests = report.tests;
+    this.timeMS = report.timeMS;
+    this.failures = report.failures;
+    this.asserts = report.asserts;
+    this.details.addAll(report.details);
+  }
+
   public int getErrors() {
     return errors;
   }
@@ -99,18 +115,31 @@ public class UnitTestReport {
 
   public void addDetail(TestCaseDetail detail) {
     this.details.add(detail);
-    tests++;
+    count(detail, 1);
+  }
+
+  /**
+   * Removes a detail previously added, for instance when a test has been run several times and only its last run is kept.
+   */
+  public void removeDetail(TestCaseDetail detail) {
+    if (this.details.remove(detail)) {
+      count(detail, -1);
+    }
+  }
+
+  private void count(TestCaseDetail detail, int increment) {
+    tests += increment;
     TestStatus status = detail.getStatus();
     switch (status) {
       case FAILED:
-        failures++;
+        failures += increment;
         break;
       case ERROR:
-        errors++;
+        errors += increment;
         break;
       case SKIPPED:
       case INCONCLUSIVE:
-        skipped++;
+        skipped += increment;
         break;
       case SUCCESS:
         break;
@@ -119,8 +148,8 @@ public class UnitTestReport {
     }
 
     // We complete the other indicators
-    asserts += detail.getCountAsserts();
-    timeMS += detail.getTimeMillis();
+    asserts += increment * detail.getCountAsserts();
+    timeMS += increment * detail.getTimeMillis();
   }
 
   public int getAsserts() {
@@ -54,6 +54,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -134,7 +135,7 @@ public class CoverageReportSensorTest {
   public void testAnalyseNotIndexedFile() {
     setUpEnv();
 
-    FileCoverage fileCoverage = mock(FileCoverage.class);
+    FileCoverage fileCoverage = mockFileCoverage();
     sourceFiles.add(fileCoverage);
 
     PowerMockito.mockStatic(org.sonar.api.resources.File.class);
@@ -154,7 +155,7 @@ public class CoverageReportSensorTest {
   public void testAnalyseIndexedFile() {
     setUpEnv();
 
-    FileCoverage fileCoverage = mock(FileCoverage.class);
+    FileCoverage fileCoverage = mockFileCoverage();
     sourceFiles.add(fileCoverage);
 
     when(fileCoverage.getCoverage()).thenReturn(0.42);
@@ -177,11 +178,11 @@ public class CoverageReportSensorTest {
     setUpEnv();
     conf.setProperty(GallioConstants.IT_MODE_KEY, "active");
 
-    FileCoverage fileCoverage = mock(FileCoverage.class);
+    FileCoverage fileCoverage = mockFileCoverage();
     sourceFiles.add(fileCoverage);
     when(fileCoverage.getCoverage()).thenReturn(0.42);
 
-    FileCoverage itFileCoverage = mock(FileCoverage.class);
+    FileCoverage itFileCoverage = mockFileCoverage();
     itSourceFiles.add(itFileCoverage);
     when(itFileCoverage.getCoverage()).thenReturn(0.36);
 
@@ -220,7 +221,7 @@ public class CoverageReportSensorTest {
 
     File fakeSourceFile = new File("dummy.cs");
 
-    FileCoverage firstFileCoverage = mock(FileCoverage.class);
+    FileCoverage firstFileCoverage = mockFileCoverage();
     when(firstFileCoverage.getCoverage()).thenReturn(0.15);
     when(firstFileCoverage.getFile()).thenReturn(fakeSourceFile);
     coverageList.add(firstFileCoverage);
@@ -238,6 +239,63 @@ public class CoverageReportSensorTest {
     verify(context, atLeastOnce()).saveMeasure(eq(sonarFile), eq(CoreMetrics.COVERAGE), eq((double) 15));
   }
 
+  @Test
+  public void testAnalysePartialRunShouldReplaceTheBaselineOfTheFilesItCovers() {
+    setUpEnv();
+    File solutionDir = TestUtils.getResource("/Results/coverage/");
+    File baselineReportFile = new File(solutionDir, "coverage-report.xml.baseline");
+    TestImpact testImpact = mock(TestImpact.class);
+    when(testImpact.getBaselineReports(new File(solutionDir, "coverage-report.xml"))).thenReturn(Lists.newArrayList(baselineReportFile));
+    sensor = new CoverageReportSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment, parser, testImpact);
+
+    File coveredFile = new File("covered.cs");
+    File notCoveredFile = new File("notCovered.cs");
+    File changedFile = new File("changed.cs");
+    File notRunFile = new File("notRun.cs");
+    when(testImpact.isChanged(changedFile)).thenReturn(true);
+    sourceFiles.add(mockFileCoverage(coveredFile, 5, 0.5));
+    sourceFiles.add(mockFileCoverage(notCoveredFile, 0, 0.0));
+    List<FileCoverage> baselineFiles = Lists.newArrayList(mockFileCoverage(coveredFile, 9, 0.9),
+        mockFileCoverage(notCoveredFile, 8, 0.8), mockFileCoverage(changedFile, 7, 0.7), mockFileCoverage(notRunFile, 6, 0.6));
+    when(parser.parse(eq(project), eq(baselineReportFile))).thenReturn(baselineFiles);
+
+    PowerMockito.mockStatic(org.sonar.api.resources.File.class);
+    org.sonar.api.resources.File sonarCoveredFile = mockSonarFile(coveredFile);
+    org.sonar.api.resources.File sonarNotCoveredFile = mockSonarFile(notCoveredFile);
+    org.sonar.api.resources.File sonarChangedFile = mockSonarFile(changedFile);
+    org.sonar.api.resources.File sonarNotRunFile = mockSonarFile(notRunFile);
+
+    SensorContext context = mock(SensorContext.class);
+    when(context.isIndexed(any(org.sonar.api.resources.File.class), anyBoolean())).thenReturn(true);
+
+    sensor.analyse(project, context);
+
+    verify(context).saveMeasure(eq(sonarCoveredFile), eq(CoreMetrics.COVERAGE), eq((double) 50));
+    verify(context).saveMeasure(eq(sonarNotCoveredFile), eq(CoreMetrics.COVERAGE), eq((double) 80));
+    verify(context, never()).saveMeasure(eq(sonarChangedFile), eq(CoreMetrics.COVERAGE), any(Double.class));
+    verify(context).saveMeasure(eq(sonarNotRunFile), eq(CoreMetrics.COVERAGE), eq((double) 60));
+  }
+
+  private FileCoverage mockFileCoverage(File file, int coveredLines, double coverage) {
+    FileCoverage fileCoverage = mockFileCoverage();
+    when(fileCoverage.getFile()).thenReturn(file);
+    when(fileCoverage.getCoveredLines()).thenReturn(coveredLines);
+    when(fileCoverage.getCoverage()).thenReturn(coverage);
+    return fileCoverage;
+  }
+
+  private FileCoverage mockFileCoverage() {
+    FileCoverage fileCoverage = mock(FileCoverage.class);
+    when(fileCoverage.getLineNumbers()).thenReturn(new int[0]);
+    return fileCoverage;
+  }
+
+  private org.sonar.api.resources.File mockSonarFile(File file) {
+    org.sonar.api.resources.File sonarFile = mock(org.sonar.api.resources.File.class);
+    when(org.sonar.api.resources.File.fromIOFile(eq(file), eq(project))).thenReturn(sonarFile);
+    return sonarFile;
+  }
+
   @Test
   public void testReuseReportWithDefaultLocation() {
     parser = mock(CoverageResultParser.class); // create the parser before the sensor
@@ -259,7 +317,7 @@ public class CoverageReportSensorTest {
 
     File fakeSourceFile = new File("dummy.cs");
 
-    FileCoverage firstFileCoverage = mock(FileCoverage.class);
+    FileCoverage firstFileCoverage = mockFileCoverage();
     when(firstFileCoverage.getCoverage()).thenReturn(0.15);
     when(firstFileCoverage.getFile()).thenReturn(fakeSourceFile);
     coverageList.add(firstFileCoverage);
@@ -299,12 +357,12 @@ public class CoverageReportSensorTest {
     File fakeSourceFile = new File("dummy.cs");
     File fakeSourceFile2 = new File("dummy2.cs");
 
-    FileCoverage firstFileCoverage = mock(FileCoverage.class);
+    FileCoverage firstFileCoverage = mockFileCoverage();
     when(firstFileCoverage.getCoverage()).thenReturn(0.15);
     when(firstFileCoverage.getFile()).thenReturn(fakeSourceFile);
     firstCoverageList.add(firstFileCoverage);
 
-    FileCoverage secondFileCoverage = mock(FileCoverage.class);
+    FileCoverage secondFileCoverage = mockFileCoverage();
     when(secondFileCoverage.getCoverage()).thenReturn(0.36);
     when(secondFileCoverage.getFile()).thenReturn(fakeSourceFile2);
     secondCoverageList.add(secondFileCoverage);
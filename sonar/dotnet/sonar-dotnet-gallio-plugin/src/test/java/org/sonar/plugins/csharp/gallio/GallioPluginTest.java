@@ -0,0 +1,61 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import org.junit.Test;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.Extension;
+import org.sonar.api.batch.InstantiationStrategy;
+
+import java.lang.reflect.Constructor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GallioPluginTest {
+
+  @Test
+  public void shouldDeclareExtensions() {
+    assertEquals(12, new GallioPlugin().getExtensions().size());
+  }
+
+  /**
+   * A component instantiated once per batch can not depend on a component instantiated once per project.
+   */
+  @Test
+  public void batchComponentsShouldOnlyDependOnBatchComponents() {
+    for (Class<? extends Extension> extension : new GallioPlugin().getExtensions()) {
+      if (isPerBatch(extension)) {
+        for (Constructor<?> constructor : extension.getConstructors()) {
+          for (Class<?> parameterType : constructor.getParameterTypes()) {
+            assertTrue(extension.getSimpleName() + " depends on " + parameterType.getSimpleName(),
+                !BatchExtension.class.isAssignableFrom(parameterType) || isPerBatch(parameterType));
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isPerBatch(Class<?> type) {
+    InstantiationStrategy strategy = type.getAnnotation(InstantiationStrategy.class);
+    return strategy != null && InstantiationStrategy.PER_BATCH.equals(strategy.value());
+  }
+
+}
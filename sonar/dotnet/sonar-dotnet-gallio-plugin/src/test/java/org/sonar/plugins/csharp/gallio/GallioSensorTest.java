@@ -24,6 +24,8 @@ import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,8 +37,11 @@ import org.sonar.api.batch.SensorContext;
 import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.SonarException;
 import org.sonar.dotnet.tools.gallio.GallioCommandBuilder;
+import org.sonar.dotnet.tools.gallio.GallioException;
 import org.sonar.dotnet.tools.gallio.GallioRunner;
+import org.sonar.dotnet.tools.gallio.GallioRunnerConstants;
 import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.plugins.dotnet.api.DotNetConstants;
 import org.sonar.plugins.dotnet.core.DotNetCorePlugin;
@@ -44,6 +49,7 @@ import org.sonar.test.TestUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -51,6 +57,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -213,6 +220,173 @@ public class GallioSensorTest {
     }
   }
 
+  @Test
+  public void testAnalyseSafeModeInParallel() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    microsoftWindowsEnvironment.setWorkingDirectory("coverage");
+    File solutionDir = TestUtils.getResource("/Results/");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    GallioRunner runner = mock(GallioRunner.class);
+    GallioCommandBuilder builder = mock(GallioCommandBuilder.class);
+    when(runner.createCommandBuilder(solution)).thenReturn(builder);
+
+    PowerMockito.mockStatic(GallioRunner.class);
+    when(GallioRunner.create(anyString(), anyString(), anyBoolean())).thenReturn(runner);
+
+    conf.setProperty(GallioConstants.SAFE_MODE_KEY, "true");
+    conf.setProperty(GallioConstants.SAFE_MODE_PARALLELISM_KEY, "4");
+    conf.setProperty(DotNetConstants.TEST_ASSEMBLIES_KEY, "$(SolutionDir)/../**/Fake*.assembly");
+
+    GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
+    sensor.analyse(project, context);
+
+    // Three executions, each one with its own report
+    verify(runner, times(3)).execute(builder, GallioConstants.TIMEOUT_MINUTES_DEFVALUE);
+    ArgumentCaptor<File> reportCaptor = ArgumentCaptor.forClass(File.class);
+    verify(builder, times(3)).setReportFile(reportCaptor.capture());
+    assertEquals(3, new HashSet<File>(reportCaptor.getAllValues()).size());
+  }
+
+  @Test
+  public void testAnalyseSafeModeInParallelShouldBoundTheNumberOfProcesses() throws Exception {
+    // The stub of Gallio is a shell script, that records how many stubs are running when it starts
+    Assume.assumeTrue(File.separatorChar == '/');
+    File gallioDir = new File("target/gallio-stub");
+    FileUtils.deleteQuietly(gallioDir);
+    File running = new File(gallioDir, "running");
+    running.mkdirs();
+    File counts = new File(gallioDir, "counts");
+    File gallio = new File(gallioDir, "bin/Gallio.Echo.exe");
+    FileUtils.writeStringToFile(gallio, "#!/bin/sh\n"
+      + "touch " + running.getAbsolutePath() + "/$$\n"
+      + "ls " + running.getAbsolutePath() + " | wc -l >> " + counts.getAbsolutePath() + "\n"
+      + "sleep 1\n"
+      + "rm " + running.getAbsolutePath() + "/$$\n");
+    assertTrue(gallio.setExecutable(true));
+
+    SensorContext context = mock(SensorContext.class);
+    microsoftWindowsEnvironment.setWorkingDirectory("coverage");
+    File solutionDir = TestUtils.getResource("/Results/");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    conf.setProperty(GallioConstants.INSTALL_FOLDER_KEY, gallioDir.getAbsolutePath());
+    conf.setProperty(GallioConstants.COVERAGE_TOOL_KEY, GallioRunnerConstants.COVERAGE_TOOL_NONE_KEY);
+    conf.setProperty(GallioConstants.SAFE_MODE_KEY, "true");
+    conf.setProperty(GallioConstants.SAFE_MODE_PARALLELISM_KEY, "2");
+    conf.setProperty(DotNetConstants.TEST_ASSEMBLIES_KEY, "$(SolutionDir)/../**/Fake*.assembly");
+
+    GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
+    sensor.analyse(project, context);
+
+    // Three processes, at most two of them at the same time
+    List<String> runningCounts = FileUtils.readLines(counts);
+    assertEquals(3, runningCounts.size());
+    int maxRunning = 0;
+    for (String runningCount : runningCounts) {
+      maxRunning = Math.max(maxRunning, Integer.parseInt(runningCount.trim()));
+    }
+    assertEquals(2, maxRunning);
+  }
+
+  @Test(expected = SonarException.class)
+  public void testAnalyseSafeModeInParallelFailure() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    microsoftWindowsEnvironment.setWorkingDirectory("coverage");
+    File solutionDir = TestUtils.getResource("/Results/");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    GallioRunner runner = mock(GallioRunner.class);
+    GallioCommandBuilder builder = mock(GallioCommandBuilder.class);
+    when(runner.createCommandBuilder(solution)).thenReturn(builder);
+    doThrow(new GallioException(2)).when(runner).execute(builder, GallioConstants.TIMEOUT_MINUTES_DEFVALUE);
+
+    PowerMockito.mockStatic(GallioRunner.class);
+    when(GallioRunner.create(anyString(), anyString(), anyBoolean())).thenReturn(runner);
+
+    conf.setProperty(GallioConstants.SAFE_MODE_KEY, "true");
+    conf.setProperty(GallioConstants.SAFE_MODE_PARALLELISM_KEY, "2");
+
+    GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
+    sensor.analyse(project, context);
+  }
+
+  @Test
+  public void testAnalyseShardsWithoutPreviousReport() throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    microsoftWindowsEnvironment.setWorkingDirectory("coverage");
+    File solutionDir = TestUtils.getResource("/Results/");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    GallioRunner runner = mock(GallioRunner.class);
+    GallioCommandBuilder builder = mock(GallioCommandBuilder.class);
+    when(runner.createCommandBuilder(solution)).thenReturn(builder);
+
+    PowerMockito.mockStatic(GallioRunner.class);
+    when(GallioRunner.create(anyString(), anyString(), anyBoolean())).thenReturn(runner);
+
+    conf.setProperty(GallioConstants.SHARDS_KEY, "3");
+
+    GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
+    sensor.analyse(project, context);
+
+    // No known duration: a single shard with all the assemblies
+    ArgumentCaptor<File> reportCaptor = ArgumentCaptor.forClass(File.class);
+    verify(builder).setReportFile(reportCaptor.capture());
+    assertEquals("shard-1." + GallioConstants.GALLIO_REPORT_XML, reportCaptor.getValue().getName());
+    ArgumentCaptor<List> testAssembliesCaptor = ArgumentCaptor.forClass(List.class);
+    verify(builder).setTestAssemblies(testAssembliesCaptor.capture());
+    assertEquals(2, testAssembliesCaptor.getValue().size());
+  }
+
+  @Test
+  public void testAnalyseShardsShouldDeleteTheReportsOfSafeMode() throws Exception {
+    File solutionDir = new File("target/gallio-shards");
+    FileUtils.deleteQuietly(solutionDir);
+    File safeModeReport = new File(solutionDir, "coverage/Fake2.assembly." + GallioConstants.GALLIO_REPORT_XML);
+    FileUtils.touch(safeModeReport);
+    File otherReport = new File(solutionDir, "coverage/Fake2.assembly." + GallioConstants.IT_GALLIO_REPORT_XML);
+    FileUtils.touch(otherReport);
+
+    analyseWithMockedRunner(solutionDir, GallioConstants.SHARDS_KEY, "3");
+
+    assertFalse(safeModeReport.exists());
+    assertTrue(otherReport.exists());
+  }
+
+  @Test
+  public void testAnalyseSafeModeShouldDeleteTheReportsOfShards() throws Exception {
+    File solutionDir = new File("target/gallio-safe-mode");
+    FileUtils.deleteQuietly(solutionDir);
+    File shardReport = new File(solutionDir, "coverage/shard-2." + GallioConstants.GALLIO_REPORT_XML);
+    FileUtils.touch(shardReport);
+    File shardCoverageReport = new File(solutionDir, "coverage/shard-2." + GallioConstants.GALLIO_COVERAGE_REPORT_XML);
+    FileUtils.touch(shardCoverageReport);
+
+    analyseWithMockedRunner(solutionDir, GallioConstants.SAFE_MODE_KEY, "true");
+
+    assertFalse(shardReport.exists());
+    assertFalse(shardCoverageReport.exists());
+  }
+
+  private void analyseWithMockedRunner(File solutionDir, String key, String value) throws Exception {
+    SensorContext context = mock(SensorContext.class);
+    microsoftWindowsEnvironment.setWorkingDirectory("coverage");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    GallioRunner runner = mock(GallioRunner.class);
+    GallioCommandBuilder builder = mock(GallioCommandBuilder.class);
+    when(runner.createCommandBuilder(solution)).thenReturn(builder);
+
+    PowerMockito.mockStatic(GallioRunner.class);
+    when(GallioRunner.create(anyString(), anyString(), anyBoolean())).thenReturn(runner);
+
+    conf.setProperty(key, value);
+
+    GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
+    sensor.analyse(project, context);
+  }
+
   @Test
   public void testShouldExecuteOnProject() throws Exception {
     GallioSensor sensor = new GallioSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment);
@@ -0,0 +1,86 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
+import org.sonar.test.TestUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestImpactMapTest {
+
+  @Test
+  public void shouldReadTrackedMethods() {
+    TestImpactMap map = new TestImpactMap();
+    int trackedMethods = map.addOpenCoverReport(TestUtils.getResource("/Results/coverage/Coverage.OpenCover.TrackedMethods.xml"));
+
+    assertEquals(2, trackedMethods);
+    assertEquals(Sets.newHashSet("Example.Core.Tests.TestMoney", "Example.Core.Tests.TestMoneyBag+Nested"), map.getFixtures());
+    assertEquals(Sets.newHashSet("Example.Core.Tests.TestMoney", "Example.Core.Tests.TestMoneyBag+Nested"),
+        map.getImpactedFixtures(Collections.singletonList("Example.Core/Money.cs")));
+    assertEquals(Sets.newHashSet("Example.Core.Tests.TestMoneyBag+Nested"),
+        map.getImpactedFixtures(Collections.singletonList("C:\\Work\\Example\\Example.Core\\MoneyBag.cs")));
+    assertTrue(map.getImpactedFixtures(Arrays.asList("Example.Core/Other.cs", "Bag.cs")).isEmpty());
+  }
+
+  @Test
+  public void shouldSelectTheFixturesOfChangedTestFiles() {
+    TestImpactMap map = new TestImpactMap();
+    map.addTestReports(new GallioResultParser().parse(TestUtils.getResource("/Results/execution/gallio-report-multiple.xml")));
+
+    assertEquals(Sets.newHashSet("Example.Core.Tests.TestMoney"),
+        map.getImpactedFixtures(Collections.singletonList("./Example/Example.Core.Tests/TestMoney.cs")));
+  }
+
+  @Test
+  public void shouldMatchChangedFiles() {
+    File file = new File("C:\\Work\\Example\\Example.Core\\MoneyBag.cs");
+
+    assertTrue(TestImpactMap.isChanged(file, Arrays.asList("Example.Core/Money.cs", "./Example.Core/MoneyBag.cs")));
+    assertFalse(TestImpactMap.isChanged(file, Collections.singletonList("Bag.cs")));
+  }
+
+  @Test
+  public void shouldWriteAndReadBack() throws Exception {
+    TestImpactMap map = new TestImpactMap();
+    map.add("Fixture", "C:\\Sources\\A.cs");
+    map.add("Fixture", "C:\\Sources\\B.cs");
+    map.add("Other", "C:\\Sources\\B.cs");
+    File dir = new File("target/test-impact-map");
+    FileUtils.deleteQuietly(dir);
+    dir.mkdirs();
+    File file = new File(dir, "gallio-report.xml.impact");
+    map.write(file);
+
+    TestImpactMap readMap = TestImpactMap.read(file);
+    assertEquals(Sets.newHashSet("Fixture", "Other"), readMap.getFixtures());
+    assertEquals(Sets.newHashSet("Fixture"), readMap.getImpactedFixtures(Collections.singletonList("Sources/A.cs")));
+  }
+
+}
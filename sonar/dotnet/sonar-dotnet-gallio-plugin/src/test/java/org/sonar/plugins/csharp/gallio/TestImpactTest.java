@@ -0,0 +1,108 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
+import org.sonar.test.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestImpactTest {
+
+  private File gallioReport;
+  private File coverageReport;
+  private Settings settings;
+
+  @Before
+  public void setUp() throws IOException {
+    File dir = new File("target/test-impact");
+    FileUtils.deleteQuietly(dir);
+    dir.mkdirs();
+    gallioReport = new File(dir, GallioConstants.GALLIO_REPORT_XML);
+    coverageReport = new File(dir, GallioConstants.GALLIO_COVERAGE_REPORT_XML);
+    FileUtils.copyFile(TestUtils.getResource("/Results/execution/gallio-report-multiple.xml"), gallioReport);
+    FileUtils.copyFile(TestUtils.getResource("/Results/coverage/Coverage.OpenCover.TrackedMethods.xml"), coverageReport);
+
+    settings = new Settings(new PropertyDefinitions(new GallioPlugin()));
+    settings.setProperty(GallioConstants.TEST_IMPACT_KEY, "true");
+  }
+
+  private TestImpact createTestImpact() {
+    return new TestImpact(new DotNetConfiguration(settings));
+  }
+
+  @Test
+  public void shouldRunAllTestsWithoutPreviousFullRun() {
+    settings.setProperty(GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY, "Example.Core/MoneyBag.cs");
+    TestImpact testImpact = createTestImpact();
+
+    assertNull(testImpact.createImpactFilter(gallioReport, coverageReport, null));
+    assertTrue(testImpact.getBaselineReports(gallioReport).isEmpty());
+  }
+
+  @Test
+  public void shouldRunAllTestsWithoutChangedFiles() {
+    createTestImpact().recordFullRun(gallioReport, coverageReport);
+
+    assertNull(createTestImpact().createImpactFilter(gallioReport, coverageReport, null));
+  }
+
+  @Test
+  public void shouldRunOnlyImpactedFixtures() {
+    createTestImpact().recordFullRun(gallioReport, coverageReport);
+
+    settings.setProperty(GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY, "Example.Core/MoneyBag.cs");
+    TestImpact testImpact = createTestImpact();
+    String filter = testImpact.createImpactFilter(gallioReport, coverageReport, "Category:Fast");
+
+    assertEquals("(Category:Fast) and (ExactType:'Example.Core.Tests.TestMoneyBag\\+Nested' or not (ExactType:'Example.Core.Tests.TestMoney'"
+      + " or ExactType:'Example.Core.Tests.TestMoneyBag\\+Nested'))", filter);
+    assertEquals(1, testImpact.getBaselineReports(gallioReport).size());
+    assertEquals(1, testImpact.getBaselineReports(coverageReport).size());
+    assertEquals(GallioConstants.GALLIO_REPORT_XML + ".baseline", testImpact.getBaselineReports(gallioReport).iterator().next().getName());
+  }
+
+  @Test
+  public void shouldRunAllTestsWhenTheFilterIsTooLong() {
+    createTestImpact().recordFullRun(gallioReport, coverageReport);
+    TestImpactMap map = new TestImpactMap();
+    for (int i = 0; i < 500; i++) {
+      map.add("MyCompany.MyProduct.Tests.Fixture" + i, "mycompany/myproduct/tests/fixture" + i + ".cs");
+    }
+    map.write(new File(gallioReport.getParentFile(), gallioReport.getName() + ".impact"));
+
+    settings.setProperty(GallioConstants.TEST_IMPACT_CHANGED_FILES_KEY, "MyCompany/MyProduct/Tests/Fixture1.cs");
+    TestImpact testImpact = createTestImpact();
+
+    assertNull(testImpact.createImpactFilter(gallioReport, coverageReport, null));
+    assertTrue(testImpact.getBaselineReports(gallioReport).isEmpty());
+  }
+
+}
@@ -36,6 +36,7 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultIndex;
 import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
@@ -380,6 +381,53 @@ public class TestReportSensorTest {
     verifyNoMoreInteractions(context);
   }
 
+  @Test
+  public void testAnalysePartialRunShouldKeepTheBaselineOfTheFixturesNotRunAgain() {
+    File solutionDir = TestUtils.getResource("/Results/execution/");
+    File defaultReportFile = new File(solutionDir, "gallio-report.xml");
+    File baselineReportFile = new File(solutionDir, "gallio-report.xml.baseline");
+    TestImpact testImpact = mock(TestImpact.class);
+    when(testImpact.getBaselineReports(defaultReportFile)).thenReturn(Collections.singletonList(baselineReportFile));
+    TestReportSensor sensor = new TestReportSensor(new DotNetConfiguration(conf), microsoftWindowsEnvironment, parser,
+        new GallioResultIndex(microsoftWindowsEnvironment), testImpact);
+
+    microsoftWindowsEnvironment.setTestExecutionDone();
+    microsoftWindowsEnvironment.setWorkingDirectory("");
+    when(solution.getSolutionDir()).thenReturn(solutionDir);
+
+    // FakeTest.cs defines two fixtures, and only the first one is run again
+    UnitTestReport testReport = buildFixtureTestReport("FakeTest.First", 10);
+    when(parser.parse(eq(defaultReportFile))).thenReturn(Collections.singleton(testReport));
+    UnitTestReport baselineReport = buildFixtureTestReport("FakeTest.First", 100);
+    baselineReport.merge(buildFixtureTestReport("FakeTest.First", 100));
+    baselineReport.merge(buildFixtureTestReport("FakeTest.Second", 1000));
+    when(parser.parse(eq(baselineReportFile))).thenReturn(Collections.singleton(baselineReport));
+
+    SensorContext context = mock(SensorContext.class);
+
+    PowerMockito.mockStatic(org.sonar.api.resources.File.class);
+    org.sonar.api.resources.File sonarFile = mock(org.sonar.api.resources.File.class);
+
+    when(org.sonar.api.resources.File.fromIOFile(eq(fakeTestSourceFile), anyList())).thenReturn(sonarFile);
+
+    sensor.analyse(project, context);
+
+    verify(context).saveMeasure(eq(sonarFile), eq(CoreMetrics.TESTS), eq((double) 2));
+    verify(context).saveMeasure(eq(sonarFile), eq(CoreMetrics.TEST_EXECUTION_TIME), eq((double) 1010));
+  }
+
+  private UnitTestReport buildFixtureTestReport(String fixture, int timeMillis) {
+    UnitTestReport testReport = new UnitTestReport();
+    testReport.setAssemblyName("MyAssembly");
+    testReport.setSourceFile(fakeTestSourceFile);
+    TestCaseDetail detail = new TestCaseDetail();
+    detail.setClassName(fixture);
+    detail.setTimeMillis(timeMillis);
+    detail.setStatus(TestStatus.SUCCESS);
+    testReport.addDetail(detail);
+    return testReport;
+  }
+
   private UnitTestReport buildUnitTestReport(TestStatus status, String errorMsg, String stack) {
     UnitTestReport testReport = new UnitTestReport();
     testReport.setAssemblyName("MyAssembly");
@@ -0,0 +1,126 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio;
+
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import org.sonar.plugins.csharp.gallio.results.execution.GallioResultParser;
+import org.sonar.test.TestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestShardsTest {
+
+  @Test
+  public void shouldReadFixtureDurations() {
+    Map<String, Long> durations = TestShards.readFixtureDurations(
+        Collections.singletonList(TestUtils.getResource("/Results/execution/gallio-report-mbunit-sample.xml")), new GallioResultParser());
+
+    assertEquals(5, durations.size());
+    assertEquals(Long.valueOf(667), durations.get("MbUnit.Samples.FeatureDemos.OutcomeDemo"));
+    assertEquals(Long.valueOf(86), durations.get("MbUnit.Samples.FeatureDemos.TestLogDemo"));
+  }
+
+  @Test
+  public void shouldBalanceShards() {
+    Map<String, Long> durations = Maps.newHashMap();
+    durations.put("A", 70L);
+    durations.put("B", 50L);
+    durations.put("C", 40L);
+    durations.put("D", 30L);
+    durations.put("E", 10L);
+
+    List<List<String>> shards = TestShards.split(durations, 2);
+
+    assertEquals(2, shards.size());
+    // A(70) + D(30) = 100, B(50) + C(40) + E(10) = 100
+    assertEquals(Arrays.asList("A", "D"), shards.get(0));
+    assertEquals(Arrays.asList("B", "C", "E"), shards.get(1));
+  }
+
+  @Test
+  public void shouldNotCreateMoreShardsThanFixtures() {
+    Map<String, Long> durations = Maps.newHashMap();
+    durations.put("A", 10L);
+
+    assertEquals(1, TestShards.split(durations, 4).size());
+    assertTrue(TestShards.createFilters(Maps.<String, Long> newHashMap(), 4, null).isEmpty());
+  }
+
+  @Test
+  public void shouldRunUnknownNamespacesInTheShortestShard() {
+    Map<String, Long> durations = Maps.newHashMap();
+    durations.put("N1.A", 40L);
+    durations.put("N1.B", 30L);
+    durations.put("N2.C", 10L);
+
+    List<String> filters = TestShards.createFilters(durations, 2, "Category:Fast");
+
+    assertEquals(2, filters.size());
+    assertEquals("(Category:Fast) and (Namespace:'N1')", filters.get(0));
+    assertTrue(filters.get(1).startsWith("(Category:Fast) and (Namespace:'N2' or not ("));
+  }
+
+  @Test
+  public void shouldGetTheNamespaceOfFixtures() {
+    assertEquals("MyCompany.Tests", TestShards.getNamespace("MyCompany.Tests.MyFixture"));
+    assertEquals("MyCompany.Tests", TestShards.getNamespace("MyCompany.Tests.MyFixture+Nested.Fixture"));
+    assertEquals("", TestShards.getNamespace("MyFixture"));
+  }
+
+  @Test
+  public void shouldShardManyFixtures() {
+    Map<String, Long> durations = Maps.newHashMap();
+    for (int i = 0; i < 1000; i++) {
+      durations.put("MyCompany.MyProduct.Module" + (i % 40) + ".Tests.SomeFeatureFixture" + i, (long) i);
+    }
+
+    List<String> filters = TestShards.createFilters(durations, 4, "Category:Fast");
+
+    assertEquals(4, filters.size());
+    for (String filter : filters) {
+      assertTrue(filter.length() <= TestShards.MAX_FILTER_LENGTH);
+    }
+  }
+
+  @Test
+  public void shouldNotShardWhenFiltersAreTooLong() {
+    Map<String, Long> durations = Maps.newHashMap();
+    for (int i = 0; i < 500; i++) {
+      durations.put("MyCompany.MyProduct.Tests.Namespace" + i + ".Fixture", (long) i);
+    }
+
+    assertTrue(TestShards.createFilters(durations, 4, null).isEmpty());
+  }
+
+  @Test
+  public void shouldQuoteFilterValues() {
+    assertEquals("'MyCompany.Tests.MyFixture'", TestShards.quote("MyCompany.Tests.MyFixture"));
+    assertEquals("'MyCompany.Tests.GenericFixture\\`1\\+Nested'", TestShards.quote("MyCompany.Tests.GenericFixture`1+Nested"));
+    assertEquals("'It\\'s\\\\'", TestShards.quote("It's\\"));
+  }
+
+}
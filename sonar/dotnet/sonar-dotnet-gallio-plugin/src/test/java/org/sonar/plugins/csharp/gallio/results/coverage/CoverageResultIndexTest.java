@@ -0,0 +1,133 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.coverage;
+
+import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.csharp.gallio.GallioConstants;
+import org.sonar.plugins.csharp.gallio.GallioPlugin;
+import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
+import org.sonar.test.TestUtils;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CoverageResultIndexTest {
+
+  private VisualStudioProject moneyProject;
+  private VisualStudioProject otherProject;
+  private MicrosoftWindowsEnvironment microsoftWindowsEnvironment;
+  private CoverageResultIndex index;
+
+  @Before
+  public void setUp() {
+    moneyProject = mock(VisualStudioProject.class);
+    otherProject = mock(VisualStudioProject.class);
+
+    VisualStudioSolution solution = mock(VisualStudioSolution.class);
+    when(solution.getProject(any(File.class))).thenAnswer(new Answer<VisualStudioProject>() {
+      public VisualStudioProject answer(InvocationOnMock invocation) throws Throwable {
+        File file = (File) invocation.getArguments()[0];
+        return file.getName().endsWith("Money.cs") ? moneyProject : otherProject;
+      }
+    });
+
+    microsoftWindowsEnvironment = mock(MicrosoftWindowsEnvironment.class);
+    when(microsoftWindowsEnvironment.getCurrentSolution()).thenReturn(solution);
+
+    index = new CoverageResultIndex(microsoftWindowsEnvironment);
+  }
+
+  @Test
+  public void shouldGroupCoveragesByProject() {
+    File report = TestUtils.getResource("/Results/coverage/Coverage.OpenCover.xml");
+
+    List<FileCoverage> moneyCoverages = index.getCoverages(moneyProject, report);
+    List<FileCoverage> otherCoverages = index.getCoverages(otherProject, report);
+
+    assertEquals(1, moneyCoverages.size());
+    assertEquals(45, moneyCoverages.get(0).getCoveredLines());
+    assertEquals(47, moneyCoverages.get(0).getCountLines());
+    assertEquals(2, otherCoverages.size());
+  }
+
+  @Test
+  public void shouldParseEachReportOnlyOnce() {
+    File report = TestUtils.getResource("/Results/coverage/Coverage.OpenCover.xml");
+    File otherReport = TestUtils.getResource("/Results/coverage/coverage-report-2.3.xml");
+
+    List<FileCoverage> first = index.getCoverages(moneyProject, report);
+    index.getCoverages(otherProject, report);
+    index.getCoverages(moneyProject, otherReport);
+
+    assertSame(first, index.getCoverages(moneyProject, report));
+    assertEquals(2, index.getIndexedReportCount());
+  }
+
+  @Test
+  public void shouldParseSeveralReportsConcurrently() {
+    Settings settings = new Settings(new PropertyDefinitions(new GallioPlugin()));
+    settings.setProperty(GallioConstants.COVERAGE_PARSING_THREADS_KEY, 4);
+    CoverageResultIndex concurrentIndex = new CoverageResultIndex(microsoftWindowsEnvironment, new DotNetConfiguration(settings));
+
+    List<File> reports = Arrays.asList(
+        TestUtils.getResource("/Results/coverage/Coverage.OpenCover.xml"),
+        TestUtils.getResource("/Results/coverage/Coverage.NCover3.xml"),
+        TestUtils.getResource("/Results/coverage/coverage-report-2.3.xml"),
+        TestUtils.getResource("/Results/coverage/coverage-report-4.0.xml"));
+    concurrentIndex.index(reports);
+
+    assertEquals(4, concurrentIndex.getIndexedReportCount());
+    for (File report : reports) {
+      List<FileCoverage> expected = index.getCoverages(moneyProject, report);
+      List<FileCoverage> actual = concurrentIndex.getCoverages(moneyProject, report);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getCountLines(), actual.get(i).getCountLines());
+        assertEquals(expected.get(i).getCoveredLines(), actual.get(i).getCoveredLines());
+      }
+    }
+    assertEquals(4, concurrentIndex.getIndexedReportCount());
+  }
+
+  @Test
+  public void shouldReturnEmptyListForProjectWithoutCoverage() {
+    File report = TestUtils.getResource("/Results/coverage/empty-partcover-report.xml");
+    assertTrue(index.getCoverages(moneyProject, report).isEmpty());
+  }
+
+}
@@ -257,6 +257,10 @@ public class CoverageResultParserTest {
     File sourceFileMock = mock(File.class);
     when(sourceFileMock.getCanonicalFile()).thenReturn(sourceFileMock);
     when(sourceFileMock.getName()).thenReturn("Money.cs");
+    // the files are looked up in the sonar index before being returned
+    when(sourceFileMock.getPath()).thenReturn("c:\\foobar\\example\\example.core\\money.cs");
+    when(sourceFileMock.getAbsolutePath()).thenReturn("c:\\foobar\\example\\example.core\\money.cs");
+    when(sourceFileMock.getCanonicalPath()).thenReturn("c:\\foobar\\example\\example.core\\money.cs");
     PowerMockito
         .whenNew(File.class)
         .withParameterTypes(String.class)
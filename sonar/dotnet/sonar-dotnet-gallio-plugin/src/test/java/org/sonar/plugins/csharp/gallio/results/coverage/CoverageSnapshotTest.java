@@ -0,0 +1,153 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.coverage;
+
+import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.csharp.gallio.results.coverage.model.FileCoverage;
+import org.sonar.test.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CoverageSnapshotTest {
+
+  private File report;
+
+  @Before
+  public void setUp() throws IOException {
+    File dir = new File("target/coverage-snapshot");
+    FileUtils.deleteQuietly(dir);
+    dir.mkdirs();
+    report = new File(dir, "coverage-report.xml");
+    FileUtils.writeStringToFile(report, "<report/>");
+  }
+
+  @Test
+  public void shouldReadWhatWasWritten() {
+    FileCoverage money = new FileCoverage(new File("C:\\Example\\Money.cs"));
+    money.addPoint(3, 5, 2);
+    money.addPoint(300, 300, 0);
+    money.addPoint(70000, 70001, 1000000);
+    money.addUncoveredLines(4);
+    FileCoverage bag = new FileCoverage(new File("C:\\Example\\MoneyBag\u00e9.cs"));
+    bag.addPoint(1, 1, 1);
+
+    CoverageSnapshot.write(report, Lists.newArrayList(money, bag));
+    assertTrue(CoverageSnapshot.getSnapshotFile(report).isFile());
+
+    List<FileCoverage> coverages = CoverageSnapshot.read(report);
+    assertEquals(2, coverages.size());
+
+    FileCoverage readMoney = coverages.get(0);
+    readMoney.summarize();
+    assertEquals(money.getFile(), readMoney.getFile());
+    assertArrayEquals(new int[] {3, 4, 5, 300, 70000, 70001}, readMoney.getLineNumbers());
+    assertEquals(2, readMoney.getCountVisits(4));
+    assertEquals(1000000, readMoney.getCountVisits(70001));
+    assertEquals(10, readMoney.getCountLines());
+    assertEquals(5, readMoney.getCoveredLines());
+    assertEquals(bag.getFile(), coverages.get(1).getFile());
+  }
+
+  @Test
+  public void shouldIgnoreMissingSnapshot() {
+    assertNull(CoverageSnapshot.read(report));
+  }
+
+  @Test
+  public void shouldIgnoreOutOfDateSnapshot() throws IOException {
+    CoverageSnapshot.write(report, Lists.<FileCoverage> newArrayList());
+    FileUtils.writeStringToFile(report, "<another-report/>");
+
+    assertNull(CoverageSnapshot.read(report));
+  }
+
+  @Test
+  public void shouldIgnoreTruncatedSnapshot() throws IOException {
+    FileCoverage money = new FileCoverage(new File("Money.cs"));
+    money.addPoint(3, 5, 2);
+    CoverageSnapshot.write(report, Lists.newArrayList(money));
+    File snapshot = CoverageSnapshot.getSnapshotFile(report);
+    byte[] content = FileUtils.readFileToByteArray(snapshot);
+    byte[] truncated = new byte[content.length - 3];
+    System.arraycopy(content, 0, truncated, 0, truncated.length);
+    FileUtils.writeByteArrayToFile(snapshot, truncated);
+
+    assertNull(CoverageSnapshot.read(report));
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedSnapshot() throws IOException {
+    FileCoverage money = new FileCoverage(new File("Money.cs"));
+    money.addPoint(3, 5, 2);
+    CoverageSnapshot.write(report, Lists.newArrayList(money));
+    File snapshot = CoverageSnapshot.getSnapshotFile(report);
+    byte[] content = FileUtils.readFileToByteArray(snapshot);
+
+    // Header (24 bytes), path count, path length, path (8 bytes), coverage count, then the path index of the coverage
+    byte[] outOfRangeIndex = content.clone();
+    outOfRangeIndex[35] = 5;
+    FileUtils.writeByteArrayToFile(snapshot, outOfRangeIndex);
+    assertNull(CoverageSnapshot.read(report));
+
+    // Path length of -1
+    byte[] negativeLength = new byte[content.length + 4];
+    System.arraycopy(content, 0, negativeLength, 0, 25);
+    System.arraycopy(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F}, 0, negativeLength, 25, 5);
+    System.arraycopy(content, 26, negativeLength, 30, content.length - 26);
+    FileUtils.writeByteArrayToFile(snapshot, negativeLength);
+    assertNull(CoverageSnapshot.read(report));
+
+    // The snapshot is not held once read, and can be replaced
+    assertTrue(snapshot.delete());
+  }
+
+  @Test
+  public void indexShouldWriteAndReuseSnapshots() throws IOException {
+    FileUtils.copyFile(TestUtils.getResource("/Results/coverage/Coverage.OpenCover.xml"), report);
+
+    VisualStudioSolution solution = mock(VisualStudioSolution.class);
+    MicrosoftWindowsEnvironment microsoftWindowsEnvironment = mock(MicrosoftWindowsEnvironment.class);
+    when(microsoftWindowsEnvironment.getCurrentSolution()).thenReturn(solution);
+
+    new CoverageResultIndex(microsoftWindowsEnvironment).index(Lists.newArrayList(report), false);
+    assertFalse(CoverageSnapshot.getSnapshotFile(report).exists());
+
+    new CoverageResultIndex(microsoftWindowsEnvironment).index(Lists.newArrayList(report), true);
+    List<FileCoverage> coverages = CoverageSnapshot.read(report);
+    assertEquals(3, coverages.size());
+  }
+
+}
@@ -23,6 +23,7 @@ import org.junit.Test;
 
 import java.io.File;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class FileCoverageTest {
@@ -30,23 +31,11 @@ public class FileCoverageTest {
   @Test
   public void shouldMergeCoverage() {
     FileCoverage firstCoverage = new FileCoverage(new File("somesourcefile.cs"));
-    CoveragePoint point = new CoveragePoint();
-    point.setCountVisits(2);
-    point.setStartLine(3);
-    point.setEndLine(10);
-    firstCoverage.addPoint(point);
+    firstCoverage.addPoint(3, 10, 2);
 
     FileCoverage secondCoverage = new FileCoverage(new File("someotherfile.cs"));
-    point = new CoveragePoint();
-    point.setCountVisits(3);
-    point.setStartLine(7);
-    point.setEndLine(15);
-    secondCoverage.addPoint(point);
-    point = new CoveragePoint();
-    point.setCountVisits(0);
-    point.setStartLine(9);
-    point.setEndLine(20);
-    secondCoverage.addPoint(point);
+    secondCoverage.addPoint(7, 15, 3);
+    secondCoverage.addPoint(9, 20, 0);
 
     firstCoverage.merge(secondCoverage);
 
@@ -54,10 +43,55 @@ public class FileCoverageTest {
     assertEquals(13, firstCoverage.getCoveredLines());
     assertEquals(13d / 18d, firstCoverage.getCoverage(), 0.01d);
 
-    SourceLine intersectionLine = firstCoverage.getLines().get(8);
-    assertEquals(5, intersectionLine.getCountVisits());
+    assertEquals(5, firstCoverage.getCountVisits(8));
 
-    SourceLine disjunctionLine = firstCoverage.getLines().get(4);
-    assertEquals(2, disjunctionLine.getCountVisits());
+    assertEquals(2, firstCoverage.getCountVisits(4));
+  }
+
+  @Test
+  public void copyShouldNotAlterOriginalCoverage() {
+    FileCoverage original = new FileCoverage(new File("somesourcefile.cs"));
+    original.addPoint(3, 4, 2);
+    original.summarize();
+
+    FileCoverage other = new FileCoverage(new File("somesourcefile.cs"));
+    other.addPoint(4, 5, 1);
+
+    FileCoverage copy = new FileCoverage(original);
+    copy.merge(other);
+
+    assertEquals(3, copy.getCountLines());
+    assertEquals(3, copy.getCountVisits(4));
+    assertEquals(2, original.getCountLines());
+    assertEquals(2, original.getCountVisits(4));
+  }
+
+  @Test
+  public void shouldStoreHitsOfFarLines() {
+    FileCoverage coverage = new FileCoverage(new File("somesourcefile.cs"));
+    coverage.addPoint(1000, 1001, 4);
+    coverage.addPoint(2, 2, 0);
+    coverage.summarize();
+
+    assertArrayEquals(new int[] {2, 1000, 1001}, coverage.getLineNumbers());
+    assertEquals(4, coverage.getCountVisits(1001));
+    assertEquals(0, coverage.getCountVisits(5000));
+    assertEquals(3, coverage.getCountLines());
+    assertEquals(2, coverage.getCoveredLines());
+  }
+
+  @Test
+  public void shouldIgnoreHiddenAndOutOfRangeLines() {
+    FileCoverage coverage = new FileCoverage(new File("somesourcefile.cs"));
+    coverage.addPoint(0xFEEFEE, 0xFEEFEE, 1);
+    coverage.addPoint(3, FileCoverage.MAX_LINE + 1, 1);
+    coverage.addPoint(5, 4, 1);
+    coverage.addPoint(-1, 2, 1);
+    coverage.addPoint(FileCoverage.MAX_LINE, FileCoverage.MAX_LINE, 1);
+    coverage.summarize();
+
+    assertArrayEquals(new int[] {FileCoverage.MAX_LINE}, coverage.getLineNumbers());
+    assertEquals(0, coverage.getCountVisits(0xFEEFEE));
+    assertEquals(1, coverage.getCountLines());
   }
 }
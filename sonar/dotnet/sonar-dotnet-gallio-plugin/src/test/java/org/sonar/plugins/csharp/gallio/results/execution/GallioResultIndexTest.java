@@ -0,0 +1,105 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.execution;
+
+import org.sonar.plugins.dotnet.api.microsoft.MicrosoftWindowsEnvironment;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioProject;
+import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
+
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+import org.sonar.test.TestUtils;
+
+import java.io.File;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GallioResultIndexTest {
+
+  private VisualStudioProject testProject1;
+  private VisualStudioProject testProject2;
+  private UnitTestReport report1;
+  private UnitTestReport report2;
+  private UnitTestReport unassignedReport;
+  private GallioResultParser parser;
+  private GallioResultIndex index;
+
+  @Before
+  public void setUp() {
+    testProject1 = mock(VisualStudioProject.class);
+    testProject2 = mock(VisualStudioProject.class);
+
+    report1 = createReport("Test1.cs");
+    report2 = createReport("Test2.cs");
+    unassignedReport = createReport("Elsewhere.cs");
+
+    VisualStudioSolution solution = mock(VisualStudioSolution.class);
+    when(solution.getProject(report1.getSourceFile())).thenReturn(testProject1);
+    when(solution.getProject(report2.getSourceFile())).thenReturn(testProject2);
+    MicrosoftWindowsEnvironment microsoftWindowsEnvironment = mock(MicrosoftWindowsEnvironment.class);
+    when(microsoftWindowsEnvironment.getCurrentSolution()).thenReturn(solution);
+
+    parser = mock(GallioResultParser.class);
+    when(parser.parse(any(File.class))).thenReturn(Sets.newHashSet(report1, report2, unassignedReport));
+
+    index = new GallioResultIndex(microsoftWindowsEnvironment);
+  }
+
+  private static UnitTestReport createReport(String sourceFile) {
+    UnitTestReport report = new UnitTestReport();
+    report.setSourceFile(new File(sourceFile));
+    return report;
+  }
+
+  @Test
+  public void shouldParseReportOnceForAllProjects() {
+    File report = TestUtils.getResource("/Results/execution/gallio-report.xml");
+
+    Collection<UnitTestReport> reports1 = index.getReports(testProject1, report, parser);
+    Collection<UnitTestReport> reports2 = index.getReports(testProject2, report, parser);
+
+    verify(parser, times(1)).parse(report);
+    assertEquals(2, reports1.size());
+    assertTrue(reports1.contains(report1));
+    assertTrue(reports1.contains(unassignedReport));
+    assertEquals(2, reports2.size());
+    assertTrue(reports2.contains(report2));
+  }
+
+  @Test
+  public void shouldReturnUnassignedReportsToProjectsWithoutTests() {
+    File report = TestUtils.getResource("/Results/execution/gallio-report.xml");
+
+    Collection<UnitTestReport> reports = index.getReports(mock(VisualStudioProject.class), report, parser);
+
+    assertEquals(1, reports.size());
+    assertTrue(reports.contains(unassignedReport));
+  }
+
+}
@@ -25,20 +25,29 @@ package org.sonar.plugins.csharp.gallio.results.execution;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.csharp.gallio.GallioConstants;
+import org.sonar.plugins.csharp.gallio.GallioPlugin;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
 import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
 import org.sonar.plugins.csharp.gallio.results.execution.model.UnitTestReport;
+import org.sonar.plugins.dotnet.api.DotNetConfiguration;
 import org.sonar.test.TestUtils;
 
 import java.io.File;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class GallioResultParserTest {
@@ -181,6 +190,59 @@ public class GallioResultParserTest {
     // This test should be completed once MSTest has been fixed or something else has been done
   }
 
+  @Test
+  public void testFailureDetailsAreTruncated() {
+    Settings settings = new Settings(new PropertyDefinitions(new GallioPlugin()));
+    settings.setProperty(GallioConstants.DETAILS_MAX_LENGTH_KEY, "10");
+    parser = new GallioResultParser(new DotNetConfiguration(settings));
+
+    UnitTestReport report = parse("gallio-report.xml").iterator().next();
+    assertEquals(6, report.getTests());
+    assertEquals(3, report.getFailures());
+    int truncatedDetails = 0;
+    for (TestCaseDetail detail : report.getDetails()) {
+      if (detail.getStackTrace() != null) {
+        assertEquals(10, detail.getStackTrace().length());
+        truncatedDetails++;
+      }
+      assertTrue(detail.getErrorMessage() == null || detail.getErrorMessage().length() <= 10);
+    }
+    assertTrue(truncatedDetails > 0);
+  }
+
+  @Test
+  public void testOnlyTheLastRunOfATestIsKept() {
+    Collection<UnitTestReport> reports = parse("gallio-report-rerun.xml");
+    assertEquals(1, reports.size());
+
+    UnitTestReport report = reports.iterator().next();
+    assertEquals(2, report.getTests());
+    assertEquals(0, report.getFailures());
+    assertEquals(3, report.getAsserts());
+    assertEquals(15, report.getTimeMS());
+    for (TestCaseDetail detail : report.getDetails()) {
+      assertEquals(TestStatus.SUCCESS, detail.getStatus());
+      assertNull(detail.getErrorMessage());
+    }
+  }
+
+  @Test
+  public void testNestedFixturesParsing() {
+    UnitTestReport report = parse("gallio-report-rerun.xml").iterator().next();
+    assertEquals("Example.Core.Tests", report.getAssemblyName());
+    assertEquals(new File("Example\\Example.Core.Tests\\MoneyTest.cs"), report.getSourceFile());
+
+    Map<String, TestCaseDetail> detailsByName = Maps.newHashMap();
+    for (TestCaseDetail detail : report.getDetails()) {
+      detailsByName.put(detail.getName(), detail);
+    }
+    // The member of the code reference is used rather than the name of the data-driven test
+    assertEquals(Sets.newHashSet("Add", "Convert"), detailsByName.keySet());
+    assertEquals("Example.Core.MoneyTest", detailsByName.get("Add").getClassName());
+    assertEquals("Example.Core.MoneyTest+Currency+Conversions", detailsByName.get("Convert").getClassName());
+    assertEquals(report.getSourceFile(), detailsByName.get("Convert").getSourceFile());
+  }
+
   public static class UnitTestReportPredicate implements Predicate<UnitTestReport> {
 
     private final UnitTestReport referenceReport;
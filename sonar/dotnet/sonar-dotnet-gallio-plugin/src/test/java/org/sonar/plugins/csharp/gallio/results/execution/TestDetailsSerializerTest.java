@@ -0,0 +1,122 @@
+/*
+ * Sonar .NET Plugin :: Gallio
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.csharp.gallio.results.execution;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestCaseDetail;
+import org.sonar.plugins.csharp.gallio.results.execution.model.TestStatus;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestDetailsSerializerTest {
+
+  @Test
+  public void shouldKeepTheMeasureFormat() {
+    List<TestCaseDetail> details = Lists.newArrayList(detail("ok", TestStatus.SUCCESS, null, null),
+        detail("ko", TestStatus.FAILED, "message", "stack"));
+
+    String xml = new TestDetailsSerializer(0, 0).serialize(details);
+
+    assertEquals("<tests-details><testcase status=\"ok\" time=\"1\" name=\"ok\"/>"
+      + "<testcase status=\"failure\" time=\"1\" name=\"ko\"><failure message=\"message\"><![CDATA[stack]]></failure></testcase>"
+      + "</tests-details>", xml);
+  }
+
+  @Test
+  public void shouldReferenceRepeatedStackTraces() {
+    List<TestCaseDetail> details = Lists.newArrayList(detail("first", TestStatus.ERROR, "message", "stack"),
+        detail("second", TestStatus.ERROR, "message", "stack"));
+
+    String xml = new TestDetailsSerializer(0, 0).serialize(details);
+
+    assertEquals(1, StringUtils.countMatches(xml, "<![CDATA[stack]]>"));
+    assertTrue(xml.contains("<![CDATA[Same stack trace as first]]>"));
+  }
+
+  @Test
+  public void shouldTruncateStackTraces() {
+    List<TestCaseDetail> details = Lists.newArrayList(detail("ko", TestStatus.FAILED, "message", "0123456789"));
+
+    String xml = new TestDetailsSerializer(0, 4).serialize(details);
+
+    assertTrue(xml.contains("<![CDATA[0123...]]>"));
+  }
+
+  @Test
+  public void shouldCapTheTotalLength() {
+    List<TestCaseDetail> details = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      details.add(detail("test" + i, TestStatus.FAILED, "message" + i, "stack" + i));
+    }
+
+    TestDetailsSerializer serializer = new TestDetailsSerializer(200, 0);
+    String xml = serializer.serialize(details);
+
+    assertEquals(100, StringUtils.countMatches(xml, "<testcase "));
+    assertTrue(xml.contains("stack0"));
+    assertFalse(xml.contains("stack99"));
+    assertTrue(xml.endsWith("</tests-details>"));
+
+    // the buffer is reused for the next file
+    assertEquals("<tests-details></tests-details>", serializer.serialize(Lists.<TestCaseDetail> newArrayList()));
+  }
+
+  @Test
+  public void shouldTruncateTheMessagesToTheRemainingLength() {
+    List<TestCaseDetail> details = Lists.newArrayList(detail("ko", TestStatus.FAILED, StringUtils.repeat("a&b", 1000), "stack"));
+
+    String xml = new TestDetailsSerializer(200, 0).serialize(details);
+
+    assertTrue(xml.length() <= 200 + "\"><![CDATA[]]></failure></testcase></tests-details>".length());
+    assertTrue(xml.matches(".*(a|b|&amp;)\\.\\.\\.\"><!\\[CDATA\\[\\]\\]>.*"));
+  }
+
+  @Test
+  public void shouldCountPassingTestsAgainstTheMaximumLength() {
+    List<TestCaseDetail> details = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      details.add(detail("test" + i, TestStatus.SUCCESS, null, null));
+    }
+    details.add(detail("ko", TestStatus.FAILED, "expected", "stack"));
+
+    String xml = new TestDetailsSerializer(200, 0).serialize(details);
+
+    assertEquals(21, StringUtils.countMatches(xml, "<testcase "));
+    assertFalse(xml.contains("expected"));
+    assertFalse(xml.contains("stack"));
+  }
+
+  private static TestCaseDetail detail(String name, TestStatus status, String message, String stackTrace) {
+    TestCaseDetail detail = new TestCaseDetail();
+    detail.setName(name);
+    detail.setStatus(status);
+    detail.setTimeMillis(1);
+    detail.setErrorMessage(message);
+    detail.setStackTrace(stackTrace);
+    return detail;
+  }
+
+}
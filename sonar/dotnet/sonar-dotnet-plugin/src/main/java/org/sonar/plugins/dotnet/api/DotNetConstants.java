@@ -73,6 +73,13 @@ public final class DotNetConstants {
   public static final String SOLUTION_FILE_KEY = "sonar.dotnet.visualstudio.solution.file";
   public static final String SOLUTION_FILE_DEFVALUE = "";
 
+  public static final String PROJECT_LOADING_THREADS_KEY = "sonar.dotnet.visualstudio.projectLoadingThreads";
+  public static final int PROJECT_LOADING_THREADS_DEFVALUE = 4;
+
+  public static final String SOLUTION_CACHE_ENABLED_KEY = "sonar.dotnet.visualstudio.cache";
+  public static final boolean SOLUTION_CACHE_ENABLED_DEFVALUE = false;
+  public static final String SOLUTION_CACHE_FILE = "visual-studio-solution.cache";
+
   public static final String EXCLUDE_GENERATED_CODE_KEY = "sonar.dotnet.excludeGeneratedCode";
   public static final boolean EXCLUDE_GENERATED_CODE_DEFVALUE = true;
 
@@ -23,7 +23,11 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
-public class BuildConfiguration {
+import java.io.Serializable;
+
+public class BuildConfiguration implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   public static final String DEFAULT_PLATFORM = "Any CPU";
 
@@ -27,30 +27,24 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.WildcardPattern;
+import org.sonar.plugins.dotnet.api.DotNetConstants;
 import org.sonar.plugins.dotnet.api.DotNetException;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import javax.xml.XMLConstants;
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -74,6 +68,11 @@ public final class ModelFactory {
    */
   private static String integTestProjectNamePattern = null;
 
+  /**
+   * Maximum number of projects of a solution loaded at the same time
+   */
+  private static int projectLoadingThreads = DotNetConstants.PROJECT_LOADING_THREADS_DEFVALUE;
+
   private ModelFactory() {
   }
 
@@ -91,6 +90,16 @@ public final class ModelFactory {
     ModelFactory.integTestProjectNamePattern = testProjectNamePattern;
   }
 
+  /**
+   * Sets the maximum number of projects of a solution loaded at the same time
+   * 
+   * @param projectLoadingThreads
+   *          the number of threads, 1 or less to load the projects one after another
+   */
+  public static void setProjectLoadingThreads(int projectLoadingThreads) {
+    ModelFactory.projectLoadingThreads = projectLoadingThreads;
+  }
+
   /**
    * Checks, whether the child directory is a subdirectory of the base directory.
    * 
@@ -202,6 +211,30 @@ public final class ModelFactory {
     return solution;
   }
 
+  /**
+   * Gets a solution from the given cache file, or from the solution file if the cache is out of date. In the latter case, the cache is
+   * refreshed with the new solution.
+   * 
+   * @param solutionFile
+   *          the solution file
+   * @param cacheFile
+   *          the file in which the solution is cached between two analyses
+   * @return the solution
+   * @throws IOException
+   * @throws DotNetException
+   * @see VisualStudioSolutionCache
+   */
+  public static VisualStudioSolution getSolution(File solutionFile, File cacheFile) throws IOException, DotNetException {
+    // The test project patterns are the only settings that change the resulting solution
+    String configuration = testProjectNamePattern + "|" + integTestProjectNamePattern;
+    VisualStudioSolution solution = VisualStudioSolutionCache.load(cacheFile, solutionFile, configuration);
+    if (solution == null) {
+      solution = getSolution(solutionFile);
+      VisualStudioSolutionCache.save(cacheFile, solution, configuration);
+    }
+    return solution;
+  }
+
   private static List<BuildConfiguration> getBuildConfigurations(String solutionContent) {
     // A pattern to extract the build configurations from a visual studio solution
     String confExtractExp = "(\tGlobalSection\\(SolutionConfigurationPlatforms\\).*?^\tEndGlobalSection$)";
@@ -234,10 +267,10 @@ public final class ModelFactory {
    * @throws IOException
    * @throws DotNetException
    */
-  private static List<VisualStudioProject> getProjects(File solutionFile, String solutionContent, List<BuildConfiguration> buildConfigurations)
-      throws IOException, DotNetException {
+  private static List<VisualStudioProject> getProjects(File solutionFile, String solutionContent,
+      final List<BuildConfiguration> buildConfigurations) throws IOException, DotNetException {
 
-    File baseDirectory = solutionFile.getParentFile();
+    final File baseDirectory = solutionFile.getParentFile();
 
     // A pattern to extract the projects from a visual studion solution
     String projectExtractExp = "(Project.*?^EndProject$)";
@@ -259,39 +292,112 @@ public final class ModelFactory {
     Pattern projectPattern = Pattern.compile(normalProjectExp);
     Pattern webPattern = Pattern.compile(webProjectExp, Pattern.MULTILINE + Pattern.DOTALL);
 
-    List<VisualStudioProject> result = new ArrayList<VisualStudioProject>();
-    for (String projectDefinition : projectDefinitions) {
+    // The projects are looked up in the solution order, so that the loaded projects can be assembled in the same order
+    List<Callable<VisualStudioProject>> projectLoaders = new ArrayList<Callable<VisualStudioProject>>();
+    for (final String projectDefinition : projectDefinitions) {
       // Looks for project files
       Matcher matcher = projectPattern.matcher(projectDefinition);
       if (matcher.find()) {
-        String projectName = matcher.group(1);
+        final String projectName = matcher.group(1);
         String projectPath = StringUtils.replace(matcher.group(2), "\\", File.separatorChar + "");
 
-        File projectFile = new File(baseDirectory, projectPath);
+        final File projectFile = new File(baseDirectory, projectPath);
         if (!projectFile.exists()) {
           throw new FileNotFoundException("Could not find the project file: " + projectFile);
         }
-        VisualStudioProject project = getProject(projectFile, projectName, buildConfigurations);
-        result.add(project);
+        projectLoaders.add(new Callable<VisualStudioProject>() {
+          public VisualStudioProject call() throws DotNetException {
+            return readProject(projectFile, projectName, buildConfigurations);
+          }
+        });
       } else {
         // Searches the web project
         Matcher webMatcher = webPattern.matcher(projectDefinition);
 
         if (webMatcher.find()) {
-          String projectName = webMatcher.group(1);
+          final String projectName = webMatcher.group(1);
           String projectPath = webMatcher.group(2);
           if (projectPath.endsWith("\\")) {
             projectPath = StringUtils.chop(projectPath);
           }
-          File projectRoot = new File(baseDirectory, projectPath);
-          VisualStudioProject project = getWebProject(baseDirectory, projectRoot, projectName, projectDefinition);
-          result.add(project);
+          final File projectRoot = new File(baseDirectory, projectPath);
+          projectLoaders.add(new Callable<VisualStudioProject>() {
+            public VisualStudioProject call() throws FileNotFoundException {
+              return getWebProject(baseDirectory, projectRoot, projectName, projectDefinition);
+            }
+          });
         }
       }
     }
+    List<VisualStudioProject> result = loadProjects(projectLoaders);
+    // Done once all the projects are loaded, as the matching of the name patterns is not meant to be shared between threads
+    for (VisualStudioProject project : result) {
+      if (!project.isWebProject()) {
+        assessTestProject(project, testProjectNamePattern, integTestProjectNamePattern);
+      }
+    }
     return result;
   }
 
+  /**
+   * Loads the projects of a solution, concurrently when several threads are allowed. Reading the project files and the source files
+   * of a project does not depend on the other projects.
+   * 
+   * @param projectLoaders
+   *          the loaders of the projects, in the solution order
+   * @return the projects, in the solution order
+   * @throws IOException
+   * @throws DotNetException
+   */
+  private static List<VisualStudioProject> loadProjects(List<Callable<VisualStudioProject>> projectLoaders) throws IOException,
+      DotNetException {
+    List<VisualStudioProject> result = new ArrayList<VisualStudioProject>();
+    int poolSize = Math.min(projectLoadingThreads, projectLoaders.size());
+    try {
+      if (poolSize <= 1) {
+        for (Callable<VisualStudioProject> projectLoader : projectLoaders) {
+          result.add(projectLoader.call());
+        }
+        return result;
+      }
+
+      LOG.debug("Loading {} projects with {} threads", projectLoaders.size(), poolSize);
+      ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+      try {
+        List<Future<VisualStudioProject>> futures = new ArrayList<Future<VisualStudioProject>>();
+        for (Callable<VisualStudioProject> projectLoader : projectLoaders) {
+          futures.add(executor.submit(projectLoader));
+        }
+        for (Future<VisualStudioProject> future : futures) {
+          result.add(future.get());
+        }
+        return result;
+      } finally {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DotNetException("Loading of the solution projects was interrupted", e);
+    } catch (ExecutionException e) {
+      throw rethrow(e.getCause());
+    } catch (Exception e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static DotNetException rethrow(Throwable e) throws IOException, DotNetException {
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    } else if (e instanceof DotNetException) {
+      throw (DotNetException) e;
+    } else if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    }
+    return new DotNetException("Could not load the solution projects", e);
+  }
+
   /**
    * Creates a project from its file
    * 
@@ -319,99 +425,91 @@ public final class ModelFactory {
    */
   public static VisualStudioProject getProject(File projectFile, String projectName, List<BuildConfiguration> buildConfigurations)
       throws FileNotFoundException, DotNetException {
+    VisualStudioProject project = readProject(projectFile, projectName, buildConfigurations);
+    assessTestProject(project, testProjectNamePattern, integTestProjectNamePattern);
+    return project;
+  }
+
+  private static VisualStudioProject readProject(File projectFile, String projectName, List<BuildConfiguration> buildConfigurations)
+      throws DotNetException {
 
     VisualStudioProject project = new VisualStudioProject();
     project.setProjectFile(projectFile);
     project.setName(projectName);
     File projectDir = projectFile.getParentFile();
 
-    XPathFactory factory = XPathFactory.newInstance();
-    XPath xpath = factory.newXPath();
-
-    // This is a workaround to avoid Xerces class-loading issues
-    try {
-      // We define the namespace prefix for Visual Studio
-      xpath.setNamespaceContext(new VisualStudioNamespaceContext());
-
-      if (buildConfigurations != null) {
-        Map<BuildConfiguration, File> buildConfOutputDirMap = new HashMap<BuildConfiguration, File>();
-        for (BuildConfiguration config : buildConfigurations) {
-          XPathExpression configOutputExpression = xpath.compile("/vst:Project/vst:PropertyGroup[contains(@Condition,'" + config
-            + "')]/vst:OutputPath");
-          String configOutput = extractProjectProperty(configOutputExpression, projectFile);
-          buildConfOutputDirMap.put(config, new File(projectDir, configOutput));
-        }
-        project.setBuildConfOutputDirMap(buildConfOutputDirMap);
-      }
-
-      XPathExpression projectTypeExpression = xpath.compile("/vst:Project/vst:PropertyGroup/vst:OutputType");
-      XPathExpression assemblyNameExpression = xpath.compile("/vst:Project/vst:PropertyGroup/vst:AssemblyName");
-      XPathExpression rootNamespaceExpression = xpath.compile("/vst:Project/vst:PropertyGroup/vst:RootNamespace");
-
-      XPathExpression silverlightExpression = xpath.compile("/vst:Project/vst:PropertyGroup/vst:SilverlightApplication");
-      XPathExpression projectGuidExpression = xpath.compile("/vst:Project/vst:PropertyGroup/vst:ProjectGuid");
-
-      // Extracts the properties of a Visual Studio Project
-      String typeStr = extractProjectProperty(projectTypeExpression, projectFile);
-      String silverlightStr = extractProjectProperty(silverlightExpression, projectFile);
-      String assemblyName = extractProjectProperty(assemblyNameExpression, projectFile);
-      String rootNamespace = extractProjectProperty(rootNamespaceExpression, projectFile);
-      String projectGuid = extractProjectProperty(projectGuidExpression, projectFile);
+    // All the properties, output paths and files are read in a single pass over the project file
+    ProjectFileContent content = ProjectFileContent.read(projectFile);
 
-      // because the GUID starts with { and ends with }, remove these characters
-      projectGuid = projectGuid.substring(1, projectGuid.length() - 2);
-
-      // Assess if the artifact is a library or an executable
-      ArtifactType type = ArtifactType.LIBRARY;
-      if (StringUtils.containsIgnoreCase(typeStr, "exe")) {
-        type = ArtifactType.EXECUTABLE;
-      }
-      // The project is populated
-      project.setProjectGuid(UUID.fromString(projectGuid));
-      project.setProjectFile(projectFile);
-      project.setType(type);
-      project.setDirectory(projectDir);
-      project.setAssemblyName(assemblyName);
-      project.setRootNamespace(rootNamespace);
-
-      if (StringUtils.isNotEmpty(silverlightStr)) {
-        project.setSilverlightProject(true);
+    if (buildConfigurations != null) {
+      Map<BuildConfiguration, File> buildConfOutputDirMap = new HashMap<BuildConfiguration, File>();
+      for (BuildConfiguration config : buildConfigurations) {
+        String configOutput = content.getOutputPath(config);
+        buildConfOutputDirMap.put(config, new File(projectDir, configOutput));
       }
+      project.setBuildConfOutputDirMap(buildConfOutputDirMap);
+    }
 
-      // Get all source files to find the assembly version
-      // [assembly: AssemblyVersion("1.0.0.0")]
-      Collection<SourceFile> sourceFiles = project.getSourceFiles();
-      project.setAssemblyVersion(findAssemblyVersion(sourceFiles));
+    // Extracts the properties of a Visual Studio Project
+    String typeStr = content.getProperty("OutputType");
+    String silverlightStr = content.getProperty("SilverlightApplication");
+    String assemblyName = content.getProperty("AssemblyName");
+    String rootNamespace = content.getProperty("RootNamespace");
+    String projectGuid = content.getProperty("ProjectGuid");
+
+    // because the GUID starts with { and ends with }, remove these characters
+    projectGuid = projectGuid.substring(1, projectGuid.length() - 2);
+
+    // Assess if the artifact is a library or an executable
+    ArtifactType type = ArtifactType.LIBRARY;
+    if (StringUtils.containsIgnoreCase(typeStr, "exe")) {
+      type = ArtifactType.EXECUTABLE;
+    }
+    // The project is populated
+    project.setProjectGuid(UUID.fromString(projectGuid));
+    project.setProjectFile(projectFile);
+    project.setType(type);
+    project.setDirectory(projectDir);
+    project.setAssemblyName(assemblyName);
+    project.setRootNamespace(rootNamespace);
+    project.setFilesPath(content.getFilesPath());
 
-      assessTestProject(project, testProjectNamePattern, integTestProjectNamePattern);
+    if (StringUtils.isNotEmpty(silverlightStr)) {
+      project.setSilverlightProject(true);
+    }
 
-      return project;
-    } catch (XPathExpressionException xpee) {
-      throw new DotNetException("Error while processing the project " + projectFile, xpee);
+    // Get all source files to find the assembly version
+    // [assembly: AssemblyVersion("1.0.0.0")]
+    Collection<SourceFile> sourceFiles = project.getSourceFiles();
+    SourceFile assemblyVersionFile = findAssemblyVersionFile(sourceFiles);
+    if (assemblyVersionFile != null) {
+      project.setAssemblyVersion(tryToGetVersion(assemblyVersionFile));
+      project.setAssemblyVersionFile(assemblyVersionFile.getFile());
     }
-  }
 
-  protected static String findAssemblyVersion(Collection<SourceFile> sourceFiles) {
-    String version = null;
+    return project;
+  }
 
+  /**
+   * Finds the source file declaring the assembly version.
+   * 
+   * @return the source file, or <code>null</code> if no file declares the version
+   */
+  protected static SourceFile findAssemblyVersionFile(Collection<SourceFile> sourceFiles) {
     // first parse: in general, it's in the "Properties\AssemblyInfo.*"
     for (SourceFile file : sourceFiles) {
-      if (StringUtils.startsWithIgnoreCase(file.getName(), "assemblyinfo")) {
-        version = tryToGetVersion(file);
-        if (version != null) {
-          break;
-        }
+      if (StringUtils.startsWithIgnoreCase(file.getName(), "assemblyinfo") && tryToGetVersion(file) != null) {
+        return file;
       }
     }
 
     // second parse: try to read all files
     for (SourceFile file : sourceFiles) {
-      version = tryToGetVersion(file);
-      if (version != null) {
-        break;
+      if (tryToGetVersion(file) != null) {
+        return file;
       }
     }
-    return version;
+    return null;
   }
 
   private static String tryToGetVersion(SourceFile file) {
@@ -487,95 +585,13 @@ public final class ModelFactory {
    * @return a list of the project files
    */
   public static List<String> getFilesPath(File project) {
-    List<String> result = new ArrayList<String>();
-
-    XPathFactory factory = XPathFactory.newInstance();
-    XPath xpath = factory.newXPath();
-    // We define the namespace prefix for Visual Studio
-    xpath.setNamespaceContext(new VisualStudioNamespaceContext());
     try {
-      XPathExpression filesExpression = xpath.compile("/vst:Project/vst:ItemGroup/vst:Compile");
-      InputSource inputSource = new InputSource(new FileInputStream(project));
-      NodeList nodes = (NodeList) filesExpression.evaluate(inputSource, XPathConstants.NODESET);
-      int countNodes = nodes.getLength();
-      for (int idxNode = 0; idxNode < countNodes; idxNode++) {
-        Element compileElement = (Element) nodes.item(idxNode);
-        // We filter the files
-        String filePath = compileElement.getAttribute("Include");
-        if (filePath != null) {
-          filePath = StringUtils.replace(filePath, "\\", File.separatorChar + "");
-          result.add(filePath);
-        }
-      }
-
-    } catch (XPathExpressionException exception) {
+      return ProjectFileContent.read(project).getFilesPath();
+    } catch (DotNetException exception) {
       // Should not happen
-      LOG.debug("xpath error", exception);
-    } catch (FileNotFoundException exception) {
-      // Should not happen
-      LOG.debug("project file not found", exception);
+      LOG.debug("project file error", exception);
     }
-    return result;
-  }
-
-  /**
-   * Extracts a string project data.
-   * 
-   * @param expression
-   * @param projectFile
-   * @return
-   * @throws DotNetException
-   * @throws FileNotFoundException
-   */
-  private static String extractProjectProperty(XPathExpression expression, File projectFile) throws DotNetException {
-    try {
-      FileInputStream file = new FileInputStream(projectFile);
-      InputSource source = new InputSource(file);
-      return expression.evaluate(source);
-    } catch (Exception e) {
-      throw new DotNetException("Could not evaluate the expression " + expression + " on project " + projectFile, e);
-    }
-  }
-
-  /**
-   * A Namespace context specialized for the handling of .*proj files
-   * 
-   * @author Jose CHILLAN Sep 1, 2009
-   */
-  private static class VisualStudioNamespaceContext implements NamespaceContext {
-
-    /**
-     * Gets the namespace URI.
-     * 
-     * @param prefix
-     * @return
-     */
-    public String getNamespaceURI(String prefix) {
-      if (prefix == null) {
-        throw new IllegalStateException("Null prefix");
-      }
-
-      final String result;
-      if ("vst".equals(prefix)) {
-        result = "http://schemas.microsoft.com/developer/msbuild/2003";
-      } else if ("xml".equals(prefix)) {
-        result = XMLConstants.XML_NS_URI;
-      } else {
-        result = XMLConstants.NULL_NS_URI;
-      }
-      return result;
-    }
-
-    // This method isn't necessary for XPath processing.
-    public String getPrefix(String uri) {
-      throw new UnsupportedOperationException();
-    }
-
-    // This method isn't necessary for XPath processing either.
-    public Iterator<?> getPrefixes(String uri) {
-      throw new UnsupportedOperationException();
-    }
-
+    return Collections.emptyList();
   }
 
   /**
@@ -0,0 +1,104 @@
+/*
+ * Sonar .NET Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.api.microsoft;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prefix tree of the directories of the projects of a solution, indexed by path segment. Looking up the project whose directory contains
+ * a path costs one step per segment of the path, whatever the number of projects.
+ */
+final class ProjectDirectoryTree {
+
+  private final Node root = new Node();
+
+  /**
+   * Builds the tree of the directories of the given projects.
+   * 
+   * @param projects
+   *          the projects, in the solution order
+   */
+  ProjectDirectoryTree(List<VisualStudioProject> projects) {
+    for (int i = 0; i < projects.size(); i++) {
+      VisualStudioProject project = projects.get(i);
+      File directory = project.getDirectory();
+      if (directory != null) {
+        Node node = root;
+        for (String segment : split(directory.getPath())) {
+          node = node.getOrCreateChild(segment);
+        }
+        // When two projects share a directory, the first one in the solution wins
+        if (node.project == null) {
+          node.project = project;
+          node.rank = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the project whose directory contains the given path. When the directories of several projects contain the path, the first
+   * project in the solution order is returned.
+   * 
+   * @param canonicalPath
+   *          the canonical path of a file or directory
+   * @return the project, or <code>null</code> if none is matching
+   */
+  VisualStudioProject getProject(String canonicalPath) {
+    Node match = root.project == null ? null : root;
+    Node node = root;
+    for (String segment : split(canonicalPath)) {
+      node = node.children.get(segment);
+      if (node == null) {
+        break;
+      }
+      if (node.project != null && (match == null || node.rank < match.rank)) {
+        match = node;
+      }
+    }
+    return match == null ? null : match.project;
+  }
+
+  private static String[] split(String path) {
+    return StringUtils.split(path, File.separatorChar);
+  }
+
+  private static final class Node {
+
+    private final Map<String, Node> children = new HashMap<String, Node>();
+    private VisualStudioProject project;
+    private int rank;
+
+    Node getOrCreateChild(String segment) {
+      Node child = children.get(segment);
+      if (child == null) {
+        child = new Node();
+        children.put(segment, child);
+      }
+      return child;
+    }
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Sonar .NET Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.api.microsoft;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.dotnet.api.DotNetException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content of a Visual Studio project file (.*proj) read in a single streaming pass: the properties of the property groups, the output
+ * paths of the conditional property groups and the compiled files.
+ */
+final class ProjectFileContent {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProjectFileContent.class);
+
+  private static final String MSBUILD_NAMESPACE = "http://schemas.microsoft.com/developer/msbuild/2003";
+
+  private static final String PROJECT = "Project";
+  private static final String PROPERTY_GROUP = "PropertyGroup";
+  private static final String ITEM_GROUP = "ItemGroup";
+  private static final String COMPILE = "Compile";
+  private static final String OUTPUT_PATH = "OutputPath";
+
+  /** First value of each property, in document order */
+  private final Map<String, String> properties = new HashMap<String, String>();
+  /** Conditions of the property groups defining an output path, in document order */
+  private final List<String> outputPathConditions = new ArrayList<String>();
+  private final List<String> outputPaths = new ArrayList<String>();
+  private final List<String> filesPath = new ArrayList<String>();
+
+  private ProjectFileContent() {
+  }
+
+  /**
+   * Reads a project file.
+   * 
+   * @param projectFile
+   *          the .*proj file
+   * @return the content of the project file
+   * @throws DotNetException
+   *           if the project file cannot be read
+   */
+  static ProjectFileContent read(File projectFile) throws DotNetException {
+    ProjectFileContent content = new ProjectFileContent();
+    InputStream input = null;
+    XMLStreamReader reader = null;
+    try {
+      input = new FileInputStream(projectFile);
+      reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+      content.parse(reader);
+      return content;
+    } catch (XMLStreamException e) {
+      throw new DotNetException("Error while processing the project " + projectFile, e);
+    } catch (IOException e) {
+      throw new DotNetException("Error while processing the project " + projectFile, e);
+    } finally {
+      closeQuietly(reader);
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private static void closeQuietly(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        LOG.debug("Could not close the project file reader", e);
+      }
+    }
+  }
+
+  private void parse(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 0;
+    String groupCondition = null;
+    String propertyName = null;
+    StringBuilder propertyValue = new StringBuilder();
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        String name = reader.getLocalName();
+        boolean msbuildElement = MSBUILD_NAMESPACE.equals(reader.getNamespaceURI());
+        if (depth == 1 && !(msbuildElement && PROJECT.equals(name))) {
+          // Not a MSBuild project: nothing to read
+          return;
+        } else if (depth == 2 && msbuildElement && PROPERTY_GROUP.equals(name)) {
+          groupCondition = StringUtils.defaultString(reader.getAttributeValue(null, "Condition"));
+        } else if (depth == 3 && msbuildElement && groupCondition != null) {
+          propertyName = name;
+          propertyValue.setLength(0);
+        } else if (depth == 3 && msbuildElement && COMPILE.equals(name)) {
+          addCompileItem(reader.getAttributeValue(null, "Include"));
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        if (depth == 3 && propertyName != null) {
+          addProperty(groupCondition, propertyName, propertyValue.toString());
+          propertyName = null;
+        } else if (depth == 2) {
+          groupCondition = null;
+        }
+        depth--;
+      } else if (propertyName != null
+        && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)) {
+        propertyValue.append(reader.getText());
+      }
+    }
+  }
+
+  private void addProperty(String groupCondition, String name, String value) {
+    if (!properties.containsKey(name)) {
+      properties.put(name, value);
+    }
+    if (OUTPUT_PATH.equals(name) && groupCondition.length() > 0) {
+      outputPathConditions.add(groupCondition);
+      outputPaths.add(value);
+    }
+  }
+
+  private void addCompileItem(String include) {
+    if (include != null) {
+      filesPath.add(StringUtils.replace(include, "\\", File.separatorChar + ""));
+    }
+  }
+
+  /**
+   * Gets the first value of a property defined in a property group of the project.
+   * 
+   * @param name
+   *          the property name, such as "AssemblyName"
+   * @return the value of the property, or an empty string if the property is not defined
+   */
+  String getProperty(String name) {
+    return StringUtils.defaultString(properties.get(name));
+  }
+
+  /**
+   * Gets the output path of a build configuration, as defined in the first property group whose condition refers to the configuration.
+   * 
+   * @param buildConfiguration
+   *          the build configuration
+   * @return the output path, or an empty string if no output path is defined for the configuration
+   */
+  String getOutputPath(BuildConfiguration buildConfiguration) {
+    String configuration = buildConfiguration.toString();
+    for (int i = 0; i < outputPathConditions.size(); i++) {
+      if (outputPathConditions.get(i).contains(configuration)) {
+        return outputPaths.get(i);
+      }
+    }
+    return "";
+  }
+
+  /**
+   * Gets the relative paths of the compiled files, as they are defined in the project file.
+   * 
+   * @return the paths of the files, with the platform file separator
+   */
+  List<String> getFilesPath() {
+    return Collections.unmodifiableList(filesPath);
+  }
+
+}
@@ -25,6 +25,7 @@ package org.sonar.plugins.dotnet.api.microsoft;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.File;
+import java.io.Serializable;
 
 /**
  * A source file included in a CSharp project.
@@ -32,7 +33,9 @@ import java.io.File;
  * @author Fabrice BELLINGARD
  * @author Jose CHILLAN Sep 1, 2009
  */
-public class SourceFile {
+public class SourceFile implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private final File file;
   private final String folder;
@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -44,7 +45,9 @@ import java.util.UUID;
  * @author Fabrice BELLINGARD
  * @author Jose CHILLAN Apr 16, 2009
  */
-public class VisualStudioProject {
+public class VisualStudioProject implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private static final Logger LOG = LoggerFactory.getLogger(VisualStudioProject.class);
 
@@ -53,6 +56,8 @@ public class VisualStudioProject {
   private ArtifactType type;
   private String assemblyName;
   private String assemblyVersion;
+  /** Source file the assembly version was read from */
+  private File assemblyVersionFile;
   private String realAssemblyName; // assembly name found in the csproj file no matter what
   private String rootNamespace;
   private UUID projectGuid;
@@ -61,6 +66,8 @@ public class VisualStudioProject {
   private Map<BuildConfiguration, File> buildConfOutputDirMap;
   private File directory;
   private boolean silverlightProject;
+  /** Relative paths of the compiled files, when already read from the project file */
+  private List<String> filesPath;
   private Map<File, SourceFile> sourceFileMap;
 
   private boolean unitTest;
@@ -241,6 +248,14 @@ public class VisualStudioProject {
     this.assemblyVersion = assemblyVersion;
   }
 
+  File getAssemblyVersionFile() {
+    return assemblyVersionFile;
+  }
+
+  void setAssemblyVersionFile(File assemblyVersionFile) {
+    this.assemblyVersionFile = assemblyVersionFile;
+  }
+
   /**
    * Sets the assemblyName.
    * 
@@ -396,7 +411,9 @@ public class VisualStudioProject {
   private void initializeSourceFileMap() {
     Map<File, SourceFile> allFiles = new LinkedHashMap<File, SourceFile>(); // Case of a regular project
     if (projectFile != null) {
-      List<String> filesPath = ModelFactory.getFilesPath(projectFile);
+      if (filesPath == null) {
+        filesPath = ModelFactory.getFilesPath(projectFile);
+      }
 
       for (String filePath : filesPath) {
         try {
@@ -505,6 +522,16 @@ public class VisualStudioProject {
     return silverlightProject;
   }
 
+  /**
+   * Sets the relative paths of the compiled files, so that the project file does not need to be read again.
+   * 
+   * @param filesPath
+   *          the paths as defined in the project file
+   */
+  void setFilesPath(List<String> filesPath) {
+    this.filesPath = filesPath;
+  }
+
   void setBuildConfOutputDirMap(Map<BuildConfiguration, File> buildConfOutputDirMap) {
     this.buildConfOutputDirMap = buildConfOutputDirMap;
   }
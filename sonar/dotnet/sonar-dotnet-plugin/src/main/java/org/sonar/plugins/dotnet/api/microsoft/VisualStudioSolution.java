@@ -29,6 +29,8 @@ import org.sonar.api.resources.Project;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -46,7 +48,9 @@ import java.util.UUID;
  * @author Fabrice BELLINGARD
  * @author Jose CHILLAN Apr 16, 2009
  */
-public class VisualStudioSolution {
+public class VisualStudioSolution implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private static final Logger LOG = LoggerFactory.getLogger(VisualStudioSolution.class);
 
@@ -55,6 +59,10 @@ public class VisualStudioSolution {
   private String name;
   private List<VisualStudioProject> projects;
   private List<BuildConfiguration> buildConfigurations;
+  /** Index of the project directories, used to find the project of a location */
+  private transient ProjectDirectoryTree directoryTree;
+  /** Index of the canonical source files that exist, used to find the project of a file */
+  private transient Map<File, VisualStudioProject> projectsByFile;
 
   public VisualStudioSolution(File solutionFile, List<VisualStudioProject> projects) {
     this.solutionFile = solutionFile;
@@ -87,6 +95,7 @@ public class VisualStudioSolution {
         projectIterator.remove();
       }
     }
+    indexProjects();
   }
 
   /**
@@ -134,26 +143,55 @@ public class VisualStudioSolution {
   }
 
   /**
-   * Clean-up file/project associations in order to avoid having the same file in several projects.
+   * Clean-up file/project associations in order to avoid having the same file in several projects. The source files are indexed at the
+   * same time, in a single pass over the files of the solution.
    */
   private void initializeFileAssociations() {
+    directoryTree = new ProjectDirectoryTree(projects);
+    Map<File, VisualStudioProject> index = new HashMap<File, VisualStudioProject>();
     Set<File> csFiles = new HashSet<File>();
     for (VisualStudioProject project : projects) {
-      Set<File> projectFiles = project.getSourceFileMap().keySet();
-      Set<File> projectFilesToRemove = new HashSet<File>();
-      for (File file : projectFiles) {
-        if (getProjectByLocation(file) == null) {
-          projectFilesToRemove.add(file);
+      Iterator<File> fileIterator = project.getSourceFileMap().keySet().iterator();
+      while (fileIterator.hasNext()) {
+        // The source files of a project are already canonical
+        File file = fileIterator.next();
+        if (directoryTree.getProject(file.getPath()) == null) {
+          // remove files not present in the project directory
+          fileIterator.remove();
+        } else if (!csFiles.add(file)) {
+          // remove files present in other projects
+          fileIterator.remove();
+        } else if (file.exists()) {
+          index.put(file, project);
         }
       }
-      // remove files not present in the project directory
-      projectFiles.removeAll(projectFilesToRemove);
+    }
+    projectsByFile = index;
+  }
 
-      // remove files present in other projects
-      projectFiles.removeAll(csFiles);
+  private void indexProjects() {
+    directoryTree = new ProjectDirectoryTree(projects);
+    indexFiles();
+  }
 
-      csFiles.addAll(projectFiles);
+  /**
+   * Indexes the source files of the projects, so that looking up the project of a file does not require to check every project.
+   */
+  private void indexFiles() {
+    Map<File, VisualStudioProject> index = new HashMap<File, VisualStudioProject>();
+    for (VisualStudioProject project : projects) {
+      for (File file : project.getSourceFileMap().keySet()) {
+        if (!index.containsKey(file) && file.exists()) {
+          index.put(file, project);
+        }
+      }
     }
+    projectsByFile = index;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    indexProjects();
   }
 
   /**
@@ -163,12 +201,19 @@ public class VisualStudioSolution {
    * @return the project contains the file, or <code>null</code> if none is matching
    */
   public VisualStudioProject getProject(File file) {
-    for (VisualStudioProject project : projects) {
-      if (project.contains(file)) {
-        return project;
+    if (file == null) {
+      return null;
+    }
+    // The absolute path is usually already canonical, which saves a file system access
+    VisualStudioProject project = projectsByFile.get(file.getAbsoluteFile());
+    if (project == null) {
+      try {
+        project = projectsByFile.get(file.getCanonicalFile());
+      } catch (IOException e) {
+        LOG.debug("file error", e);
       }
     }
-    return null;
+    return project;
   }
 
   public VisualStudioProject getProjectFromSonarProject(Project sonarProject) {
@@ -196,16 +241,8 @@ public class VisualStudioSolution {
    * @return the associated project, or <code>null</code> if none is matching
    */
   public final VisualStudioProject getProjectByLocation(File file) {
-    String canonicalPath;
     try {
-      canonicalPath = file.getCanonicalPath();
-      for (VisualStudioProject project : projects) {
-        File directory = project.getDirectory();
-        String projectFolderPath = directory.getPath();
-        if (canonicalPath.startsWith(projectFolderPath) && project.isParentDirectoryOf(file)) {
-          return project;
-        }
-      }
+      return directoryTree.getProject(file.getCanonicalPath());
     } catch (IOException e) {
       LOG.debug("getProjectByLocation i/o exception", e);
     }
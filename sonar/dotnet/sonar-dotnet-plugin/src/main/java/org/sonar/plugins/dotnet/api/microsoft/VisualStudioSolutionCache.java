@@ -0,0 +1,209 @@
+/*
+ * Sonar .NET Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.api.microsoft;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * On-disk cache of a {@link VisualStudioSolution} resolved by the {@link ModelFactory}.<br/>
+ * The cached solution is discarded as soon as the size or the last modification date of the solution file, of one of its project files
+ * or of the "AssemblyInfo" source files their assembly version is read from changed, or if it was resolved with another configuration
+ * or by another build of the plugin. Solutions with web projects are not cached, as their source files are not listed in any file.
+ */
+public final class VisualStudioSolutionCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VisualStudioSolutionCache.class);
+  private static final int BUFFER_SIZE = 8192;
+
+  private static String pluginFingerprint;
+
+  private VisualStudioSolutionCache() {
+  }
+
+  /**
+   * Loads the solution stored in the given cache file.
+   * 
+   * @param cacheFile
+   *          the cache file
+   * @param solutionFile
+   *          the solution file
+   * @param configuration
+   *          a description of the configuration used to resolve the solution
+   * @return the cached solution, or <code>null</code> if the cache does not exist, cannot be read or is out of date
+   */
+  public static VisualStudioSolution load(File cacheFile, File solutionFile, String configuration) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile), BUFFER_SIZE));
+      if (!solutionFile.getAbsolutePath().equals(in.readUTF()) || !getKey(configuration).equals(in.readUTF())) {
+        LOG.info("The Visual Studio solution cache was written for another solution, configuration or plugin: it is discarded.");
+        return null;
+      }
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        File file = new File(in.readUTF());
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        if (file.length() != length || file.lastModified() != lastModified) {
+          LOG.info("{} changed since the previous analysis: the Visual Studio solution cache is discarded.", file);
+          return null;
+        }
+      }
+      VisualStudioSolution solution = (VisualStudioSolution) in.readObject();
+      LOG.debug("Visual Studio solution loaded from {}", cacheFile);
+      return solution;
+    } catch (IOException e) {
+      LOG.warn("Unable to read the Visual Studio solution cache " + cacheFile + ", it is discarded.", e);
+    } catch (ClassNotFoundException e) {
+      LOG.warn("Unable to read the Visual Studio solution cache " + cacheFile + ", it is discarded.", e);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    return null;
+  }
+
+  /**
+   * Writes a solution to the given cache file, together with the size and the last modification date of the files it was read from.
+   * 
+   * @param cacheFile
+   *          the cache file
+   * @param solution
+   *          the solution, as created by the {@link ModelFactory}
+   * @param configuration
+   *          a description of the configuration used to resolve the solution
+   */
+  public static void save(File cacheFile, VisualStudioSolution solution, String configuration) {
+    if (solution.isAspUsed()) {
+      LOG.debug("The Visual Studio solution contains web projects: it is not cached.");
+      return;
+    }
+    ObjectOutputStream out = null;
+    try {
+      cacheFile.getParentFile().mkdirs();
+      out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile), BUFFER_SIZE));
+      out.writeUTF(solution.getSolutionFile().getAbsolutePath());
+      out.writeUTF(getKey(configuration));
+      List<File> files = getSolutionFiles(solution);
+      out.writeInt(files.size());
+      for (File file : files) {
+        out.writeUTF(file.getAbsolutePath());
+        out.writeLong(file.length());
+        out.writeLong(file.lastModified());
+      }
+      out.writeObject(solution);
+      LOG.debug("Visual Studio solution saved to {}", cacheFile);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the Visual Studio solution cache " + cacheFile, e);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Gets the files whose content is reflected in the model of a solution. The assembly version is read from the first "AssemblyInfo"
+   * file declaring it, so all of them are included: one of them may declare the version in a later analysis.
+   */
+  private static List<File> getSolutionFiles(VisualStudioSolution solution) {
+    List<File> files = new ArrayList<File>();
+    files.add(solution.getSolutionFile());
+    for (VisualStudioProject project : solution.getProjects()) {
+      files.add(project.getProjectFile());
+      for (SourceFile sourceFile : project.getSourceFiles()) {
+        if (StringUtils.startsWithIgnoreCase(sourceFile.getName(), "assemblyinfo")) {
+          files.add(sourceFile.getFile());
+        }
+      }
+      File assemblyVersionFile = project.getAssemblyVersionFile();
+      if (assemblyVersionFile != null && !files.contains(assemblyVersionFile)) {
+        files.add(assemblyVersionFile);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * The serialized classes keep the same serialVersionUID between two versions of the plugin: the cache key includes a fingerprint of
+   * the plugin classes.
+   */
+  private static String getKey(String configuration) {
+    return getPluginFingerprint() + "|" + configuration;
+  }
+
+  private static synchronized String getPluginFingerprint() {
+    if (pluginFingerprint == null) {
+      pluginFingerprint = computePluginFingerprint();
+    }
+    return pluginFingerprint;
+  }
+
+  private static String computePluginFingerprint() {
+    CodeSource codeSource = VisualStudioSolutionCache.class.getProtectionDomain().getCodeSource();
+    File location = codeSource == null ? null : FileUtils.toFile(codeSource.getLocation());
+    if (location == null || !location.exists()) {
+      return "";
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      List<File> files = new ArrayList<File>();
+      if (location.isDirectory()) {
+        files.addAll(FileUtils.listFiles(location, null, true));
+        Collections.sort(files);
+      } else {
+        files.add(location);
+      }
+      for (File file : files) {
+        digest.update(FileUtils.readFileToByteArray(file));
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (IOException e) {
+      LOG.warn("Unable to compute the fingerprint of " + location, e);
+    } catch (NoSuchAlgorithmException e) {
+      LOG.warn("Unable to compute the fingerprint of " + location, e);
+    }
+    return "";
+  }
+
+}
@@ -34,6 +34,8 @@ import java.util.Set;
  */
 public class VisualStudioWebProject extends VisualStudioProject {
 
+  private static final long serialVersionUID = 1L;
+
   public VisualStudioWebProject() {
     setType(ArtifactType.WEB);
   }
@@ -63,6 +63,13 @@ import java.util.List;
     name = "Solution to analyse",
     description = "Relative path to the \".sln\" file that represents the solution to analyse. If none provided, a \".sln\" file will be searched at the root of the project.",
     global = false, project = true),
+  @Property(key = DotNetConstants.PROJECT_LOADING_THREADS_KEY, defaultValue = DotNetConstants.PROJECT_LOADING_THREADS_DEFVALUE + "",
+    name = "Project loading threads", description = "Maximum number of projects of the solution loaded at the same time.",
+    global = true, project = true, type = PropertyType.INTEGER),
+  @Property(key = DotNetConstants.SOLUTION_CACHE_ENABLED_KEY, defaultValue = DotNetConstants.SOLUTION_CACHE_ENABLED_DEFVALUE + "",
+    name = "Cache the Visual Studio solution",
+    description = "Set to true to reuse the solution model of the previous analysis as long as the solution and project files are unchanged.",
+    global = true, project = true, type = PropertyType.BOOLEAN),
   @Property(key = DotNetConstants.EXCLUDE_GENERATED_CODE_KEY, defaultValue = DotNetConstants.EXCLUDE_GENERATED_CODE_DEFVALUE + "",
     name = "Exclude generated code",
     description = "Set to false to include generated code like 'Reference.cs' files or '*.designer.cs' files.", global = true,
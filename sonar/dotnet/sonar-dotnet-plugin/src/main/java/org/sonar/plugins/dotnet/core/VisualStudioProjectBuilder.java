@@ -79,7 +79,7 @@ public class VisualStudioProjectBuilder extends ProjectBuilder {
       retrieveMicrosoftWindowsEnvironmentConfig();
 
       // Then create the Visual Studio Solution object from the ".sln" file
-      createVisualStudioSolution(root.getBaseDir());
+      createVisualStudioSolution(root);
 
       // And finally create the Sonar projects definition
       createMultiProjectStructure(root);
@@ -172,8 +172,8 @@ public class VisualStudioProjectBuilder extends ProjectBuilder {
     microsoftWindowsEnvironment.setSilverlightDirectory(silverlightDirectory);
   }
 
-  private void createVisualStudioSolution(File baseDir) {
-    File slnFile = findSlnFile(baseDir);
+  private void createVisualStudioSolution(ProjectDefinition root) {
+    File slnFile = findSlnFile(root.getBaseDir());
     if (slnFile == null) {
       throw new SonarException("No valid '.sln' file could be found. Please read the previous log messages to know more.");
     }
@@ -182,7 +182,13 @@ public class VisualStudioProjectBuilder extends ProjectBuilder {
     try {
       ModelFactory.setTestProjectNamePattern(configuration.getString(DotNetConstants.TEST_PROJECT_PATTERN_KEY));
       ModelFactory.setIntegTestProjectNamePattern(configuration.getString(DotNetConstants.IT_PROJECT_PATTERN_KEY));
-      VisualStudioSolution solution = ModelFactory.getSolution(slnFile);
+      ModelFactory.setProjectLoadingThreads(configuration.getInt(DotNetConstants.PROJECT_LOADING_THREADS_KEY));
+      final VisualStudioSolution solution;
+      if (configuration.getBoolean(DotNetConstants.SOLUTION_CACHE_ENABLED_KEY)) {
+        solution = ModelFactory.getSolution(slnFile, new File(root.getWorkDir(), DotNetConstants.SOLUTION_CACHE_FILE));
+      } else {
+        solution = ModelFactory.getSolution(slnFile);
+      }
       microsoftWindowsEnvironment.setCurrentSolution(solution);
     } catch (IOException e) {
       throw new SonarException("Error occured while reading Visual Studio files.", e);
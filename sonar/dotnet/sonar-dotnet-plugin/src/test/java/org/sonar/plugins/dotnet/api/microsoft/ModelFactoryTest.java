@@ -32,6 +32,7 @@ import org.sonar.plugins.dotnet.api.microsoft.VisualStudioWebProject;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
+import org.sonar.plugins.dotnet.api.DotNetConstants;
 
 import java.io.File;
 import java.util.Collection;
@@ -107,6 +108,42 @@ public class ModelFactoryTest {
     assertEquals("Bad number of files extracted", 6, files.size());
   }
 
+  @Test
+  public void testReadSolutionSequentially() throws Exception {
+    File file = new File(SOLUTION_PATH);
+    ModelFactory.setProjectLoadingThreads(1);
+    try {
+      VisualStudioSolution solution = ModelFactory.getSolution(file);
+      List<VisualStudioProject> projects = solution.getProjects();
+      assertEquals(3, projects.size());
+      assertEquals("Example.Application", projects.get(0).getName());
+      assertEquals("Example.Core", projects.get(1).getName());
+      assertEquals("Example.Core.Tests", projects.get(2).getName());
+      assertTrue(projects.get(2).isTest());
+    } finally {
+      ModelFactory.setProjectLoadingThreads(DotNetConstants.PROJECT_LOADING_THREADS_DEFVALUE);
+    }
+  }
+
+  @Test
+  public void testReadSolutionConcurrently() throws Exception {
+    File file = new File(SOLUTION_PATH);
+    ModelFactory.setProjectLoadingThreads(3);
+    try {
+      VisualStudioSolution solution = ModelFactory.getSolution(file);
+      List<VisualStudioProject> projects = solution.getProjects();
+      // the projects are kept in the solution order
+      assertEquals(3, projects.size());
+      assertEquals("Example.Application", projects.get(0).getName());
+      assertEquals("Example.Core", projects.get(1).getName());
+      assertEquals("Example.Core.Tests", projects.get(2).getName());
+      assertTrue(projects.get(2).isTest());
+      assertEquals(6, projects.get(1).getSourceFiles().size());
+    } finally {
+      ModelFactory.setProjectLoadingThreads(DotNetConstants.PROJECT_LOADING_THREADS_DEFVALUE);
+    }
+  }
+
   @Test
   public void testProjecFiles() throws Exception {
     File file = new File(PROJECT_CORE_PATH);
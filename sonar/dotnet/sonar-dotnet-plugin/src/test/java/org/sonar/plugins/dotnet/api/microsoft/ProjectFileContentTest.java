@@ -0,0 +1,63 @@
+/*
+ * Sonar .NET Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.api.microsoft;
+
+import org.junit.Test;
+import org.sonar.plugins.dotnet.api.DotNetException;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProjectFileContentTest {
+
+  private static final String PROJECT_PATH = "target/test-classes/solution/CustomBuild/ClassLibrary/ClassLibrary.csproj";
+
+  @Test
+  public void testReadProperties() throws Exception {
+    ProjectFileContent content = ProjectFileContent.read(new File(PROJECT_PATH));
+    assertEquals("ClassLibrary", content.getProperty("AssemblyName"));
+    assertEquals("Library", content.getProperty("OutputType"));
+    assertEquals("", content.getProperty("SilverlightApplication"));
+  }
+
+  @Test
+  public void testReadOutputPaths() throws Exception {
+    ProjectFileContent content = ProjectFileContent.read(new File(PROJECT_PATH));
+    assertEquals("bin\\Debug\\", content.getOutputPath(new BuildConfiguration("Debug")));
+    assertEquals("bin\\CustomCompil\\", content.getOutputPath(new BuildConfiguration("CustomCompil")));
+    assertEquals("", content.getOutputPath(new BuildConfiguration("Debug", "x86")));
+  }
+
+  @Test
+  public void testReadFilesPath() throws Exception {
+    List<String> files = ProjectFileContent.read(new File(PROJECT_PATH)).getFilesPath();
+    assertEquals(2, files.size());
+    assertEquals("Class1.cs", files.get(0));
+    assertEquals("Properties" + File.separator + "AssemblyInfo.cs", files.get(1));
+  }
+
+  @Test(expected = DotNetException.class)
+  public void testMissingProjectFile() throws Exception {
+    ProjectFileContent.read(new File("target/test-classes/solution/unknown.csproj"));
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Sonar .NET Plugin :: Core
+ * Copyright (C) 2010 Jose Chillan, Alexandre Victoor and SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.dotnet.api.microsoft;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class VisualStudioSolutionCacheTest {
+
+  private File solutionDir;
+  private File solutionFile;
+  private File cacheFile;
+
+  @Before
+  public void init() throws Exception {
+    solutionDir = new File("target/solution-cache/Example");
+    FileUtils.deleteQuietly(solutionDir);
+    FileUtils.copyDirectory(new File("target/test-classes/solution/Example"), solutionDir);
+    solutionFile = new File(solutionDir, "Example.sln");
+    cacheFile = new File("target/solution-cache/visual-studio-solution.cache");
+    FileUtils.deleteQuietly(cacheFile);
+  }
+
+  @Test
+  public void shouldReloadSavedSolution() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(solutionFile);
+    VisualStudioSolutionCache.save(cacheFile, solution, "configuration");
+
+    VisualStudioSolution reloaded = VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration");
+    assertThat(reloaded).isNotNull();
+    assertThat(reloaded.getName()).isEqualTo("Example.sln");
+    assertThat(reloaded.getBuildConfigurations()).isEqualTo(solution.getBuildConfigurations());
+    assertThat(reloaded.getProjects()).hasSize(3);
+    VisualStudioProject project = reloaded.getProject("Example.Core");
+    assertThat(project.getSourceFiles()).hasSize(6);
+    assertThat(project.getAssemblyVersion()).isEqualTo("1.0.0.0");
+    assertThat(project.getArtifact("Release", null)).isEqualTo(solution.getProject("Example.Core").getArtifact("Release", null));
+    assertThat(reloaded.getProject(new File(solutionDir, "Example.Core/Money.cs"))).isSameAs(project);
+    assertThat(reloaded.getProject("Example.Core.Tests").isTest()).isTrue();
+  }
+
+  @Test
+  public void shouldDiscardSolutionWhenProjectFileChanged() throws Exception {
+    VisualStudioSolutionCache.save(cacheFile, ModelFactory.getSolution(solutionFile), "configuration");
+
+    File projectFile = new File(solutionDir, "Example.Core/Example.Core.csproj");
+    projectFile.setLastModified(projectFile.lastModified() - 10000);
+
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration")).isNull();
+  }
+
+  @Test
+  public void shouldDiscardSolutionWhenAssemblyVersionFileChanged() throws Exception {
+    VisualStudioSolutionCache.save(cacheFile, ModelFactory.getSolution(solutionFile), "configuration");
+
+    // the other source files are not read to resolve the solution
+    File sourceFile = new File(solutionDir, "Example.Core/Money.cs");
+    sourceFile.setLastModified(sourceFile.lastModified() - 10000);
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration")).isNotNull();
+
+    File assemblyInfoFile = new File(solutionDir, "Example.Core/Properties/AssemblyInfo.cs");
+    assemblyInfoFile.setLastModified(assemblyInfoFile.lastModified() - 10000);
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration")).isNull();
+  }
+
+  @Test
+  public void shouldDiscardSolutionWhenAnotherAssemblyInfoFileChanged() throws Exception {
+    File projectFile = new File(solutionDir, "Example.Core/Example.Core.csproj");
+    String project = FileUtils.readFileToString(projectFile, "UTF-8");
+    FileUtils.writeStringToFile(projectFile, project.replace("<Compile Include=\"IMoney.cs\" />",
+        "<Compile Include=\"IMoney.cs\" />\n    <Compile Include=\"Properties\\AssemblyInfo.Shared.cs\" />"), "UTF-8");
+    File sharedAssemblyInfoFile = new File(solutionDir, "Example.Core/Properties/AssemblyInfo.Shared.cs");
+    FileUtils.writeStringToFile(sharedAssemblyInfoFile, "using System.Reflection;\n", "UTF-8");
+    VisualStudioSolution solution = ModelFactory.getSolution(solutionFile);
+    assertThat(solution.getProject("Example.Core").getAssemblyVersion()).isEqualTo("1.0.0.0");
+    VisualStudioSolutionCache.save(cacheFile, solution, "configuration");
+
+    // the version is now read from the shared file
+    FileUtils.writeStringToFile(sharedAssemblyInfoFile, "using System.Reflection;\n[assembly: AssemblyVersion(\"2.0.0.0\")]\n", "UTF-8");
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration")).isNull();
+  }
+
+  @Test
+  public void shouldDiscardSolutionWhenConfigurationChanged() throws Exception {
+    VisualStudioSolutionCache.save(cacheFile, ModelFactory.getSolution(solutionFile), "configuration");
+
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "otherConfiguration")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedCache() throws Exception {
+    FileUtils.writeStringToFile(cacheFile, "not a cache");
+
+    assertThat(VisualStudioSolutionCache.load(cacheFile, solutionFile, "configuration")).isNull();
+  }
+
+  @Test
+  public void shouldNotCacheWebSolutions() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(new File("target/test-classes/solution/web-solution/web-solution.sln"));
+    VisualStudioSolutionCache.save(cacheFile, solution, "configuration");
+
+    assertThat(cacheFile.exists()).isFalse();
+  }
+
+  @Test
+  public void shouldReadSolutionOnlyOnce() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(solutionFile, cacheFile);
+    assertThat(cacheFile.isFile()).isTrue();
+
+    // the projects are not read again: a broken project file is not noticed
+    File projectFile = new File(solutionDir, "Example.Core/Example.Core.csproj");
+    long lastModified = projectFile.lastModified();
+    long length = projectFile.length();
+    FileUtils.writeStringToFile(projectFile, FileUtils.readFileToString(projectFile).replace("<AssemblyName>", "<AssemblyNam_>"));
+    assertThat(projectFile.length()).isEqualTo(length);
+    projectFile.setLastModified(lastModified);
+
+    VisualStudioSolution reloaded = ModelFactory.getSolution(solutionFile, cacheFile);
+    assertThat(reloaded).isNotSameAs(solution);
+    assertThat(reloaded.getProject("Example.Core")).isNotNull();
+  }
+
+}
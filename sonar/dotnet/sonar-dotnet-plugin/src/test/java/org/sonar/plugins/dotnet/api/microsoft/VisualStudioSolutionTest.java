@@ -67,6 +67,34 @@ public class VisualStudioSolutionTest {
     assertNull(project);
   }
 
+  @Test
+  public void testGetProjectWithRelativePath() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(TestUtils.getResource(SOLUTION_PATH));
+    File sourceFile = TestUtils.getResource("/solution/Example/Example.Core/Money.cs");
+    File relativeFile = new File(sourceFile.getParentFile(), "../Example.Core/./Money.cs");
+    assertEquals("Example.Core", solution.getProject(relativeFile).getName());
+  }
+
+  @Test
+  public void testGetProjectOfFilteredProject() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(TestUtils.getResource(SOLUTION_PATH));
+    solution.filterProjects("Example.Core");
+    File sourceFile = TestUtils.getResource("/solution/Example/Example.Core/Money.cs");
+    assertNull(solution.getProject(sourceFile));
+    assertNull(solution.getProjectByLocation(sourceFile));
+  }
+
+  @Test
+  public void testGetProjectByLocation() throws Exception {
+    VisualStudioSolution solution = ModelFactory.getSolution(TestUtils.getResource(SOLUTION_PATH));
+    File directory = TestUtils.getResource("/solution/Example/Example.Core");
+    assertEquals("Example.Core", solution.getProjectByLocation(directory).getName());
+    assertEquals("Example.Core", solution.getProjectByLocation(new File(directory, "Model/SubType.cs")).getName());
+    assertEquals("Example.Core", solution.getProjectByLocation(new File(directory, "Unknown/Foo.cs")).getName());
+    assertNull(solution.getProjectByLocation(directory.getParentFile()));
+    assertNull(solution.getProjectByLocation(new File(directory.getParentFile(), "Example.Core.Other/Foo.cs")));
+  }
+
   @Test
   public void testGetUnitTestProjects() throws Exception {
     VisualStudioSolution solution = ModelFactory.getSolution(TestUtils.getResource(SOLUTION_PATH));
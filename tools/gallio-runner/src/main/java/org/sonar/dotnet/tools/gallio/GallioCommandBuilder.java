@@ -59,6 +59,7 @@ public class GallioCommandBuilder { // NOSONAR class not final to allow mocking
   private File dotCoverInstallDirectory;
   private String[] coverageExcludes;
   private String attributeExcludes;
+  private boolean coverByTest;
   private File absoluteBaseDirectory;
   private File coverageReportFile;
 
@@ -206,6 +207,16 @@ public class GallioCommandBuilder { // NOSONAR class not final to allow mocking
 	  this.attributeExcludes = attributeExclude;
   }
   
+  /**
+   * Asks OpenCover to track which test method covers each sequence point, in order to know the source files covered by each test.
+   * 
+   * @param coverByTest
+   *          true to track the test methods of the test assemblies
+   */
+  public void setCoverByTest(boolean coverByTest) {
+    this.coverByTest = coverByTest;
+  }
+
   /**
    * Sets the abd parameter for Gallio
    * 
@@ -394,6 +405,16 @@ public class GallioCommandBuilder { // NOSONAR class not final to allow mocking
     	command.addArgument("-excludebyattribute:" + attributeExcludes);
     }
 
+    if (coverByTest) {
+      final StringBuilder coverByTestBuilder = new StringBuilder("-coverbytest:");
+      for (File testAssembly : testAssemblies) {
+        coverByTestBuilder.append(testAssembly.getName()).append(';');
+      }
+      coverByTestBuilder.setLength(coverByTestBuilder.length() - 1);
+      LOG.debug("- Opencover tracking  : {}", coverByTestBuilder);
+      command.addArgument(coverByTestBuilder.toString());
+    }
+
     LOG.debug("- Coverage report     : {}", coverageReportFile.getAbsolutePath());
     command.addArgument("-output:" + coverageReportFile.getAbsolutePath());
   }
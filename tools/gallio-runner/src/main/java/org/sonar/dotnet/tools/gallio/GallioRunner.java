@@ -19,12 +19,19 @@
  */
 package org.sonar.dotnet.tools.gallio;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sonar.api.utils.command.CommandExecutor;
+import org.sonar.api.utils.command.Command;
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
 
 /**
  * Class that runs the Gallio program.
@@ -35,6 +42,7 @@ public class GallioRunner { // NOSONAR : can't mock it otherwise
 
   private static final String GALLIO_EXECUTABLE = "bin/Gallio.Echo.exe";
   private static final long MINUTES_TO_MILLISECONDS = 60000;
+  private static final long POLLING_PERIOD_MILLISECONDS = 100;
 
   private File gallioExecutable;
   private File workFolder;
@@ -78,7 +86,8 @@ public class GallioRunner { // NOSONAR : can't mock it otherwise
   }
 
   /**
-   * Executes the given Gallio command.
+   * Executes the given Gallio command. The Gallio process is destroyed if it exceeds the timeout, or if the calling thread is
+   * interrupted: this is how the Gallio processes launched in parallel are stopped as soon as one of them fails.
    * 
    * @param gallioCommandBuilder
    *          the gallioCommandBuilder
@@ -89,7 +98,7 @@ public class GallioRunner { // NOSONAR : can't mock it otherwise
    */
   public void execute(GallioCommandBuilder gallioCommandBuilder, int timeoutMinutes) throws GallioException {
     LOG.debug("Executing Gallio program...");
-    int exitCode = CommandExecutor.create().execute(gallioCommandBuilder.toCommand(), timeoutMinutes * MINUTES_TO_MILLISECONDS);
+    int exitCode = execute(gallioCommandBuilder.toCommand(), timeoutMinutes * MINUTES_TO_MILLISECONDS);
     if (exitCode != 0 && exitCode != 16) {
       if (exitCode == 1 && ignoreTestFailures) {
         return;
@@ -97,4 +106,73 @@ public class GallioRunner { // NOSONAR : can't mock it otherwise
       throw new GallioException(exitCode);
     }
   }
+
+  /*
+   * The CommandExecutor of Sonar does not destroy the process when the calling thread is interrupted, hence this implementation.
+   */
+  private static int execute(Command command, long timeoutMilliseconds) throws GallioException {
+    LOG.info("Executing command: " + command.toCommandLine());
+    List<String> commandLine = Lists.newArrayList(command.getExecutable());
+    commandLine.addAll(command.getArguments());
+    Process process;
+    try {
+      process = new ProcessBuilder(commandLine).directory(command.getDirectory()).redirectErrorStream(true).start();
+    } catch (IOException e) {
+      throw new GallioException("Unable to launch Gallio: " + command.toCommandLine(), e);
+    }
+    try {
+      Thread outputLogger = logOutput(process.getInputStream());
+      long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+      Integer exitCode = getExitCode(process);
+      while (exitCode == null) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new GallioException("Gallio execution timed out after " + timeoutMilliseconds + " ms: " + command.toCommandLine());
+        }
+        Thread.sleep(POLLING_PERIOD_MILLISECONDS);
+        exitCode = getExitCode(process);
+      }
+      outputLogger.join();
+      return exitCode;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GallioException("Gallio execution was interrupted: " + command.toCommandLine(), e);
+    } finally {
+      // does nothing if the process has already exited
+      process.destroy();
+    }
+  }
+
+  private static Integer getExitCode(Process process) {
+    try {
+      return process.exitValue();
+    } catch (IllegalThreadStateException e) {
+      // not finished yet
+      return null;
+    }
+  }
+
+  private static Thread logOutput(final InputStream output) {
+    Thread thread = new Thread("Gallio output") {
+
+      @Override
+      public void run() {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(output));
+        try {
+          String line = reader.readLine();
+          while (line != null) {
+            LOG.info(line);
+            line = reader.readLine();
+          }
+        } catch (IOException e) {
+          // the stream is closed when the process is destroyed
+          LOG.debug("Stopped reading the output of Gallio", e);
+        } finally {
+          IOUtils.closeQuietly(reader);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
 }
@@ -161,6 +161,25 @@ public class GallioCommandBuilderTest {
     assertThat(commands[i], endsWith("coverage-report.xml"));
   }
 
+  @Test
+  public void testToCommandForSolutionWithOpenCoverByTest() throws Exception {
+    GallioCommandBuilder builder = GallioCommandBuilder.createBuilder(solution);
+    builder.setTestAssemblies(Lists.newArrayList(FAKE_ASSEMBLY_1, FAKE_ASSEMBLY_2));
+    builder.setExecutable(GALLIO_EXE);
+    builder.setReportFile(GALLIO_REPORT_FILE);
+    builder.setCoverageTool("OpenCover");
+    builder.setOpenCoverInstallDirectory(OPEN_COVER_INSTALL_DIR);
+    builder.setCoverageReportFile(GALLIO_COVERAGE_REPORT_FILE);
+    builder.setWorkDir(WORK_DIR);
+    builder.setCoverByTest(true);
+    Command command = builder.toCommand();
+
+    String[] commands = command.getArguments().toArray(new String[] {});
+    assertThat(commands.length, is(8));
+    assertThat(commands[6], is("-coverbytest:" + FAKE_ASSEMBLY_1.getName() + ";" + FAKE_ASSEMBLY_2.getName()));
+    assertThat(commands[7], startsWith("-output:"));
+  }
+
   @Test
   public void testToCommandForSolutionWithDotCoverWithMinimumParams() throws Exception {
     GallioCommandBuilder builder = GallioCommandBuilder.createBuilder(solution);
@@ -20,6 +20,8 @@
 package org.sonar.dotnet.tools.gallio;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.sonar.plugins.dotnet.api.microsoft.VisualStudioSolution;
@@ -27,9 +29,12 @@ import org.sonar.test.TestUtils;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 public class GallioRunnerTest {
@@ -61,4 +66,43 @@ public class GallioRunnerTest {
     assertThat(builder.toCommand().getExecutable(), is(new File(fakeExecInstallPath, "bin/Gallio.Echo.exe").getAbsolutePath()));
   }
 
+  @Test
+  public void testExecuteShouldDestroyTheProcessWhenInterrupted() throws Exception {
+    // The stub of Gallio is a shell script that would run for a minute
+    Assume.assumeTrue(File.separatorChar == '/');
+    File gallioDir = new File("target/gallio-stub");
+    FileUtils.deleteQuietly(gallioDir);
+    File gallio = new File(gallioDir, "bin/Gallio.Echo.exe");
+    FileUtils.writeStringToFile(gallio, "#!/bin/sh\nexec sleep 60\n");
+    assertTrue(gallio.setExecutable(true));
+
+    final GallioRunner stubRunner = GallioRunner.create(gallioDir.getAbsolutePath(), workDir, false);
+    final GallioCommandBuilder builder = stubRunner.createCommandBuilder(solution);
+    builder.setReportFile(new File("target/sonar/gallio-report-folder/gallio-report.xml"));
+    builder.setCoverageTool(GallioRunnerConstants.COVERAGE_TOOL_NONE_KEY);
+    builder.setTestAssemblies(testAsssemblies);
+
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Thread thread = new Thread() {
+
+      @Override
+      public void run() {
+        try {
+          stubRunner.execute(builder, 1);
+        } catch (GallioException e) {
+          failure.set(e);
+        }
+      }
+    };
+    long start = System.currentTimeMillis();
+    thread.start();
+    Thread.sleep(500);
+    thread.interrupt();
+    thread.join(10000);
+
+    assertFalse(thread.isAlive());
+    assertTrue(System.currentTimeMillis() - start < 10000);
+    assertThat(failure.get() instanceof GallioException, is(true));
+  }
+
 }